@@ -0,0 +1,88 @@
+package com.sensorsdata.analytics.javasdk;
+
+import com.sensorsdata.analytics.javasdk.consumer.Consumer;
+import com.sensorsdata.analytics.javasdk.exceptions.InvalidArgumentException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同 {@link LibDetailStrategy} 下 track 的耗时，Consumer 为空实现
+ * <p>
+ * legacyStackTrace 为原实现（每次调用获取完整异常栈并 String.format）的单独开销，作为对比基线；
+ * 在 JDK 8 与 JDK 9 及以上版本分别运行，后者使用 StackWalker 实现。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibDetailBenchmark {
+
+  @Param({"EVERY_CALL", "SAMPLED", "OFF"})
+  public LibDetailStrategy strategy;
+
+  private SensorsAnalytics sensorsAnalytics;
+  private Map<String, Object> properties;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    sensorsAnalytics = new SensorsAnalytics(new Consumer() {
+      @Override
+      public void send(Map<String, Object> message) {
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    sensorsAnalytics.setLibDetailStrategy(strategy);
+    properties = new HashMap<>();
+    properties.put("order_id", "ORD100000001");
+    properties.put("price", 99.5);
+  }
+
+  @Benchmark
+  public void track() throws InvalidArgumentException {
+    sensorsAnalytics.track("user-123", true, "SubmitOrder", properties);
+  }
+
+  @Benchmark
+  public String legacyStackTrace() {
+    StackTraceElement traceElement = new Exception().getStackTrace()[3];
+    return String.format("%s##%s##%s##%s", traceElement.getClassName(), traceElement.getMethodName(),
+        traceElement.getFileName(), traceElement.getLineNumber());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(LibDetailBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
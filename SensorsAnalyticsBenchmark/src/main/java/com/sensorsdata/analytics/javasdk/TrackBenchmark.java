@@ -0,0 +1,116 @@
+package com.sensorsdata.analytics.javasdk;
+
+import com.sensorsdata.analytics.javasdk.bean.EventRecord;
+import com.sensorsdata.analytics.javasdk.consumer.Consumer;
+import com.sensorsdata.analytics.javasdk.exceptions.InvalidArgumentException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * track 调用链上 SDK 自身的开销：数据构造与校验、公共属性合并、生成上报数据结构
+ * <p>
+ * trackWithSuperProperties 使用丢弃数据的 Consumer，不包含序列化与发送；各 Consumer 的开销见 consumer 包下的基准测试。
+ * 需要关注 gc 分析器输出的 gc.alloc.rate.norm（每次调用分配的字节数），main 方法默认开启。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackBenchmark {
+
+  private SensorsAnalytics sensorsAnalytics;
+  private Map<String, Object> properties;
+  private SensorsData sensorsData;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InvalidArgumentException {
+    properties = properties();
+    sensorsAnalytics = new SensorsAnalytics(new Consumer() {
+      @Override
+      public void send(Map<String, Object> message) {
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    Map<String, Object> superProperties = new HashMap<>();
+    superProperties.put("app_name", "benchmark");
+    superProperties.put("app_version", "1.0.0");
+    superProperties.put("env", "production");
+    superProperties.put("region", "cn-north");
+    superProperties.put("platform", "server");
+    sensorsAnalytics.registerSuperProperties(superProperties);
+    sensorsData = new SensorsData(eventRecord(), SensorsConst.TRACK_ACTION_TYPE);
+  }
+
+  @Benchmark
+  public EventRecord eventRecordBuild() throws InvalidArgumentException {
+    return eventRecord();
+  }
+
+  @Benchmark
+  public void trackWithSuperProperties() throws InvalidArgumentException {
+    sensorsAnalytics.track("user-123", true, "SubmitOrder", properties);
+  }
+
+  @Benchmark
+  public void generateData(Blackhole blackhole) {
+    blackhole.consume(SensorsData.generateData(sensorsData));
+  }
+
+  private EventRecord eventRecord() throws InvalidArgumentException {
+    return EventRecord.builder()
+        .setDistinctId("user-123")
+        .isLoginId(true)
+        .setEventName("SubmitOrder")
+        .addProperties(properties)
+        .build();
+  }
+
+  private static Map<String, Object> properties() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("order_id", "ORD100000001");
+    properties.put("product_name", "测试商品");
+    properties.put("price", 99.5);
+    properties.put("quantity", 2);
+    properties.put("channel", "app");
+    properties.put("$ip", "123.123.123.123");
+    properties.put("is_first_order", false);
+    return properties;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(TrackBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,106 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.receiver.ReceiverStandIn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FastBatchConsumer 不同发送线程数（senderThreads）在不同接收端延迟下的发送吞吐
+ * <p>
+ * 每次调用写入 {@link #EVENTS} 条数据（分属 100 个用户）后 flush，flush 返回时数据已全部发送到 {@link ReceiverStandIn}，
+ * 结果为每秒发送的数据条数；trial 结束时打印接收端统计与回调失败条数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class FastBatchSenderBenchmark {
+
+  static final int EVENTS = 1000;
+
+  @Param({"1", "4", "8"})
+  public int senderThreads;
+
+  @Param({"0", "5", "20"})
+  public long latencyMs;
+
+  private ReceiverStandIn receiver;
+  private FastBatchConsumer consumer;
+  private List<Map<String, Object>> events;
+  private final AtomicLong failed = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    receiver = new ReceiverStandIn(0, 16).setLatencyMs(latencyMs).start();
+    consumer = FastBatchConsumer.builder()
+        .setServerUrl(receiver.getServerUrl())
+        .setBulkSize(50)
+        .setMaxCacheSize(EVENTS * 2)
+        .setFlushSec(3600)
+        .setSenderThreads(senderThreads)
+        .setCallback(new Callback() {
+          @Override
+          public void onFailed(FailedData failedData) {
+            failed.addAndGet(failedData.getFailedData().size());
+          }
+        })
+        .build();
+    events = new ArrayList<>(EVENTS);
+    for (int i = 0; i < EVENTS; i++) {
+      Map<String, Object> event = TransportModeBenchmark.event(i);
+      event.put("distinct_id", "user-" + i % 100);
+      events.add(event);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.out.printf("%nsenderThreads=%d latencyMs=%d receiver: %s, failed=%d%n", senderThreads, latencyMs,
+        receiver.report(), failed.get());
+    consumer.close();
+    receiver.stop();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public void sendAndFlush() {
+    for (Map<String, Object> event : events) {
+      consumer.send(event);
+    }
+    consumer.flush();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(FastBatchSenderBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
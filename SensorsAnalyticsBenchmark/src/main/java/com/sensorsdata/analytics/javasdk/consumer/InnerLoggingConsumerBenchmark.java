@@ -0,0 +1,130 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoggingConsumer 与 ConcurrentLoggingConsumer 共用的 {@link InnerLoggingConsumer} 的序列化与缓存开销
+ * <p>
+ * 文件写入被替换为直接丢弃，只衡量 SDK 侧的 CPU 与内存分配：send 为单条数据序列化并写入缓存（包含按 bufferSize 均摊的 flush），
+ * sendAndFlush 为写入 50 条数据后执行一次 flush。需要关注 gc 分析器输出的 gc.alloc.rate.norm，main 方法默认开启。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InnerLoggingConsumerBenchmark {
+
+  private static final int FLUSH_BULK_SIZE = 50;
+
+  /**
+   * 是否开启异步写入，开启后文件写入在后台线程完成，这里衡量的是调用方写入缓存与交换缓存的开销
+   */
+  @Param({"false", "true"})
+  public boolean async;
+
+  /**
+   * 是否开启 gzip 输出，开启后每次写文件前将缓存压缩为一个 gzip member，写入的字节数约为原始数据的 1/10
+   */
+  @Param({"false", "true"})
+  public boolean gzip;
+
+  private InnerLoggingConsumer consumer;
+  private Map<String, Object> message;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    consumer = new InnerLoggingConsumer(new DiscardingFileWriterFactory(), "benchmark", 8192, LogSplitMode.DAY);
+    if (gzip) {
+      consumer.enableGzip();
+    }
+    if (async) {
+      consumer.enableAsync(32 * 1024 * 1024, 1000);
+    }
+    message = TransportModeBenchmark.event(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    consumer.close();
+  }
+
+  @Benchmark
+  public void send() {
+    consumer.send(message);
+  }
+
+  @Benchmark
+  public void sendAndFlush() {
+    for (int i = 0; i < FLUSH_BULK_SIZE; i++) {
+      consumer.send(message);
+    }
+    consumer.flush();
+  }
+
+  /**
+   * 只保留写入字节数，不落盘
+   */
+  static class DiscardingFileWriterFactory implements LoggingFileWriterFactory {
+
+    @Override
+    public LoggingFileWriter getFileWriter(String fileName, String scheduleFileName) {
+      return new LoggingFileWriter() {
+        private long written;
+
+        @Override
+        public boolean isValid(String fileName) {
+          return true;
+        }
+
+        @Override
+        public boolean write(LoggingBuffer buffer) {
+          written += buffer.size();
+          return true;
+        }
+
+        @Override
+        public void sync() {
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+
+    @Override
+    public void closeFileWriter(LoggingFileWriter writer) {
+      writer.close();
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(InnerLoggingConsumerBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,85 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConcurrentLoggingConsumer 在不同刷盘策略下写本地磁盘的吞吐
+ * <p>
+ * 数据写入 java.io.tmpdir 下的临时目录，可以通过 -Djava.io.tmpdir 指定要测试的磁盘；结果与磁盘类型（SSD、HDD、网络盘）强相关，
+ * 需要在目标机器上运行。GROUP_COMMIT 使用默认的 1MB / 1000ms 间隔。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogFsyncPolicyBenchmark {
+
+  @Param({"NONE", "GROUP_COMMIT", "FLUSH"})
+  public LogFsyncPolicy fsyncPolicy;
+
+  @Param({"false", "true"})
+  public boolean async;
+
+  private File dir;
+  private ConcurrentLoggingConsumer consumer;
+  private Map<String, Object> message;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("sa-fsync").toFile();
+    consumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(new File(dir, "benchmark.log").getAbsolutePath())
+        .setFsyncPolicy(fsyncPolicy)
+        .setAsync(async)
+        .build();
+    message = TransportModeBenchmark.event(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    consumer.close();
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Benchmark
+  public void send() {
+    consumer.send(message);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(LogFsyncPolicyBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,109 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * FastBatchConsumer 缓存队列入队性能对比：LinkedBlockingQueue 与 MpscRingBuffer
+ * <p>
+ * 每个 trial 启动一个后台线程按 bulkSize 批量取数，模拟 FastBatchConsumer 的定时 flush 线程；
+ * 生产者线程数通过 JMH 的 -t 参数指定，直接运行 main 方法会依次测试 1、8、64 个生产者线程。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageQueueBenchmark {
+
+  @Param({"linked", "ring"})
+  public String queueType;
+
+  @Param({"6000"})
+  public int capacity;
+
+  @Param({"50"})
+  public int bulkSize;
+
+  private MessageQueue<Map<String, Object>> queue;
+  private Map<String, Object> message;
+  private Thread drainThread;
+  private volatile boolean running;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if ("ring".equals(queueType)) {
+      queue = new MpscRingBuffer<>(capacity);
+    } else {
+      queue = new LinkedMessageQueue<>(capacity);
+    }
+    message = new HashMap<>();
+    message.put("distinct_id", "12345");
+    message.put("event", "test");
+    message.put("type", "track");
+    running = true;
+    drainThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        List<Map<String, Object>> batch = new ArrayList<>(bulkSize);
+        while (running) {
+          if (queue.drainTo(batch, bulkSize) == 0) {
+            Thread.yield();
+          }
+          batch.clear();
+        }
+      }
+    }, "benchmark-drain");
+    drainThread.setDaemon(true);
+    drainThread.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    running = false;
+    drainThread.join();
+  }
+
+  /**
+   * 队列满时短暂让出 CPU 后重试，统计的是成功入队的吞吐
+   */
+  @Benchmark
+  public void offer() {
+    while (!queue.offer(message)) {
+      LockSupport.parkNanos(1000L);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : new int[] {1, 8, 64}) {
+      Options options = new OptionsBuilder()
+          .include(MessageQueueBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.NameValuePair;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量数据序列化与编码开销
+ * <p>
+ * jacksonBatch 为一批数据的 JSON 序列化；getNameValuePairs 为 {@link HttpConsumer#consume(String)} 路径上的
+ * gzip 压缩与 base64 编码（输入为已经序列化好的 JSON 字符串）。需要关注 gc 分析器输出的 gc.alloc.rate.norm，main 方法默认开启。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+  @Param({"1", "50"})
+  public int bulkSize;
+
+  private ObjectMapper jsonMapper;
+  private HttpConsumer httpConsumer;
+  private List<Map<String, Object>> batch;
+  private String data;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+    httpConsumer = new HttpConsumer(HttpClients.custom(), "http://127.0.0.1:8106/sa", null, 3);
+    batch = new ArrayList<>(bulkSize);
+    for (int i = 0; i < bulkSize; i++) {
+      batch.add(TransportModeBenchmark.event(i));
+    }
+    data = jsonMapper.writeValueAsString(batch);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    httpConsumer.close();
+  }
+
+  @Benchmark
+  public byte[] jacksonBatch() throws IOException {
+    return jsonMapper.writeValueAsBytes(batch);
+  }
+
+  @Benchmark
+  public List<NameValuePair> getNameValuePairs() throws IOException {
+    return httpConsumer.getNameValuePairs(data);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(SerializationBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
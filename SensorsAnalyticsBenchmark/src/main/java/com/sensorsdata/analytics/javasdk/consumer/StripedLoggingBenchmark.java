@@ -0,0 +1,76 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InnerLoggingConsumer 分条带写入的多线程扩展性
+ * <p>
+ * 文件写入被替换为直接丢弃，只衡量 send 的锁竞争；stripes 为 0 时所有线程竞争 consumer 的锁。
+ * main 方法依次以 1、2、4、8、16、32、64 个线程运行，得到吞吐随线程数变化的曲线：
+ * <pre>
+ *   java -cp target/benchmarks.jar com.sensorsdata.analytics.javasdk.consumer.StripedLoggingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class StripedLoggingBenchmark {
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+  @Param({"0", "16"})
+  public int stripes;
+
+  private InnerLoggingConsumer consumer;
+  private Map<String, Object> message;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    consumer = new InnerLoggingConsumer(new InnerLoggingConsumerBenchmark.DiscardingFileWriterFactory(), "benchmark",
+        8192, LogSplitMode.DAY);
+    consumer.enableStripes(stripes);
+    message = TransportModeBenchmark.event(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    consumer.close();
+  }
+
+  @Benchmark
+  public void send() {
+    consumer.send(message);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : THREADS) {
+      Options options = new OptionsBuilder()
+          .include(StripedLoggingBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.receiver.ReceiverStandIn;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同请求体格式（{@link TransportMode}）的编码开销与传输字节数对比
+ * <p>
+ * encode 只构造请求体并写入计数输出流，衡量 SDK 侧 CPU 开销；send 通过 {@link ReceiverStandIn} 完成真实的 HTTP 请求，
+ * trial 结束时打印接收端统计的每条数据字节数与解码 CPU 时间。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportModeBenchmark {
+
+  @Param({"FORM", "OCTET_STREAM", "NDJSON"})
+  public TransportMode mode;
+
+  @Param({"50"})
+  public int bulkSize;
+
+  private ReceiverStandIn receiver;
+  private HttpConsumer httpConsumer;
+  private List<Map<String, Object>> batch;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    receiver = new ReceiverStandIn(0, 2).start();
+    httpConsumer = new HttpConsumer(HttpClients.custom(), receiver.getServerUrl(), null, 3, mode);
+    batch = new ArrayList<>(bulkSize);
+    for (int i = 0; i < bulkSize; i++) {
+      batch.add(event(i));
+    }
+    CountingOutputStream counter = new CountingOutputStream();
+    httpConsumer.getHttpEntry(batch).writeTo(counter);
+    System.out.printf("%n%s request body: %d bytes per batch of %d%n", mode, counter.count, bulkSize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.out.printf("%n%s receiver: %s%n", mode, receiver.report());
+    httpConsumer.close();
+    receiver.stop();
+  }
+
+  @Benchmark
+  public long encode() throws IOException {
+    HttpEntity entity = httpConsumer.getHttpEntry(batch);
+    CountingOutputStream counter = new CountingOutputStream();
+    entity.writeTo(counter);
+    return counter.count;
+  }
+
+  @Benchmark
+  public void send() throws Exception {
+    httpConsumer.consume(batch);
+  }
+
+  static Map<String, Object> event(int index) {
+    Map<String, Object> lib = new HashMap<>();
+    lib.put("$lib", "Java");
+    lib.put("$lib_version", "3.6.8");
+    lib.put("$lib_method", "code");
+    lib.put("$lib_detail", "com.example.OrderService##submit##OrderService.java##128");
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("$lib", "Java");
+    properties.put("$lib_version", "3.6.8");
+    properties.put("$is_login_id", true);
+    properties.put("order_id", "ORD" + (100000000 + index));
+    properties.put("product_name", "测试商品-" + index);
+    properties.put("price", 99.5 + index);
+    properties.put("quantity", index % 5 + 1);
+    properties.put("channel", index % 2 == 0 ? "app" : "web");
+    Map<String, Object> event = new HashMap<>();
+    event.put("_track_id", 1000000 + index);
+    event.put("type", "track");
+    event.put("event", "SubmitOrder");
+    event.put("time", 1760000000000L + index);
+    event.put("distinct_id", "user-" + (index % 10));
+    event.put("lib", lib);
+    event.put("properties", properties);
+    return event;
+  }
+
+  static class CountingOutputStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(TransportModeBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
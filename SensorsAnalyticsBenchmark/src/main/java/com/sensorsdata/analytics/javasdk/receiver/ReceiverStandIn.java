@@ -0,0 +1,275 @@
+package com.sensorsdata.analytics.javasdk.receiver;
+
+import com.sensorsdata.analytics.javasdk.consumer.CompressionCodec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * 本地接收端替身，用于离线对比不同请求体格式的带宽与解码开销
+ * <p>
+ * 支持 SDK 的三种请求体格式：application/x-www-form-urlencoded（data_list）、
+ * application/octet-stream（gzip JSON 数组）以及 application/x-ndjson（gzip NDJSON）；后两种格式同时支持不压缩，
+ * 以及使用 SDK 默认预置字典的 deflate 压缩。
+ * 每个请求都会被完整解码并逐条解析，统计请求数、数据条数、请求体字节数以及解码消耗的 CPU 时间。
+ * <p>
+ * 单独运行：{@code java -cp target/benchmarks.jar com.sensorsdata.analytics.javasdk.receiver.ReceiverStandIn 8106}
+ */
+public class ReceiverStandIn {
+
+  private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+  private static final byte[] DICTIONARY = CompressionCodec.getDefaultDictionary();
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong records = new AtomicLong();
+  private final AtomicLong bodyBytes = new AtomicLong();
+  private final AtomicLong decodeCpuNanos = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private volatile long latencyMs;
+
+  /**
+   * @param port 监听端口，0 表示随机端口
+   * @param threads 处理请求的线程数
+   */
+  public ReceiverStandIn(int port, int threads) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+    this.executor = Executors.newFixedThreadPool(threads);
+    server.createContext("/sa", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        receive(exchange);
+      }
+    });
+    server.setExecutor(executor);
+  }
+
+  public ReceiverStandIn start() {
+    server.start();
+    return this;
+  }
+
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * 每个请求在返回响应前等待的时间，用于模拟网络往返与接收端处理耗时；处理线程数需要不小于客户端并发请求数
+   */
+  public ReceiverStandIn setLatencyMs(long latencyMs) {
+    this.latencyMs = latencyMs;
+    return this;
+  }
+
+  public String getServerUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/sa";
+  }
+
+  public void reset() {
+    requests.set(0);
+    records.set(0);
+    bodyBytes.set(0);
+    decodeCpuNanos.set(0);
+    errors.set(0);
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getRecords() {
+    return records.get();
+  }
+
+  public long getBodyBytes() {
+    return bodyBytes.get();
+  }
+
+  public long getDecodeCpuNanos() {
+    return decodeCpuNanos.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * 当前统计结果，包含每条数据平均占用的请求体字节数与解码 CPU 时间
+   */
+  public String report() {
+    long count = Math.max(records.get(), 1);
+    return String.format("requests=%d, records=%d, errors=%d, bodyBytes=%d, bytes/record=%.1f, decodeCpu ns/record=%.0f",
+        requests.get(), records.get(), errors.get(), bodyBytes.get(), (double) bodyBytes.get() / count,
+        (double) decodeCpuNanos.get() / count);
+  }
+
+  private void receive(HttpExchange exchange) throws IOException {
+    int status = 200;
+    try {
+      byte[] body = readFully(exchange.getRequestBody());
+      long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+      int count = decode(exchange.getRequestHeaders().getFirst("Content-Type"),
+          exchange.getRequestHeaders().getFirst("Content-Encoding"), body);
+      decodeCpuNanos.addAndGet(threadMXBean.getCurrentThreadCpuTime() - cpuStart);
+      requests.incrementAndGet();
+      records.addAndGet(count);
+      bodyBytes.addAndGet(body.length);
+    } catch (Exception e) {
+      errors.incrementAndGet();
+      status = 400;
+    }
+    if (latencyMs > 0) {
+      try {
+        Thread.sleep(latencyMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    exchange.sendResponseHeaders(status, -1);
+    exchange.close();
+  }
+
+  /**
+   * 解码请求体并返回其中的数据条数
+   */
+  static int decode(String contentType, String contentEncoding, byte[] body) throws IOException {
+    if (contentType == null || contentType.startsWith("application/x-www-form-urlencoded")) {
+      return decodeForm(body);
+    }
+    InputStream in = new ByteArrayInputStream(body);
+    if ("gzip".equalsIgnoreCase(contentEncoding)) {
+      in = new GZIPInputStream(in);
+    } else if ("deflate".equalsIgnoreCase(contentEncoding)) {
+      in = new ByteArrayInputStream(inflate(body));
+    }
+    if (contentType.startsWith("application/x-ndjson")) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+      int count = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          checkRecord(JSON_MAPPER.readTree(line));
+          count++;
+        }
+      }
+      return count;
+    }
+    if (contentType.startsWith("application/octet-stream")) {
+      return checkArray(JSON_MAPPER.readTree(in));
+    }
+    throw new IOException("Unsupported Content-Type: " + contentType);
+  }
+
+  private static int decodeForm(byte[] body) throws IOException {
+    String gzip = null;
+    String dataList = null;
+    for (String pair : new String(body, StandardCharsets.ISO_8859_1).split("&")) {
+      int index = pair.indexOf('=');
+      String name = index < 0 ? pair : pair.substring(0, index);
+      String value = index < 0 ? "" : URLDecoder.decode(pair.substring(index + 1), "UTF-8");
+      if ("gzip".equals(name)) {
+        gzip = value;
+      } else if ("data_list".equals(name)) {
+        dataList = value;
+      }
+    }
+    if (dataList == null) {
+      throw new IOException("The data_list is missing.");
+    }
+    InputStream in = new ByteArrayInputStream(Base64.getDecoder().decode(dataList));
+    if ("1".equals(gzip)) {
+      in = new GZIPInputStream(in);
+    }
+    return checkArray(JSON_MAPPER.readTree(in));
+  }
+
+  private static int checkArray(JsonNode arrayNode) throws IOException {
+    if (arrayNode == null || !arrayNode.isArray()) {
+      throw new IOException("The data is not a json array.");
+    }
+    for (JsonNode record : arrayNode) {
+      checkRecord(record);
+    }
+    return arrayNode.size();
+  }
+
+  private static void checkRecord(JsonNode record) throws IOException {
+    if (!record.has("type")) {
+      throw new IOException("The record has no type.");
+    }
+  }
+
+  /**
+   * 解压带字典 ID 的 zlib 数据，字典为 {@link CompressionCodec#getDefaultDictionary()}
+   */
+  private static byte[] inflate(byte[] body) throws IOException {
+    Inflater inflater = new Inflater();
+    inflater.setInput(body);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+    byte[] buffer = new byte[8192];
+    try {
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buffer);
+        if (n == 0 && inflater.needsDictionary()) {
+          inflater.setDictionary(DICTIONARY);
+        } else if (n == 0 && inflater.needsInput()) {
+          throw new IOException("Unexpected end of deflate stream.");
+        }
+        out.write(buffer, 0, n);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream(8192);
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      os.write(buffer, 0, n);
+    }
+    in.close();
+    return os.toByteArray();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8106;
+    final ReceiverStandIn receiver = new ReceiverStandIn(port, Runtime.getRuntime().availableProcessors()).start();
+    System.out.println("Receiver stand-in listening on " + receiver.getServerUrl());
+    while (true) {
+      Thread.sleep(10000L);
+      System.out.println(receiver.report());
+    }
+  }
+}
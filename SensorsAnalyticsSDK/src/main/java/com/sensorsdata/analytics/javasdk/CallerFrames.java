@@ -0,0 +1,28 @@
+package com.sensorsdata.analytics.javasdk;
+
+/**
+ * 获取调用栈中的指定帧
+ * <p>
+ * JDK 8 及以下版本通过异常获取完整调用栈；JDK 9 及以上版本使用 jar 包 META-INF/versions/9 中的同名实现，
+ * 通过 StackWalker 只遍历需要的几帧。
+ */
+final class CallerFrames {
+
+  /**
+   * 是否使用 StackWalker 实现
+   */
+  static final boolean STACK_WALKER = false;
+
+  private CallerFrames() {
+  }
+
+  /**
+   * @param skip 跳过的帧数，0 表示调用本方法的方法
+   * @return 对应的帧，调用栈深度不足时返回 null
+   */
+  static StackTraceElement frame(int skip) {
+    StackTraceElement[] trace = new Throwable().getStackTrace();
+    int index = skip + 1;
+    return trace.length > index ? trace[index] : null;
+  }
+}
@@ -69,6 +69,20 @@ public interface ISensorsAnalytics {
      */
     void setGlobalEnableCollectMethodStack(boolean enableCollectLibDetail);
 
+    /**
+     * 全局接口；$lib_detail 调用者信息的采集方式，默认 {@link LibDetailStrategy#EVERY_CALL}
+     *
+     * @param strategy 采集方式，参见 {@link LibDetailStrategy}
+     */
+    void setLibDetailStrategy(@NonNull LibDetailStrategy strategy);
+
+    /**
+     * 全局接口；{@link LibDetailStrategy#SAMPLED} 方式下的抽样间隔，平均每 sampleInterval 条数据采集一次，默认 100
+     *
+     * @param sampleInterval 抽样间隔，需要大于 0
+     */
+    void setLibDetailSampleInterval(int sampleInterval);
+
     /**
      * 记录事件
      *
@@ -0,0 +1,84 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static com.sensorsdata.analytics.javasdk.SensorsConst.DEFAULT_LIB_DETAIL;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按 {@link LibDetailStrategy} 采集 $lib_detail
+ * <p>
+ * 调用位置（类、方法、文件、行号）对应的字符串会被缓存，同一调用位置不再重复格式化；缓存条数达到上限后不再新增。
+ */
+final class LibDetailCollector {
+
+  private static final int MAX_CACHED_CALL_SITES = 4096;
+
+  private final ConcurrentMap<StackTraceElement, String> callSites = new ConcurrentHashMap<>();
+  private volatile LibDetailStrategy strategy = LibDetailStrategy.EVERY_CALL;
+  private volatile int sampleInterval = 100;
+
+  void setStrategy(LibDetailStrategy strategy) {
+    if (strategy == null) {
+      throw new IllegalArgumentException("The strategy is empty.");
+    }
+    this.strategy = strategy;
+  }
+
+  LibDetailStrategy getStrategy() {
+    return strategy;
+  }
+
+  void setSampleInterval(int sampleInterval) {
+    if (sampleInterval < 1) {
+      throw new IllegalArgumentException("The sampleInterval must be positive.");
+    }
+    this.sampleInterval = sampleInterval;
+  }
+
+  /**
+   * 采集调用者信息，skip 为相对调用本方法的方法需要跳过的帧数
+   *
+   * @return 调用栈深度不足时返回 null
+   */
+  String collect(int skip) {
+    switch (strategy) {
+      case OFF:
+        return DEFAULT_LIB_DETAIL;
+      case SAMPLED:
+        int interval = sampleInterval;
+        if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) {
+          return DEFAULT_LIB_DETAIL;
+        }
+        break;
+      default:
+        break;
+    }
+    // 跳过本方法
+    StackTraceElement frame = CallerFrames.frame(skip + 1);
+    if (frame == null) {
+      return null;
+    }
+    String detail = callSites.get(frame);
+    if (detail == null) {
+      detail = format(frame);
+      if (callSites.size() < MAX_CACHED_CALL_SITES) {
+        callSites.putIfAbsent(frame, detail);
+      }
+    }
+    return detail;
+  }
+
+  /**
+   * 与 String.format("%s##%s##%s##%s", ...) 的结果一致
+   */
+  static String format(StackTraceElement frame) {
+    return new StringBuilder(128)
+        .append(frame.getClassName()).append("##")
+        .append(frame.getMethodName()).append("##")
+        .append(frame.getFileName()).append("##")
+        .append(frame.getLineNumber())
+        .toString();
+  }
+}
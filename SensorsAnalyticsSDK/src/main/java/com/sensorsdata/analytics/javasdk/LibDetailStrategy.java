@@ -0,0 +1,19 @@
+package com.sensorsdata.analytics.javasdk;
+
+/**
+ * $lib_detail 调用者信息的采集方式，采集到的内容格式均为 类名##方法名##文件名##行号
+ */
+public enum LibDetailStrategy {
+  /**
+   * 每条数据都采集调用者信息，默认方式；JDK 9 及以上版本使用 StackWalker 只遍历所需的几帧，同一调用位置的格式化结果会被缓存
+   */
+  EVERY_CALL,
+  /**
+   * 按 sampleInterval 抽样，平均每 sampleInterval 条数据采集一次，其余数据的 $lib_detail 为固定值 JavaSDK##generateLibInfo
+   */
+  SAMPLED,
+  /**
+   * 不采集，$lib_detail 为固定值 JavaSDK##generateLibInfo
+   */
+  OFF
+}
@@ -84,6 +84,16 @@ public class SensorsAnalytics implements ISensorsAnalytics {
         worker.setEnableCollectMethodStack(enableCollectLibDetail);
     }
 
+    @Override
+    public void setLibDetailStrategy(@NonNull LibDetailStrategy strategy) {
+        worker.setLibDetailStrategy(strategy);
+    }
+
+    @Override
+    public void setLibDetailSampleInterval(int sampleInterval) {
+        worker.setLibDetailSampleInterval(sampleInterval);
+    }
+
     public SensorsAnalytics(final Consumer consumer) {
         clearSuperProper();
         worker = new SensorsAnalyticsWorker(consumer);
@@ -1,7 +1,6 @@
 package com.sensorsdata.analytics.javasdk;
 
 import static com.sensorsdata.analytics.javasdk.SensorsConst.BIND_ID_ACTION_TYPE;
-import static com.sensorsdata.analytics.javasdk.SensorsConst.DEFAULT_LIB_DETAIL;
 import static com.sensorsdata.analytics.javasdk.SensorsConst.LIB;
 import static com.sensorsdata.analytics.javasdk.SensorsConst.LIB_DETAIL_SYSTEM_ATTR;
 import static com.sensorsdata.analytics.javasdk.SensorsConst.LIB_METHOD_SYSTEM_ATTR;
@@ -13,6 +12,7 @@ import static com.sensorsdata.analytics.javasdk.SensorsConst.TRACK_SIGN_UP_ACTIO
 import static com.sensorsdata.analytics.javasdk.SensorsConst.UNBIND_ID_ACTION_TYPE;
 
 import com.sensorsdata.analytics.javasdk.consumer.Consumer;
+import com.sensorsdata.analytics.javasdk.consumer.ShutdownCoordinator;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -27,17 +27,12 @@ class SensorsAnalyticsWorker {
 
   private boolean timeFree = false;
 
-  private boolean enableCollectMethodStack = true;
+  private final LibDetailCollector libDetailCollector = new LibDetailCollector();
 
   public SensorsAnalyticsWorker(Consumer consumer) {
     this.consumer = consumer;
-    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
-      @Override
-      public void run() {
-        log.info("Triggered flush when the program is closed.");
-        flush();
-      }
-    }));
+    // 所有实例共用一个关闭钩子，进程退出时在截止时间内并行 flush
+    ShutdownCoordinator.getDefault().register(consumer);
   }
 
   void doAddData(@NonNull SensorsData sensorsData) {
@@ -57,6 +52,7 @@ class SensorsAnalyticsWorker {
   }
 
   void shutdown() {
+    ShutdownCoordinator.getDefault().unregister(consumer);
     this.consumer.close();
   }
 
@@ -78,7 +74,15 @@ class SensorsAnalyticsWorker {
   }
 
   public void setEnableCollectMethodStack(boolean enableCollectMethodStack) {
-    this.enableCollectMethodStack = enableCollectMethodStack;
+    libDetailCollector.setStrategy(enableCollectMethodStack ? LibDetailStrategy.EVERY_CALL : LibDetailStrategy.OFF);
+  }
+
+  public void setLibDetailStrategy(LibDetailStrategy strategy) {
+    libDetailCollector.setStrategy(strategy);
+  }
+
+  public void setLibDetailSampleInterval(int sampleInterval) {
+    libDetailCollector.setSampleInterval(sampleInterval);
   }
 
   public Map<String, String> generateLibInfo() {
@@ -86,16 +90,10 @@ class SensorsAnalyticsWorker {
     libProperties.put(LIB_SYSTEM_ATTR, LIB);
     libProperties.put(LIB_VERSION_SYSTEM_ATTR, SDK_VERSION);
     libProperties.put(LIB_METHOD_SYSTEM_ATTR, "code");
-    if (enableCollectMethodStack) {
-      StackTraceElement[] trace = (new Exception()).getStackTrace();
-      if (trace.length > 3) {
-        StackTraceElement traceElement = trace[3];
-        libProperties.put(LIB_DETAIL_SYSTEM_ATTR,
-            String.format("%s##%s##%s##%s", traceElement.getClassName(), traceElement.getMethodName(),
-                traceElement.getFileName(), traceElement.getLineNumber()));
-      }
-    } else {
-      libProperties.put(LIB_DETAIL_SYSTEM_ATTR, DEFAULT_LIB_DETAIL);
+    // 跳过 doAddData/doSchemaData 与 SensorsAnalytics 的接口方法
+    String libDetail = libDetailCollector.collect(3);
+    if (libDetail != null) {
+      libProperties.put(LIB_DETAIL_SYSTEM_ATTR, libDetail);
     }
     return libProperties;
   }
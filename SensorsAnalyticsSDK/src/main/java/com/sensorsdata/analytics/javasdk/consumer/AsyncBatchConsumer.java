@@ -0,0 +1,492 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.SensorsConst;
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于 HttpAsyncClient（NIO）的网络批量请求发送
+ * <p>
+ * 少量 I/O 线程即可同时保持多个批次在途，发送吞吐不再受限于 bulkSize / RTT。send 只将数据放入缓存，序列化、压缩及发起请求
+ * 都在后台发送线程中完成；在途批次数达到 maxInFlight 时发送线程阻塞等待，数据积压在缓存中，缓存已满时新数据通过
+ * {@link Callback} 返回，调用线程不会被阻塞。发送失败的数据通过 {@link Callback} 返回，回调在 I/O 线程中执行，不应做耗时操作。
+ * 不同批次的请求并发进行，服务端收到数据的顺序与调用顺序可能不一致。
+ * <p>
+ * 使用该 Consumer 需要额外引入 org.apache.httpcomponents:httpasyncclient 依赖。
+ */
+@Slf4j
+public class AsyncBatchConsumer implements SpillableConsumer {
+
+  private static final int MAX_CACHE_SIZE = 10000;
+  private static final int MIN_CACHE_SIZE = 1000;
+  private static final int MIN_BULK_SIZE = 1;
+
+  private final MessageQueue<Map<String, Object>> buffer;
+  private final CloseableHttpAsyncClient httpClient;
+  private final ObjectMapper jsonMapper;
+  private final String serverUrl;
+  private final TransportMode transportMode;
+  private final CompressionCodec compressionCodec;
+  private final Callback callback;
+  private final int bulkSize;
+  private final int maxInFlight;
+  private final Semaphore inFlight;
+  private final long timeoutMs;
+  /**
+   * 后台发送线程，定时及缓存达到 bulkSize 时从缓存取出数据发起请求
+   */
+  private final ScheduledExecutorService executorService;
+  private final AtomicBoolean dispatchRequested = new AtomicBoolean();
+  private final InstantEvents instantEvents;
+  /**
+   * 即时事件的独立缓存，不与普通事件混批，达到 bulkSize 或等待超过 instantFlushMs 时发出；未配置即时事件时为 null
+   */
+  private final MessageQueue<Map<String, Object>> instantBuffer;
+  private final long instantFlushMs;
+  /**
+   * {@link #drainUnsent()} 调用后不再发起新的请求
+   */
+  private volatile boolean draining;
+
+  private AsyncBatchConsumer(Builder builder) {
+    if (builder.serverUrl == null) {
+      throw new IllegalArgumentException("The serverUrl is empty.");
+    }
+    if (builder.callback == null) {
+      throw new IllegalArgumentException("The callback is empty.");
+    }
+    this.serverUrl = builder.serverUrl.trim();
+    this.transportMode = builder.transportMode;
+    if (builder.compressionCodec.hasPresetDictionary() && transportMode == TransportMode.FORM) {
+      throw new IllegalArgumentException("The preset dictionary is not supported in FORM transport mode.");
+    }
+    this.compressionCodec = builder.compressionCodec;
+    this.callback = builder.callback;
+    this.instantEvents = new InstantEvents(builder.instantEvents);
+    this.bulkSize = Math.min(MIN_CACHE_SIZE, Math.max(builder.bulkSize, MIN_BULK_SIZE));
+    this.maxInFlight = Math.max(builder.maxInFlight, 1);
+    this.inFlight = new Semaphore(maxInFlight);
+    this.buffer = new LinkedMessageQueue<>(Math.min(Math.max(MIN_CACHE_SIZE, builder.maxCacheSize), MAX_CACHE_SIZE));
+    this.instantBuffer = instantEvents.isEmpty() ? null
+        : new LinkedMessageQueue<Map<String, Object>>(Math.min(Math.max(MIN_CACHE_SIZE, builder.maxCacheSize),
+            MAX_CACHE_SIZE));
+    this.instantFlushMs = Math.max(builder.instantFlushMs, 0);
+    this.jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+
+    int timeout = Math.max(builder.timeoutSec, 1) * 1000;
+    this.timeoutMs = timeout;
+    RequestConfig requestConfig = RequestConfig.custom().setConnectionRequestTimeout(timeout)
+        .setConnectTimeout(timeout).setSocketTimeout(timeout).build();
+    IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+        .setIoThreadCount(Math.max(builder.ioThreads, 1))
+        .setConnectTimeout(timeout)
+        .setSoTimeout(timeout)
+        .build();
+    HttpAsyncClientBuilder httpClientBuilder =
+        builder.httpClientBuilder == null ? HttpAsyncClients.custom() : builder.httpClientBuilder;
+    this.httpClient = httpClientBuilder
+        .setUserAgent(String.format("SensorsAnalytics Java SDK %s", SensorsConst.SDK_VERSION))
+        .setDefaultRequestConfig(requestConfig)
+        .setDefaultIOReactorConfig(ioReactorConfig)
+        .setMaxConnPerRoute(maxInFlight)
+        .setMaxConnTotal(maxInFlight)
+        .build();
+    this.httpClient.start();
+
+    executorService = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "sa-async-batch-flush");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        dispatch(true);
+      }
+    }, 1, Math.max(builder.flushSec, 1), TimeUnit.SECONDS);
+    if (instantBuffer != null && instantFlushMs > 0) {
+      executorService.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          dispatchInstant();
+        }
+      }, instantFlushMs, instantFlushMs, TimeUnit.MILLISECONDS);
+    }
+    log.info("Initialize AsyncBatchConsumer with params:[bulkSize:{};maxCacheSize:{};flushSec:{};timeoutSec:{};"
+            + "maxInFlight:{};ioThreads:{};transportMode:{};compressionCodec:{};instantFlushMs:{}].", builder.bulkSize,
+        builder.maxCacheSize, builder.flushSec, builder.timeoutSec, maxInFlight, builder.ioThreads, transportMode,
+        compressionCodec, instantFlushMs);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public void send(Map<String, Object> message) {
+    if (instantEvents.isInstant(message)) {
+      if (!instantBuffer.offer(message)) {
+        log.error("Failed to save instant data to cache because the cache is full.");
+        notifyFailed("the cache is full.", Collections.singletonList(message));
+        return;
+      }
+      if (instantFlushMs <= 0 || instantBuffer.size() >= bulkSize) {
+        requestDispatch();
+      }
+      return;
+    }
+    if (!buffer.offer(message)) {
+      requestDispatch();
+      log.error("Failed to save data to cache because the cache is full.");
+      notifyFailed("the cache is full.", Collections.singletonList(message));
+      return;
+    }
+    if (buffer.size() >= bulkSize) {
+      requestDispatch();
+    }
+  }
+
+  /**
+   * 不等待下一个 flushSec 周期，立即在后台发送线程中发出满 bulkSize 的批次及即时事件
+   */
+  private void requestDispatch() {
+    if (dispatchRequested.compareAndSet(false, true)) {
+      try {
+        executorService.execute(new Runnable() {
+          @Override
+          public void run() {
+            dispatchRequested.set(false);
+            dispatch(false);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        dispatchRequested.set(false);
+      }
+    }
+  }
+
+  /**
+   * 在调用线程中发出缓存中的全部数据，并等待所有在途批次完成
+   */
+  @Override
+  public void flush() {
+    dispatch(true);
+    try {
+      inFlight.acquire(maxInFlight);
+      inFlight.release(maxInFlight);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while waiting for in-flight batches.");
+    }
+    log.debug("Finish flush.");
+  }
+
+  @Override
+  public void close() {
+    log.info("Call close method.");
+    this.executorService.shutdown();
+    try {
+      // 发送线程最多等待一个在途请求超时后获得名额
+      if (!executorService.awaitTermination(timeoutMs * 2, TimeUnit.MILLISECONDS)) {
+        log.warn("Sender thread did not finish in {} ms.", timeoutMs * 2);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+    try {
+      this.httpClient.close();
+    } catch (IOException e) {
+      log.warn("Failed to close http client.", e);
+    }
+  }
+
+  /**
+   * 停止发起新的请求并取出缓存中的数据，在途请求不受影响
+   */
+  @Override
+  public List<Map<String, Object>> drainUnsent() {
+    draining = true;
+    List<Map<String, Object>> results = new ArrayList<>();
+    if (instantBuffer != null) {
+      instantBuffer.drainTo(results);
+    }
+    buffer.drainTo(results);
+    log.info("Drain {} unsent messages.", results.size());
+    return results;
+  }
+
+  /**
+   * 当前在途（已发出尚未完成）的批次数
+   */
+  public int getInFlightCount() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  /**
+   * 从缓存中取出数据并发起请求，不等待请求完成
+   *
+   * @param all true：取出全部数据；false：只取出满 bulkSize 的批次
+   */
+  private void dispatch(boolean all) {
+    dispatchInstant();
+    while (!draining && (all || buffer.size() >= bulkSize)) {
+      List<Map<String, Object>> batch = new ArrayList<>(bulkSize);
+      if (buffer.drainTo(batch, bulkSize) == 0) {
+        return;
+      }
+      submit(batch, false);
+    }
+  }
+
+  /**
+   * 发出即时事件缓存中的全部数据，先于普通事件获取在途名额
+   */
+  private void dispatchInstant() {
+    if (instantBuffer == null) {
+      return;
+    }
+    while (!draining) {
+      List<Map<String, Object>> batch = new ArrayList<>();
+      if (instantBuffer.drainTo(batch, bulkSize) == 0) {
+        return;
+      }
+      submit(batch, true);
+    }
+  }
+
+  private void submit(final List<Map<String, Object>> batch, boolean instant) {
+    List<NameValuePair> extraParams =
+        instant ? InstantHttpConsumer.INSTANT_EVENT_PARAMS : Collections.<NameValuePair>emptyList();
+    HttpPost request = HttpConsumer.newHttpPost(serverUrl, transportMode, extraParams);
+    try {
+      request.setEntity(HttpConsumer.newHttpEntity(jsonMapper, batch, transportMode, compressionCodec, extraParams));
+    } catch (JsonProcessingException e) {
+      log.error("Failed to process json.", e);
+      notifyFailed(String.format("can't process json,message:%s.", e.getMessage()), batch);
+      return;
+    } catch (IOException e) {
+      log.error("Failed to build request.", e);
+      notifyFailed(String.format("failed to send data,message:%s.", e.getMessage()), batch);
+      return;
+    }
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      notifyFailed("interrupted while waiting for in-flight batches.", batch);
+      return;
+    }
+    log.debug("Data will be sent.{}", batch);
+    try {
+      httpClient.execute(request, new BatchCallback(batch));
+    } catch (Exception e) {
+      inFlight.release();
+      log.error("Failed to send data:{}.", batch, e);
+      notifyFailed(String.format("failed to send data,message:%s.", e.getMessage()), batch);
+    }
+  }
+
+  private void notifyFailed(String message, List<Map<String, Object>> batch) {
+    try {
+      callback.onFailed(new FailedData(message, SensorsAnalyticsUtil.deepCopy(batch)));
+    } catch (Exception e) {
+      log.error("Failed to call callback.", e);
+    }
+  }
+
+  /**
+   * 单个批次的请求结果处理，无论成功失败都会释放在途名额
+   */
+  private class BatchCallback implements FutureCallback<HttpResponse> {
+
+    private final List<Map<String, Object>> batch;
+
+    BatchCallback(List<Map<String, Object>> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public void completed(HttpResponse response) {
+      try {
+        int httpStatusCode = response.getStatusLine().getStatusCode();
+        if (httpStatusCode < 200 || httpStatusCode >= 300) {
+          String httpContent = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), "UTF-8");
+          String message = String.format("Unexpected response %d from Sensors Analytics: %s", httpStatusCode,
+              httpContent);
+          log.error("Failed to send data:{}. {}", batch, message);
+          notifyFailed(String.format("failed to send data,message:%s.", message), batch);
+        } else {
+          log.debug("Successfully send data.The size of data is {}.", batch.size());
+        }
+      } catch (Exception e) {
+        log.error("Failed to handle response.", e);
+        notifyFailed(String.format("failed to send data,message:%s.", e.getMessage()), batch);
+      } finally {
+        inFlight.release();
+      }
+    }
+
+    @Override
+    public void failed(Exception e) {
+      try {
+        log.error("Failed to send data:{}.", batch, e);
+        notifyFailed(String.format("failed to send data,message:%s.", e.getMessage()), batch);
+      } finally {
+        inFlight.release();
+      }
+    }
+
+    @Override
+    public void cancelled() {
+      try {
+        notifyFailed("failed to send data,message:the request is cancelled.", batch);
+      } finally {
+        inFlight.release();
+      }
+    }
+  }
+
+  public static class Builder {
+    private HttpAsyncClientBuilder httpClientBuilder;
+    private String serverUrl;
+    private int bulkSize = 50;
+    private int maxCacheSize = 6000;
+    private int flushSec = 1;
+    private int timeoutSec = 3;
+    private int maxInFlight = 8;
+    private int ioThreads = 2;
+    private Callback callback;
+    private List<String> instantEvents = new ArrayList<>();
+    private long instantFlushMs = 100;
+    private TransportMode transportMode = TransportMode.FORM;
+    private CompressionCodec compressionCodec = CompressionCodec.getDefault();
+
+    private Builder() {
+    }
+
+    public AsyncBatchConsumer build() {
+      return new AsyncBatchConsumer(this);
+    }
+
+    public Builder setHttpClientBuilder(HttpAsyncClientBuilder httpClientBuilder) {
+      this.httpClientBuilder = httpClientBuilder;
+      return this;
+    }
+
+    public Builder setServerUrl(String serverUrl) {
+      this.serverUrl = serverUrl;
+      return this;
+    }
+
+    public Builder setBulkSize(int bulkSize) {
+      this.bulkSize = bulkSize;
+      return this;
+    }
+
+    public Builder setMaxCacheSize(int maxCacheSize) {
+      this.maxCacheSize = maxCacheSize;
+      return this;
+    }
+
+    /**
+     * 不满 bulkSize 的数据最长等待发送的时间
+     */
+    public Builder setFlushSec(int flushSec) {
+      this.flushSec = flushSec;
+      return this;
+    }
+
+    public Builder setTimeoutSec(int timeoutSec) {
+      this.timeoutSec = timeoutSec;
+      return this;
+    }
+
+    /**
+     * 最大在途批次数，同时也是连接池的最大连接数
+     */
+    public Builder setMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * I/O 线程数
+     */
+    public Builder setIoThreads(int ioThreads) {
+      this.ioThreads = ioThreads;
+      return this;
+    }
+
+    public Builder setCallback(Callback callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    public Builder setInstantEvents(List<String> instantEvents) {
+      if (instantEvents != null) {
+        this.instantEvents = instantEvents;
+      }
+      return this;
+    }
+
+    /**
+     * 即时事件的最长等待时间，默认 100 毫秒。即时事件使用独立的缓存，达到 bulkSize 或等待超过该时间时发送；
+     * 0 表示每次 send 后立即请求发送
+     */
+    public Builder setInstantFlushMs(long instantFlushMs) {
+      this.instantFlushMs = instantFlushMs;
+      return this;
+    }
+
+    /**
+     * 请求体格式，默认为 {@link TransportMode#FORM}；其它格式需要接收端支持
+     */
+    public Builder setTransportMode(TransportMode transportMode) {
+      if (transportMode != null) {
+        this.transportMode = transportMode;
+      }
+      return this;
+    }
+
+    /**
+     * 压缩配置，默认 {@link CompressionCodec#getDefault()}；使用预置字典时 transportMode 不能为 FORM
+     */
+    public Builder setCompressionCodec(CompressionCodec compressionCodec) {
+      if (compressionCodec != null) {
+        this.compressionCodec = compressionCodec;
+      }
+      return this;
+    }
+  }
+}
@@ -1,9 +1,6 @@
 package com.sensorsdata.analytics.javasdk.consumer;
 
-import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
-
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
@@ -12,9 +9,14 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
-public class BatchConsumer implements Consumer {
+public class BatchConsumer implements SpillableConsumer {
     private static final int MAX_FLUSH_BULK_SIZE = 1000;
     private static final int MAX_CACHE_SIZE = 6000;
     private static final int MIN_CACHE_SIZE = 3000;
@@ -22,12 +24,60 @@ public class BatchConsumer implements Consumer {
     private final List<Map<String, Object>> messageList;
     private final HttpConsumer httpConsumer;
     private final InstantHttpConsumer instantHttpConsumer;
-    private final ObjectMapper jsonMapper;
     private final int bulkSize;
     private final boolean throwException;
     private final int maxCacheSize;
-    private List<String> instantEvents;
-    private boolean isInstantStatus;
+    /**
+     * 单批数据 JSON 字节数上限，0 表示只按 bulkSize 切分
+     */
+    private final int maxBatchBytes;
+    /**
+     * 与 messageList 一一对应的数据估算字节数，仅在开启 maxBatchBytes 时记录，由 messageList 锁保护
+     */
+    private final LinkedList<Integer> messageSizes;
+    private long messageBytes;
+    private final InstantEvents instantEvents;
+    /**
+     * 即时事件的独立缓存，与 messageList 分别攒批，切换事件类型时不需要 flush；由 messageList 锁保护
+     */
+    private final LinkedList<Map<String, Object>> instantList;
+    /**
+     * 与 instantList 一一对应的数据估算字节数，仅在开启 maxBatchBytes 时记录，由 messageList 锁保护
+     */
+    private final LinkedList<Integer> instantSizes;
+    private long instantBytes;
+    private final long instantFlushMs;
+    private long instantFirstTime;
+    /**
+     * 即时事件缓存由空变为非空时启动的定时发送，未配置即时事件或 instantFlushMs 为 0 时为 null
+     */
+    private final ScheduledExecutorService instantTimer;
+
+    /**
+     * 流水线模式：调用方只负责入队，由独立的发送线程完成序列化和网络请求
+     */
+    private final boolean pipelined;
+    /**
+     * 已切分、等待发送的批次，由 messageList 锁保护；非流水线模式下由调用方线程发送
+     */
+    private final LinkedList<PendingBatch> readyBatches;
+    private final Thread senderThread;
+    /**
+     * 非流水线模式下保证同一时间只有一个调用方线程在发送，发送及重试期间不持有 messageList 锁
+     */
+    private final ReentrantLock sendLock = new ReentrantLock();
+    /**
+     * 已从 messageList 切出但尚未发送成功的数据条数（包含正在发送中的批次）
+     */
+    private int pendingCount;
+    private boolean sending;
+    private boolean senderPaused;
+    private boolean closed;
+    private RuntimeException sendFailure;
+    /**
+     * {@link #drainUnsent()} 调用后不再发出新的请求
+     */
+    private volatile boolean draining;
 
     public BatchConsumer(final String serverUrl) {
         this(serverUrl, 50);
@@ -73,12 +123,58 @@ public class BatchConsumer implements Consumer {
 
     public BatchConsumer(HttpClientBuilder httpClientBuilder, final String serverUrl, final int bulkSize, final int maxCacheSize,
         final boolean throwException, final int timeoutSec, List<String> instantEvents) {
+        this(builder().setHttpClientBuilder(httpClientBuilder)
+            .setServerUrl(serverUrl)
+            .setBulkSize(bulkSize)
+            .setMaxCacheSize(maxCacheSize)
+            .setThrowException(throwException)
+            .setTimeoutSec(timeoutSec)
+            .setInstantEvents(instantEvents));
+    }
+
+    private BatchConsumer(Builder builder) {
+        if (builder.serverUrl == null) {
+            throw new IllegalArgumentException("The serverUrl is empty.");
+        }
+        final int bulkSize = builder.bulkSize;
+        final int maxCacheSize = builder.maxCacheSize;
+        final int timeoutSec = builder.timeoutSec;
         this.messageList = new LinkedList<>();
-        this.isInstantStatus = false;
-        this.instantEvents = instantEvents;
-        this.httpConsumer = new HttpConsumer(httpClientBuilder, serverUrl, Math.max(timeoutSec, 1));
-        this.instantHttpConsumer = new InstantHttpConsumer(httpClientBuilder, serverUrl, Math.max(timeoutSec, 1));
-        this.jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+        this.instantList = new LinkedList<>();
+        this.instantEvents = new InstantEvents(builder.instantEvents);
+        this.instantFlushMs = Math.max(builder.instantFlushMs, 0);
+        if (instantFlushMs > 0 && !instantEvents.isEmpty()) {
+            this.instantTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "SensorsAnalytics-BatchConsumer-instant");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            this.instantTimer = null;
+        }
+        if (builder.connectionPoolConfig != null) {
+            this.httpConsumer = new HttpConsumer(
+                SharedHttpTransport.acquire(builder.serverUrl, builder.connectionPoolConfig), builder.serverUrl, null,
+                Math.max(timeoutSec, 1), builder.transportMode);
+            // 即时事件使用独立的连接，不与普通事件竞争共享连接池
+            this.instantHttpConsumer = new InstantHttpConsumer(builder.httpClientBuilder, builder.serverUrl, null,
+                Math.max(timeoutSec, 1), builder.transportMode);
+        } else {
+            this.httpConsumer = new HttpConsumer(builder.httpClientBuilder, builder.serverUrl, null,
+                Math.max(timeoutSec, 1), builder.transportMode);
+            this.instantHttpConsumer = new InstantHttpConsumer(builder.httpClientBuilder, builder.serverUrl, null,
+                Math.max(timeoutSec, 1), builder.transportMode);
+        }
+        if (builder.retryPolicy != null) {
+            CircuitBreaker circuitBreaker = builder.retryPolicy.newCircuitBreaker();
+            this.httpConsumer.setRetryPolicy(builder.retryPolicy, circuitBreaker);
+            this.instantHttpConsumer.setRetryPolicy(builder.retryPolicy, circuitBreaker);
+        }
+        this.httpConsumer.setCompressionCodec(builder.compressionCodec);
+        this.instantHttpConsumer.setCompressionCodec(builder.compressionCodec);
         this.bulkSize = Math.min(MAX_FLUSH_BULK_SIZE, Math.max(1, bulkSize));
         if (maxCacheSize > MAX_CACHE_SIZE) {
             this.maxCacheSize = MAX_CACHE_SIZE;
@@ -87,90 +183,585 @@ public class BatchConsumer implements Consumer {
         } else {
             this.maxCacheSize = maxCacheSize;
         }
-        this.throwException = throwException;
+        this.throwException = builder.throwException;
+        this.maxBatchBytes = Math.max(builder.maxBatchBytes, 0);
+        this.messageSizes = new LinkedList<>();
+        this.instantSizes = new LinkedList<>();
+        this.pipelined = builder.pipelined;
+        this.readyBatches = new LinkedList<>();
+        if (pipelined) {
+            this.senderThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runSender();
+                }
+            }, "SensorsAnalytics-BatchConsumer-sender");
+            this.senderThread.setDaemon(true);
+            this.senderThread.start();
+        } else {
+            this.senderThread = null;
+        }
         log.info(
-            "Initialize BatchConsumer with params:[bulkSize:{},timeoutSec:{},maxCacheSize:{},throwException:{}]",
-            bulkSize, timeoutSec, maxCacheSize, throwException);
+            "Initialize BatchConsumer with params:[bulkSize:{},timeoutSec:{},maxCacheSize:{},throwException:{},pipelined:{},"
+                + "maxBatchBytes:{},retryPolicy:{},compressionCodec:{},connectionPool:{},instantFlushMs:{}]", bulkSize,
+            timeoutSec, maxCacheSize, throwException, pipelined, maxBatchBytes, builder.retryPolicy,
+            builder.compressionCodec, builder.connectionPoolConfig, instantFlushMs);
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Override
     public void send(Map<String, Object> message) {
+        boolean sendInstant = false;
+        boolean sendAll = false;
         synchronized (messageList) {
-            dealInstantSignal(message);
-            int size = messageList.size();
+            boolean instant = instantEvents.isInstant(message);
+            int size = messageList.size() + instantList.size() + pendingCount;
             if (maxCacheSize <= 0 || size < maxCacheSize) {
-                messageList.add(message);
+                if (instant) {
+                    if (instantList.isEmpty()) {
+                        instantFirstTime = System.currentTimeMillis();
+                        scheduleInstant();
+                    }
+                    instantList.add(message);
+                } else {
+                    messageList.add(message);
+                }
+                if (maxBatchBytes > 0) {
+                    int messageSize = JsonSizeEstimator.estimate(message);
+                    if (instant) {
+                        instantSizes.addLast(messageSize);
+                        instantBytes += messageSize;
+                    } else {
+                        messageSizes.addLast(messageSize);
+                        messageBytes += messageSize;
+                    }
+                }
                 ++size;
                 log.debug("Successfully save data to cache,The cache current size is {}.", size);
             }
-            if (size >= bulkSize) {
-                log.info("Flush was triggered because the cache size reached the threshold,cache size:{},bulkSize:{}.",
-                    size, bulkSize);
-                flush();
+            if (!instantList.isEmpty() && (instantList.size() >= bulkSize
+                || (maxBatchBytes > 0 && instantBytes >= maxBatchBytes)
+                || System.currentTimeMillis() - instantFirstTime >= instantFlushMs)) {
+                if (pipelined) {
+                    cutInstantBatches();
+                } else {
+                    sendInstant = true;
+                }
+            }
+            if (!instant && (messageList.size() >= bulkSize || (maxBatchBytes > 0 && messageBytes >= maxBatchBytes))) {
+                if (pipelined) {
+                    cutBatches(false);
+                } else {
+                    log.info("Flush was triggered because the cache size reached the threshold,cache size:{},bulkSize:{}.",
+                        size, bulkSize);
+                    sendAll = true;
+                }
             }
+            if (pipelined) {
+                // 当前数据已入队，再将发送线程此前记录的异常抛给调用方
+                throwIfSendFailed();
+            }
+        }
+        if (sendAll || sendInstant) {
+            // 其它线程正在发送时直接返回，新入队的数据由该线程继续发出
+            sendSync(sendAll, false);
         }
     }
 
     @Override
     public void flush() {
+        if (pipelined) {
+            flushPipelined();
+            return;
+        }
+        sendSync(true, true);
+        log.info("Finish flush.");
+    }
+
+    @Override
+    public void close() {
+        if (instantTimer != null) {
+            // 未到时间的定时任务不再执行，剩余的即时事件由下面的 flush 发送
+            instantTimer.shutdownNow();
+        }
+        try {
+            flush();
+        } finally {
+            if (pipelined) {
+                stopSender();
+            }
+            httpConsumer.close();
+            instantHttpConsumer.close();
+            log.info("Call close method.");
+        }
+    }
+
+    /**
+     * 停止发送并取出缓存及待发送批次中的数据。非流水线模式下需要等待当前请求结束，发送失败的批次会放回待发送批次后一并取出
+     */
+    @Override
+    public List<Map<String, Object>> drainUnsent() {
+        draining = true;
+        List<Map<String, Object>> results = new ArrayList<>();
         synchronized (messageList) {
-            while (!messageList.isEmpty()) {
-                String sendingData;
-                List<Map<String, Object>> sendList = messageList.subList(0, Math.min(bulkSize, messageList.size()));
+            while (!pipelined && sending) {
                 try {
-                    sendingData = jsonMapper.writeValueAsString(sendList);
+                    messageList.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Interrupted while waiting for BatchConsumer to finish sending.");
+                    break;
+                }
+            }
+            for (PendingBatch batch : readyBatches) {
+                results.addAll(batch.data);
+                pendingCount -= batch.data.size();
+            }
+            readyBatches.clear();
+            results.addAll(instantList);
+            instantList.clear();
+            instantSizes.clear();
+            instantBytes = 0;
+            results.addAll(messageList);
+            messageList.clear();
+            messageSizes.clear();
+            messageBytes = 0;
+            messageList.notifyAll();
+        }
+        log.info("Drain {} unsent messages.", results.size());
+        return results;
+    }
+
+    /**
+     * instantFlushMs 之后检查即时事件缓存，最早一条已等待超过 instantFlushMs 时发送，调用方需持有 messageList 锁
+     */
+    private void scheduleInstant() {
+        if (instantTimer == null || instantTimer.isShutdown()) {
+            return;
+        }
+        instantTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (messageList) {
+                    if (instantList.isEmpty() || System.currentTimeMillis() - instantFirstTime < instantFlushMs) {
+                        // 期间已被 send 或 flush 发出，新的即时事件有自己的定时任务
+                        return;
+                    }
+                    if (pipelined) {
+                        cutInstantBatches();
+                        return;
+                    }
+                }
+                try {
+                    sendSync(false, true);
+                } catch (RuntimeException e) {
+                    // 已在 sendSync 中记录日志，数据保留在待发送批次中，下次 send 或 flush 时重发
+                }
+            }
+        }, instantFlushMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 非流水线模式下在调用方线程发送：持有 messageList 锁切分批次并取出队首批次，释放锁后再发送及重试，
+     * 其它线程可以继续 send；发送失败的批次放回队首，下次触发时重发
+     *
+     * @param all true:切分普通事件缓存中的全部数据；false:只切分已满的普通批次，即时事件总是全部切分
+     * @param wait true:等待其它线程发送结束后再发送；false:其它线程正在发送时直接返回，由该线程发出新入队的数据
+     */
+    private void sendSync(boolean all, boolean wait) {
+        if (wait) {
+            sendLock.lock();
+        } else if (!sendLock.tryLock()) {
+            return;
+        }
+        try {
+            while (true) {
+                PendingBatch batch;
+                synchronized (messageList) {
+                    cutInstantBatches();
+                    cutBatches(all);
+                    if (draining || readyBatches.isEmpty()) {
+                        return;
+                    }
+                    batch = readyBatches.pollFirst();
+                    sending = true;
+                }
+                log.debug("Will be send data:{}.", batch.data);
+                try {
+                    if (batch.instant) {
+                        this.instantHttpConsumer.consume(batch.data);
+                    } else {
+                        this.httpConsumer.consume(batch.data);
+                    }
                 } catch (JsonProcessingException e) {
-                    sendList.clear();
+                    releaseBatch(batch, false);
                     log.error("Failed to process json.", e);
                     if (throwException) {
                         throw new RuntimeException("Failed to serialize data.", e);
                     }
                     continue;
-                }
-                log.debug("Will be send data:{}.", sendingData);
-                try {
-                    if (isInstantStatus) {
-                        this.instantHttpConsumer.consume(sendingData);
-                    } else {
-                        this.httpConsumer.consume(sendingData);
-                    }
-                    sendList.clear();
                 } catch (Exception e) {
-                    log.error("Failed to send data:{}.", sendingData, e);
+                    releaseBatch(batch, true);
+                    log.error("Failed to send data:{}.", batch.data, e);
                     if (throwException) {
                         throw new RuntimeException("Failed to dump message with BatchConsumer.", e);
                     }
                     return;
                 }
-                log.debug("Successfully send data:{}.", sendingData);
+                log.debug("Successfully send data:{}.", batch.data);
+                releaseBatch(batch, false);
+            }
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    /**
+     * 结束一个批次的发送
+     *
+     * @param retain true:发送失败，批次放回队首等待重发；false:发送成功或无法序列化，移除该批次
+     */
+    private void releaseBatch(PendingBatch batch, boolean retain) {
+        synchronized (messageList) {
+            sending = false;
+            if (retain) {
+                readyBatches.addFirst(batch);
+            } else {
+                pendingCount -= batch.data.size();
+            }
+            messageList.notifyAll();
+        }
+    }
+
+    /**
+     * 将即时事件缓存切分为待发送批次，插入到已有的即时事件批次之后、普通批次之前，发送线程优先发送；调用方需持有 messageList 锁
+     */
+    private void cutInstantBatches() {
+        if (instantList.isEmpty()) {
+            return;
+        }
+        int index = 0;
+        for (PendingBatch batch : readyBatches) {
+            if (!batch.instant) {
+                break;
+            }
+            index++;
+        }
+        while (!instantList.isEmpty()) {
+            int count = nextBatchCount(instantList, instantSizes, true);
+            List<Map<String, Object>> subList = instantList.subList(0, count);
+            readyBatches.add(index++, new PendingBatch(new ArrayList<>(subList), true));
+            pendingCount += subList.size();
+            subList.clear();
+            instantBytes -= releaseSizes(instantSizes, count);
+        }
+        senderPaused = false;
+        messageList.notifyAll();
+    }
+
+    /**
+     * 计算缓存头部下一批数据的条数：不超过 bulkSize，开启 maxBatchBytes 时累计字节数不超过上限（单条超出上限时单独成批），
+     * 调用方需持有 messageList 锁
+     *
+     * @param list messageList 或 instantList
+     * @param sizes 与 list 对应的字节数记录
+     * @param all true:不足一批时返回剩余全部条数；false:不足一批时返回 0
+     */
+    private int nextBatchCount(List<Map<String, Object>> list, List<Integer> sizes, boolean all) {
+        if (maxBatchBytes <= 0) {
+            if (list.size() >= bulkSize) {
+                return bulkSize;
+            }
+            return all ? list.size() : 0;
+        }
+        int count = 0;
+        long bytes = 0;
+        for (Integer messageSize : sizes) {
+            if (count > 0 && bytes + messageSize > maxBatchBytes) {
+                return count;
+            }
+            bytes += messageSize;
+            count++;
+            if (count >= bulkSize || bytes >= maxBatchBytes) {
+                return count;
             }
+        }
+        return all ? count : 0;
+    }
+
+    /**
+     * 移除已切出批次对应的字节数记录，调用方需持有 messageList 锁
+     *
+     * @return 移除的字节数
+     */
+    private long releaseSizes(LinkedList<Integer> sizes, int count) {
+        if (maxBatchBytes <= 0) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += sizes.removeFirst();
+        }
+        return bytes;
+    }
+
+    /**
+     * 将 messageList 中的数据按 bulkSize 及 maxBatchBytes 切分为待发送批次并唤醒发送线程，调用方需持有 messageList 锁
+     *
+     * @param all true:切分全部数据；false:只切分已满的批次
+     */
+    private void cutBatches(boolean all) {
+        boolean added = false;
+        int count;
+        while ((count = nextBatchCount(messageList, messageSizes, all)) > 0) {
+            List<Map<String, Object>> subList = messageList.subList(0, count);
+            readyBatches.addLast(new PendingBatch(new ArrayList<>(subList), false));
+            pendingCount += subList.size();
+            subList.clear();
+            messageBytes -= releaseSizes(messageSizes, count);
+            added = true;
+        }
+        if (added) {
+            // 有新的数据进入，恢复因上次发送失败而暂停的发送线程，失败批次会被优先重发
+            senderPaused = false;
+            messageList.notifyAll();
+        }
+    }
+
+    private void flushPipelined() {
+        synchronized (messageList) {
+            cutInstantBatches();
+            cutBatches(true);
+            // 空闲时也需要唤醒暂停中的发送线程，重发之前失败的批次
+            senderPaused = false;
+            messageList.notifyAll();
+            while ((!readyBatches.isEmpty() || sending) && !senderPaused && !draining && senderThread.isAlive()) {
+                try {
+                    messageList.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Interrupted while waiting for BatchConsumer to flush.");
+                    return;
+                }
+            }
+            throwIfSendFailed();
             log.info("Finish flush.");
         }
     }
 
-    @Override
-    public void close() {
-        flush();
-        httpConsumer.close();
-        log.info("Call close method.");
+    /**
+     * 将发送线程记录的异常抛给调用方线程，保持 throwException 语义，调用方需持有 messageList 锁
+     */
+    private void throwIfSendFailed() {
+        RuntimeException failure = sendFailure;
+        sendFailure = null;
+        if (failure != null && throwException) {
+            throw failure;
+        }
+    }
+
+    private void runSender() {
+        while (true) {
+            PendingBatch batch;
+            synchronized (messageList) {
+                while (!closed && (readyBatches.isEmpty() || senderPaused || draining)) {
+                    try {
+                        messageList.wait();
+                    } catch (InterruptedException e) {
+                        log.warn("BatchConsumer sender thread was interrupted.");
+                        messageList.notifyAll();
+                        return;
+                    }
+                }
+                if (readyBatches.isEmpty() || senderPaused || draining) {
+                    return;
+                }
+                batch = readyBatches.pollFirst();
+                sending = true;
+            }
+            RuntimeException failure = null;
+            boolean retain = false;
+            log.debug("Will be send data:{}.", batch.data);
+            try {
+                if (batch.instant) {
+                    this.instantHttpConsumer.consume(batch.data);
+                } else {
+                    this.httpConsumer.consume(batch.data);
+                }
+                log.debug("Successfully send data:{}.", batch.data);
+            } catch (JsonProcessingException e) {
+                log.error("Failed to process json.", e);
+                failure = new RuntimeException("Failed to serialize data.", e);
+            } catch (Exception e) {
+                log.error("Failed to send data:{}.", batch.data, e);
+                failure = new RuntimeException("Failed to dump message with BatchConsumer.", e);
+                retain = true;
+            }
+            synchronized (messageList) {
+                sending = false;
+                if (retain) {
+                    // 发送失败的批次保留在队首，等待下一次切分或 flush 时重发
+                    readyBatches.addFirst(batch);
+                    senderPaused = true;
+                } else {
+                    pendingCount -= batch.data.size();
+                }
+                if (failure != null) {
+                    sendFailure = failure;
+                }
+                messageList.notifyAll();
+            }
+        }
+    }
+
+    private void stopSender() {
+        synchronized (messageList) {
+            closed = true;
+            messageList.notifyAll();
+        }
+        try {
+            senderThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class PendingBatch {
+        private final List<Map<String, Object>> data;
+        private final boolean instant;
+
+        PendingBatch(List<Map<String, Object>> data, boolean instant) {
+            this.data = data;
+            this.instant = instant;
+        }
     }
 
-    private void dealInstantSignal(Map<String, Object> message) {
+    public static class Builder {
+        private HttpClientBuilder httpClientBuilder = HttpClients.custom();
+        private String serverUrl;
+        private int bulkSize = 50;
+        private int maxCacheSize = 0;
+        private boolean throwException = false;
+        private int timeoutSec = 3;
+        private List<String> instantEvents = new ArrayList<>();
+        private long instantFlushMs = 100;
+        private boolean pipelined = false;
+        private int maxBatchBytes = 0;
+        private TransportMode transportMode = TransportMode.FORM;
+        private RetryPolicy retryPolicy;
+        private CompressionCodec compressionCodec = CompressionCodec.getDefault();
+        private ConnectionPoolConfig connectionPoolConfig;
+
+        private Builder() {
+        }
+
+        public BatchConsumer build() {
+            return new BatchConsumer(this);
+        }
+
+        public Builder setHttpClientBuilder(HttpClientBuilder httpClientBuilder) {
+            this.httpClientBuilder = httpClientBuilder;
+            return this;
+        }
+
+        public Builder setServerUrl(String serverUrl) {
+            this.serverUrl = serverUrl;
+            return this;
+        }
+
+        public Builder setBulkSize(int bulkSize) {
+            this.bulkSize = bulkSize;
+            return this;
+        }
+
+        public Builder setMaxCacheSize(int maxCacheSize) {
+            this.maxCacheSize = maxCacheSize;
+            return this;
+        }
+
+        public Builder setThrowException(boolean throwException) {
+            this.throwException = throwException;
+            return this;
+        }
+
+        public Builder setTimeoutSec(int timeoutSec) {
+            this.timeoutSec = timeoutSec;
+            return this;
+        }
+
+        public Builder setInstantEvents(List<String> instantEvents) {
+            if (instantEvents != null) {
+                this.instantEvents = instantEvents;
+            }
+            return this;
+        }
+
+        /**
+         * 即时事件在缓存中的最长等待时间，默认 100ms；设置为 0 表示即时事件在 send 时立即发送。即时事件与普通事件分别缓存、分别攒批，
+         * 即时事件达到 bulkSize 或最早一条等待超过该时间时发送；配置了即时事件时由一个后台守护线程按时发送，不需要等待下一次 send
+         */
+        public Builder setInstantFlushMs(long instantFlushMs) {
+            this.instantFlushMs = instantFlushMs;
+            return this;
+        }
 
-        /*
-         * 如果当前是「instant」状态，且（message中不包含event 或者 event 不是「instant」的，则刷新，设置 「非instant」状态
+        /**
+         * 开启流水线发送模式：send 只负责入队，后台发送线程负责序列化与网络请求，
+         * 上一批数据发送过程中可以继续积攒下一批数据
          */
-        if (isInstantStatus && (!message.containsKey("event") || !instantEvents.contains(message.get("event")))) {
-            flush();
-            isInstantStatus = false;
+        public Builder setPipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
         }
 
-        /*
-         * 如果当前是 「非instant」状态，且（message中包含event 且 event 是「instant」的，则刷新，设置 「instant」状态
+        /**
+         * 单批数据序列化后（压缩前）的字节数上限，bulkSize 作为条数上限同时生效；默认 0，表示只按 bulkSize 切分。
+         * 字节数在数据入队时估算，不会额外序列化
          */
-        if (!isInstantStatus && message.containsKey("event") && instantEvents.contains(message.get("event"))) {
-            flush();
-            isInstantStatus = true;
+        public Builder setMaxBatchBytes(int maxBatchBytes) {
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * 请求体格式，默认为 {@link TransportMode#FORM}；其它格式需要接收端支持
+         */
+        public Builder setTransportMode(TransportMode transportMode) {
+            if (transportMode != null) {
+                this.transportMode = transportMode;
+            }
+            return this;
+        }
+
+        /**
+         * 发送失败时的重试及熔断策略，默认不重试；重试等待期间发送线程（非流水线模式下为触发发送的调用方线程）会被阻塞，
+         * 不持有缓存锁，其它线程的 send 不受影响
+         */
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * 压缩配置，默认 {@link CompressionCodec#getDefault()}；使用预置字典时 transportMode 不能为 FORM
+         */
+        public Builder setCompressionCodec(CompressionCodec compressionCodec) {
+            if (compressionCodec != null) {
+                this.compressionCodec = compressionCodec;
+            }
+            return this;
+        }
+
+        /**
+         * 使用进程内按接收端地址共享的连接池（参见 {@link SharedHttpTransport}），此时 httpClientBuilder 只用于即时事件的独立连接；
+         * 默认不共享
+         */
+        public Builder setConnectionPool(ConnectionPoolConfig connectionPoolConfig) {
+            this.connectionPoolConfig = connectionPoolConfig;
+            return this;
         }
     }
-}
\ No newline at end of file
+}
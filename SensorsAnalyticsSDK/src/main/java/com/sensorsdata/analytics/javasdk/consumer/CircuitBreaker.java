@@ -0,0 +1,91 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.io.IOException;
+
+/**
+ * 熔断器，同一个 Consumer 下发往同一地址的请求共用一个实例
+ */
+class CircuitBreaker {
+
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openMs;
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private long probeAt;
+
+  CircuitBreaker(int failureThreshold, long openMs) {
+    this.failureThreshold = failureThreshold;
+    this.openMs = openMs;
+  }
+
+  /**
+   * 请求发出前调用，返回 false 表示熔断中，请求应直接失败；熔断时间结束后只有一个调用方能拿到探测机会，
+   * 探测超过 openMs 仍未记录结果时重新放出一个探测机会
+   */
+  synchronized boolean tryAcquire() {
+    long now = System.currentTimeMillis();
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (now - openedAt >= openMs) {
+          state = State.HALF_OPEN;
+          probeAt = now;
+          return true;
+        }
+        return false;
+      default:
+        if (now - probeAt >= openMs) {
+          probeAt = now;
+          return true;
+        }
+        return false;
+    }
+  }
+
+  synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * 请求未得到接收端的结果（客户端已关闭、请求过程中抛出运行时异常等）时调用，不计入熔断；
+   * 探测请求被放弃时恢复为熔断结束状态，下一个请求可以继续探测
+   */
+  synchronized void onAbort() {
+    if (state == State.HALF_OPEN) {
+      state = State.OPEN;
+    }
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * 熔断期间请求直接失败时抛出
+   */
+  static class CircuitBreakerOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    CircuitBreakerOpenException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.SensorsConst;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * 网络请求数据的压缩配置
+ * <p>
+ * 所有压缩都使用池化的 Deflater。默认配置与原实现一致：gzip 格式、默认压缩级别、所有数据都压缩。
+ * <ul>
+ *   <li>level：压缩级别，-1 为 zlib 默认级别（6），1 最快，9 压缩率最高</li>
+ *   <li>minCompressSize：序列化后（估算）小于该字节数的批次不压缩，表单模式发送 gzip=0，其它模式不带 Content-Encoding</li>
+ *   <li>presetDictionary：预置字典，对短小且结构相似的数据效果明显；使用字典时请求体为带字典 ID 的 zlib 格式，
+ *   Content-Encoding 为 deflate，只能用于 {@link TransportMode#OCTET_STREAM} 与 {@link TransportMode#NDJSON}，
+ *   接收端需要使用相同的字典解压</li>
+ * </ul>
+ */
+public class CompressionCodec {
+
+  private static final CompressionCodec DEFAULT = builder().build();
+
+  /**
+   * 按神策事件 JSON 结构整理的默认字典，zlib 优先匹配字典末尾的内容，出现频率越高的片段越靠后
+   */
+  private static final byte[] DEFAULT_DICTIONARY = ("\"identities\":{\"$identity_login_id\":\"\"$identity_anonymous_id\":\""
+      + "\"$identity_mobile\":\"\"$identity_email\":\"\"time_free\":true,\"original_id\":\""
+      + "\"type\":\"profile_set_once\"\"type\":\"profile_increment\"\"type\":\"profile_append\""
+      + "\"type\":\"item_set\",\"item_type\":\"\"item_id\":\"\"type\":\"track_signup\",\"event\":\"$SignUp\""
+      + "\"type\":\"track_id_bind\",\"event\":\"$BindID\"\"type\":\"profile_set\",\"properties\":{"
+      + "\"$project\":\"\"$token\":\"\"$ip\":\"\"$os\":\"\"$os_version\":\"\"$app_version\":\"\"$is_login_id\":false"
+      + "\"$is_login_id\":true}},{\"_track_id\":"
+      + "\"$lib_detail\":\"com.sensorsdata.analytics.javasdk.SensorsAnalytics##track##SensorsAnalytics.java##\"},"
+      + "\"distinct_id\":\"\",\"time\":17,\"type\":\"track\",\"event\":\"\",\"properties\":{\"$lib\":\"Java\","
+      + "\"$lib_version\":\"" + SensorsConst.SDK_VERSION + "\",[{\"_track_id\":,\"lib\":{\"$lib\":\"Java\","
+      + "\"$lib_method\":\"code\",\"$lib_version\":\"" + SensorsConst.SDK_VERSION + "\",\"$lib_detail\":\"")
+      .getBytes(StandardCharsets.UTF_8);
+
+  private final int level;
+  private final int minCompressSize;
+  private final byte[] presetDictionary;
+  private final DeflaterPool gzipPool;
+  private final DeflaterPool dictionaryPool;
+
+  private CompressionCodec(Builder builder) {
+    if (builder.level < Deflater.DEFAULT_COMPRESSION || builder.level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException("The compression level must be between -1 and 9.");
+    }
+    this.level = builder.level;
+    this.minCompressSize = Math.max(builder.minCompressSize, 0);
+    this.presetDictionary = builder.presetDictionary;
+    if (level == Deflater.DEFAULT_COMPRESSION) {
+      this.gzipPool = DeflaterPool.getDefault();
+    } else {
+      this.gzipPool = new DeflaterPool(level, DeflaterPool.defaultMaxIdle());
+    }
+    if (presetDictionary != null) {
+      this.dictionaryPool = new DeflaterPool(level, false, presetDictionary, DeflaterPool.defaultMaxIdle());
+    } else {
+      this.dictionaryPool = null;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * 默认配置：gzip 格式、默认压缩级别、所有数据都压缩
+   */
+  public static CompressionCodec getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * SDK 内置的预置字典，接收端解压 Content-Encoding 为 deflate 的数据时需要使用相同的字典
+   */
+  public static byte[] getDefaultDictionary() {
+    return Arrays.copyOf(DEFAULT_DICTIONARY, DEFAULT_DICTIONARY.length);
+  }
+
+  /**
+   * 估算字节数为 size 的数据是否需要压缩
+   */
+  boolean shouldCompress(long size) {
+    return size >= minCompressSize;
+  }
+
+  boolean isSizeAware() {
+    return minCompressSize > 0;
+  }
+
+  boolean hasPresetDictionary() {
+    return presetDictionary != null;
+  }
+
+  /**
+   * data_list 表单参数只支持 gzip 格式，不使用字典
+   */
+  PooledDeflaterOutputStream newGzipStream(OutputStream out) throws IOException {
+    return new PooledGzipOutputStream(out, gzipPool);
+  }
+
+  /**
+   * 直接作为请求体发送的压缩流，配置字典时为 zlib 格式，否则为 gzip 格式
+   */
+  PooledDeflaterOutputStream newStream(OutputStream out) throws IOException {
+    if (dictionaryPool != null) {
+      return new PooledDeflaterOutputStream(out, dictionaryPool);
+    }
+    return newGzipStream(out);
+  }
+
+  String getContentEncoding() {
+    return dictionaryPool != null ? "deflate" : "gzip";
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CompressionCodec[level:%d;minCompressSize:%d;presetDictionary:%d bytes]", level,
+        minCompressSize, presetDictionary == null ? 0 : presetDictionary.length);
+  }
+
+  public static class Builder {
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private int minCompressSize = 0;
+    private byte[] presetDictionary;
+
+    private Builder() {
+    }
+
+    public CompressionCodec build() {
+      return new CompressionCodec(this);
+    }
+
+    /**
+     * 压缩级别，取值 -1 到 9，默认 -1（zlib 默认级别）
+     */
+    public Builder setLevel(int level) {
+      this.level = level;
+      return this;
+    }
+
+    /**
+     * 小于该字节数的批次不压缩，默认 0，表示全部压缩
+     */
+    public Builder setMinCompressSize(int minCompressSize) {
+      this.minCompressSize = minCompressSize;
+      return this;
+    }
+
+    /**
+     * 预置字典，默认不使用；可以传入 {@link CompressionCodec#getDefaultDictionary()}
+     */
+    public Builder setPresetDictionary(byte[] presetDictionary) {
+      this.presetDictionary = presetDictionary == null ? null : Arrays.copyOf(presetDictionary, presetDictionary.length);
+      return this;
+    }
+  }
+}
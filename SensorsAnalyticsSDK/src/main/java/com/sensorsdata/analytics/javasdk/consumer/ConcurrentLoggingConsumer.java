@@ -5,9 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,18 +41,234 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
         super(new InnerLoggingFileWriterFactory(lockFileName), filenamePrefix, bufferSize, splitMode);
     }
 
+    private ConcurrentLoggingConsumer(Builder builder) {
+        // 分段模式下每个进程只写自己的文件，不需要文件锁
+        super(builder.segmentId == null
+                ? new InnerLoggingFileWriterFactory(builder.lockFileName)
+                : new InnerLoggingFileWriterFactory(null, false),
+            builder.filenamePrefix, builder.bufferSize, builder.splitMode);
+        setFsyncPolicy(builder.fsyncPolicy, builder.fsyncIntervalBytes, builder.fsyncIntervalMs);
+        if (builder.gzip) {
+            enableGzip();
+        }
+        setRolling(builder.splitIntervalMinutes, builder.maxFileSize, builder.segmentId, builder.compressRotatedFiles);
+        enableStripes(builder.stripes);
+        if (builder.async) {
+            enableAsync(builder.maxPendingBytes, builder.maxWaitMs);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String filenamePrefix;
+        private String lockFileName;
+        private int bufferSize = 8192;
+        private LogSplitMode splitMode = LogSplitMode.DAY;
+        private int splitIntervalMinutes = 1;
+        private long maxFileSize = 0;
+        private boolean compressRotatedFiles = false;
+        private boolean perProcessSegment = false;
+        private String segmentId;
+        private boolean gzip = false;
+        private boolean async = false;
+        private long maxPendingBytes = 32 * 1024 * 1024;
+        private long maxWaitMs = 1000;
+        private LogFsyncPolicy fsyncPolicy = LogFsyncPolicy.NONE;
+        private long fsyncIntervalBytes = 1024 * 1024;
+        private long fsyncIntervalMs = 1000;
+        private int stripes = 0;
+
+        private Builder() {
+        }
+
+        public ConcurrentLoggingConsumer build() {
+            if (filenamePrefix == null || filenamePrefix.isEmpty()) {
+                throw new IllegalArgumentException("The filenamePrefix is empty.");
+            }
+            // 4 位数字与按大小切分的序号无法区分
+            if (segmentId != null && (!segmentId.matches("[A-Za-z0-9_-]+") || segmentId.matches("\\d{4}"))) {
+                throw new IllegalArgumentException("The segmentId is invalid.");
+            }
+            if (perProcessSegment && segmentId == null) {
+                segmentId = currentProcessId();
+            }
+            return new ConcurrentLoggingConsumer(this);
+        }
+
+        public Builder setFilenamePrefix(String filenamePrefix) {
+            this.filenamePrefix = filenamePrefix;
+            return this;
+        }
+
+        public Builder setLockFileName(String lockFileName) {
+            this.lockFileName = lockFileName;
+            return this;
+        }
+
+        /**
+         * 内存缓存达到该字节数时写文件，默认 8192
+         */
+        public Builder setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder setSplitMode(LogSplitMode splitMode) {
+            this.splitMode = splitMode;
+            return this;
+        }
+
+        /**
+         * {@link LogSplitMode#MINUTE} 下的切分间隔（分钟），默认 1，按当天 0 点对齐，例如 15 表示每天 00:00、00:15... 各一个文件
+         */
+        public Builder setSplitIntervalMinutes(int splitIntervalMinutes) {
+            this.splitIntervalMinutes = splitIntervalMinutes;
+            return this;
+        }
+
+        /**
+         * 单个文件的大小上限（字节），默认 0 表示不限制；设置后文件名增加 4 位序号，例如 prefix.2026-10-17-13.0003，
+         * 一次写入不会拆分到两个文件，文件大小最多超出一次写入的数据量
+         */
+        public Builder setMaxFileSize(long maxFileSize) {
+            this.maxFileSize = maxFileSize;
+            return this;
+        }
+
+        /**
+         * 切换文件后是否在后台线程中将旧文件压缩为 .gz 并删除原文件，默认 false。
+         * 只在当前进程中只有一个 Consumer 写这些文件时开启：多进程或多个 Consumer 写同一文件时，旧文件可能仍在被其它写入方使用；
+         * 分段模式下每个进程写自己的文件，多进程时也可以开启。{@link LogShipper} 会从 .gz 文件中继续读取原文件未发送的数据
+         */
+        public Builder setCompressRotatedFiles(boolean compressRotatedFiles) {
+            this.compressRotatedFiles = compressRotatedFiles;
+            return this;
+        }
+
+        /**
+         * 是否开启异步写入，默认 false；开启后 send 只写入内存缓存，由后台线程交换缓存后加文件锁写入，
+         * 磁盘抖动不再直接体现在调用方耗时上，flush 会等待后台线程写完（最多 maxWaitMs）
+         */
+        public Builder setAsync(boolean async) {
+            this.async = async;
+            return this;
+        }
+
+        /**
+         * 异步写入时待写入数据（包括正在写入的数据）的字节数上限，默认 32MB，不小于 bufferSize
+         */
+        public Builder setMaxPendingBytes(long maxPendingBytes) {
+            this.maxPendingBytes = maxPendingBytes;
+            return this;
+        }
+
+        /**
+         * 异步写入时待写入数据达到上限后 send 的最长等待时间，以及 flush 的最长等待时间，默认 1000ms；
+         * send 等待超时抛出异常，数据不会写入缓存
+         */
+        public Builder setMaxWaitMs(long maxWaitMs) {
+            this.maxWaitMs = maxWaitMs;
+            return this;
+        }
+
+        /**
+         * 刷盘策略，默认 {@link LogFsyncPolicy#NONE}
+         */
+        public Builder setFsyncPolicy(LogFsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        /**
+         * 组提交时触发刷盘的累计写入字节数，默认 1MB，小于等于 0 表示不按字节数刷盘
+         */
+        public Builder setFsyncIntervalBytes(long fsyncIntervalBytes) {
+            this.fsyncIntervalBytes = fsyncIntervalBytes;
+            return this;
+        }
+
+        /**
+         * 组提交时两次刷盘的最大间隔，默认 1000ms，小于等于 0 表示不按时间刷盘；间隔在写文件时检查，不会单独唤醒线程刷盘
+         */
+        public Builder setFsyncIntervalMs(long fsyncIntervalMs) {
+            this.fsyncIntervalMs = fsyncIntervalMs;
+            return this;
+        }
+
+        /**
+         * 分条带写入的条带数，默认 0 表示不分条带，所有线程竞争同一把锁；大量线程并发调用 send 时建议设置为 CPU 核数的 2 倍左右。
+         * 每个条带最多缓存 bufferSize 字节，条带中的数据在写满、flush 或 close 时才会写入文件
+         */
+        public Builder setStripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * 是否开启分段模式，默认 false。开启后每个进程写自己的文件 prefix.&lt;时间&gt;.&lt;进程号&gt;，写入时不再加文件锁，
+         * 同一台机器上多个进程写日志时不会相互等待，lockFileName 不再生效。
+         * 导入工具的文件名匹配规则需要覆盖带分段标识的文件名，或者在时间段结束后使用 {@link LogSegmentMerger} 合并为一个文件
+         */
+        public Builder setPerProcessSegment(boolean perProcessSegment) {
+            this.perProcessSegment = perProcessSegment;
+            return this;
+        }
+
+        /**
+         * 指定分段标识代替进程号，只能包含字母、数字、下划线与中划线，不能是 4 位数字；设置后即开启分段模式。
+         * 容器中进程号可能相同，多个容器共享日志目录时需要指定不同的标识
+         */
+        public Builder setSegmentId(String segmentId) {
+            this.segmentId = segmentId;
+            return this;
+        }
+
+        /**
+         * 是否以 gzip 格式写文件，默认 false。开启后每次写文件（缓存写满或 flush）追加一个独立的 gzip member，
+         * 文件可以直接用 gzip/zcat 解压，进程异常退出时最多只有最后一个 member 不完整，之前的数据都可以读出。
+         * 文件名不变，导入工具需要按 gzip 读取（{@link LogShipper} 会自动识别）；maxFileSize 按压缩后的大小计算，compressRotatedFiles 不再生效。
+         * bufferSize 越大压缩率越高，建议不小于 64KB
+         */
+        public Builder setGzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+    }
+
+    /**
+     * 当前进程号，取不到时使用随机数，保证不同进程的分段文件名不同；4 位数字前补 0，与按大小切分的序号区分
+     */
+    static String currentProcessId() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int index = name == null ? -1 : name.indexOf('@');
+        String pid = index > 0 ? name.substring(0, index) : null;
+        if (pid == null || !pid.matches("[0-9]+")) {
+            pid = Long.toString(Math.abs(System.nanoTime() % 1000000000L));
+        }
+        return pid.length() == 4 ? "0" + pid : pid;
+    }
+
     static class InnerLoggingFileWriterFactory implements LoggingFileWriterFactory {
 
         private String lockFileName;
+        private boolean fileLockEnabled;
 
         InnerLoggingFileWriterFactory(String lockFileName) {
+            this(lockFileName, true);
+        }
+
+        InnerLoggingFileWriterFactory(String lockFileName, boolean fileLockEnabled) {
             this.lockFileName = lockFileName;
+            this.fileLockEnabled = fileLockEnabled;
         }
 
         @Override
         public LoggingFileWriter getFileWriter(String fileName, String scheduleFileName)
                 throws FileNotFoundException {
-            return InnerLoggingFileWriter.getInstance(scheduleFileName, lockFileName);
+            return InnerLoggingFileWriter.getInstance(scheduleFileName, lockFileName, fileLockEnabled);
         }
 
         @Override
@@ -66,6 +282,7 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
         private final Object fileLock = new Object();
         private final String fileName;
         private final String lockFileName;
+        private final boolean fileLockEnabled;
         private FileOutputStream outputStream;
         private FileOutputStream lockStream;
         private int refCount;
@@ -76,10 +293,11 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
             instances = new HashMap<>();
         }
 
-        static InnerLoggingFileWriter getInstance(final String fileName, final String lockFileName) throws FileNotFoundException {
+        static InnerLoggingFileWriter getInstance(final String fileName, final String lockFileName,
+            final boolean fileLockEnabled) throws FileNotFoundException {
             synchronized (instances) {
                 if (!instances.containsKey(fileName)) {
-                    instances.put(fileName, new InnerLoggingFileWriter(fileName, lockFileName));
+                    instances.put(fileName, new InnerLoggingFileWriter(fileName, lockFileName, fileLockEnabled));
                 }
 
                 InnerLoggingFileWriter writer = instances.get(fileName);
@@ -98,9 +316,11 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
             }
         }
 
-        private InnerLoggingFileWriter(final String fileName, final String lockFileName) throws FileNotFoundException {
+        private InnerLoggingFileWriter(final String fileName, final String lockFileName, final boolean fileLockEnabled)
+            throws FileNotFoundException {
             this.fileName = fileName;
             this.lockFileName = lockFileName;
+            this.fileLockEnabled = fileLockEnabled;
             this.refCount = 0;
             initLock();
         }
@@ -118,7 +338,7 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
             return this.fileName.equals(fileName);
         }
 
-        public boolean write(final StringBuilder sb) {
+        public boolean write(final LoggingBuffer buffer) {
             synchronized (fileLock) {
                 FileLock lock = null;
                 try {
@@ -128,8 +348,10 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
                         outputStream.close();
                         initLock();
                     }
-                    lock = channel.lock(0, Long.MAX_VALUE, false);
-                    outputStream.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    if (fileLockEnabled) {
+                        lock = channel.lock(0, Long.MAX_VALUE, false);
+                    }
+                    buffer.writeTo(outputStream.getChannel());
                 } catch (Exception e) {
                     log.error("Failed to write file.", e);
                     throw new RuntimeException("fail to write file.", e);
@@ -148,6 +370,17 @@ public class ConcurrentLoggingConsumer extends InnerLoggingConsumer {
             return true;
         }
 
+        public void sync() {
+            synchronized (fileLock) {
+                try {
+                    outputStream.getChannel().force(false);
+                } catch (IOException e) {
+                    log.error("Failed to sync file.", e);
+                    throw new RuntimeException("fail to sync file.", e);
+                }
+            }
+        }
+
         private void initLock() throws FileNotFoundException {
             this.outputStream = new FileOutputStream(fileName, true);
             if (lockFileName != null) {
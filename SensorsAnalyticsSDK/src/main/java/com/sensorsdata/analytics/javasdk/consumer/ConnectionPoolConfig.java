@@ -0,0 +1,108 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+/**
+ * 进程内共享连接池的配置，参见 {@link SharedHttpTransport}
+ * <p>
+ * 同一接收端地址的连接池由第一个使用者创建，之后的使用者直接复用，配置以第一个使用者为准，之后传入不同的配置会打印告警。
+ */
+public class ConnectionPoolConfig {
+
+  private final int maxTotal;
+  private final int maxPerRoute;
+  private final int idleTimeoutSec;
+  private final int keepAliveSec;
+  private final int validateAfterInactivityMs;
+
+  private ConnectionPoolConfig(Builder builder) {
+    this.maxTotal = Math.max(builder.maxTotal, 1);
+    this.maxPerRoute = Math.min(Math.max(builder.maxPerRoute, 1), maxTotal);
+    this.idleTimeoutSec = Math.max(builder.idleTimeoutSec, 1);
+    this.keepAliveSec = Math.max(builder.keepAliveSec, 1);
+    this.validateAfterInactivityMs = builder.validateAfterInactivityMs;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  int getMaxTotal() {
+    return maxTotal;
+  }
+
+  int getMaxPerRoute() {
+    return maxPerRoute;
+  }
+
+  int getIdleTimeoutSec() {
+    return idleTimeoutSec;
+  }
+
+  int getKeepAliveSec() {
+    return keepAliveSec;
+  }
+
+  int getValidateAfterInactivityMs() {
+    return validateAfterInactivityMs;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ConnectionPoolConfig[maxTotal:%d;maxPerRoute:%d;idleTimeoutSec:%d;keepAliveSec:%d;"
+        + "validateAfterInactivityMs:%d]", maxTotal, maxPerRoute, idleTimeoutSec, keepAliveSec, validateAfterInactivityMs);
+  }
+
+  public static class Builder {
+    private int maxTotal = 20;
+    private int maxPerRoute = 10;
+    private int idleTimeoutSec = 30;
+    private int keepAliveSec = 30;
+    private int validateAfterInactivityMs = 2000;
+
+    private Builder() {
+    }
+
+    public ConnectionPoolConfig build() {
+      return new ConnectionPoolConfig(this);
+    }
+
+    /**
+     * 连接池最大连接数，默认 20
+     */
+    public Builder setMaxTotal(int maxTotal) {
+      this.maxTotal = maxTotal;
+      return this;
+    }
+
+    /**
+     * 每个接收端地址（route）的最大连接数，默认 10
+     */
+    public Builder setMaxPerRoute(int maxPerRoute) {
+      this.maxPerRoute = maxPerRoute;
+      return this;
+    }
+
+    /**
+     * 空闲超过该时间的连接由后台线程关闭，默认 30 秒
+     */
+    public Builder setIdleTimeoutSec(int idleTimeoutSec) {
+      this.idleTimeoutSec = idleTimeoutSec;
+      return this;
+    }
+
+    /**
+     * 接收端未通过 Keep-Alive 响应头指定超时时间时，连接的最长保持时间，默认 30 秒
+     */
+    public Builder setKeepAliveSec(int keepAliveSec) {
+      this.keepAliveSec = keepAliveSec;
+      return this;
+    }
+
+    /**
+     * 连接空闲超过该时间后复用前先检查是否可用，默认 2000ms；小于 0 表示不检查
+     */
+    public Builder setValidateAfterInactivityMs(int validateAfterInactivityMs) {
+      this.validateAfterInactivityMs = validateAfterInactivityMs;
+      return this;
+    }
+  }
+}
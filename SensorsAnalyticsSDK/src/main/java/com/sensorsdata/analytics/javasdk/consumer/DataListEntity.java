@@ -0,0 +1,205 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Consts;
+import org.apache.http.Header;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流式构造的 data_list 表单请求体
+ * <p>
+ * 数据通过 JsonGenerator 直接序列化进池化的 Deflater，只保留压缩后的字节；base64 编码与表单 URL 编码在写入连接时逐块完成，
+ * 不再产生 JSON 字符串、base64 字符串以及表单字符串等中间对象。输出内容、Content-Type 与 Content-Length
+ * 都与 {@link UrlEncodedFormEntity} 发送的数据完全一致。
+ */
+class DataListEntity extends AbstractHttpEntity {
+
+  private static final char[] BASE64_CHARS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(Consts.ISO_8859_1);
+  private static final int WRITE_BUFFER_SIZE = 4096;
+  private static final Header CONTENT_TYPE;
+
+  static {
+    try {
+      CONTENT_TYPE = new UrlEncodedFormEntity(Collections.<NameValuePair>emptyList()).getContentType();
+    } catch (IOException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final byte[] payload;
+  private final int payloadLength;
+  private final byte[] prefix;
+  private final byte[] suffix;
+  private final long contentLength;
+
+  DataListEntity(byte[] payload, int payloadLength, boolean gzip, List<NameValuePair> extraParams) {
+    this.payload = payload;
+    this.payloadLength = payloadLength;
+    this.prefix = ((gzip ? "gzip=1" : "gzip=0") + "&data_list=").getBytes(Consts.ISO_8859_1);
+    if (extraParams == null || extraParams.isEmpty()) {
+      this.suffix = new byte[0];
+    } else {
+      this.suffix = ("&" + URLEncodedUtils.format(extraParams, Consts.ISO_8859_1)).getBytes(Consts.ISO_8859_1);
+    }
+    this.contentLength = prefix.length + encodedLength(payload, payloadLength) + suffix.length;
+    setContentType(CONTENT_TYPE);
+  }
+
+  /**
+   * 将数据序列化（并压缩）后构造请求体
+   *
+   * @param jsonMapper 序列化使用的 ObjectMapper
+   * @param messages 待发送数据
+   * @param codec 压缩配置，为 null 时不压缩
+   * @param extraParams 追加在 data_list 之后的表单参数
+   */
+  static DataListEntity create(ObjectMapper jsonMapper, List<Map<String, Object>> messages, CompressionCodec codec,
+      List<NameValuePair> extraParams) throws IOException {
+    PayloadOutputStream buffer = new PayloadOutputStream();
+    boolean gzip = shouldCompress(codec, messages);
+    if (gzip) {
+      PooledDeflaterOutputStream gzipStream = codec.newGzipStream(buffer);
+      try {
+        // writeValue 成功时会关闭目标流，写入 gzip 尾部并归还 Deflater
+        jsonMapper.writeValue(newWriter(gzipStream), messages);
+      } finally {
+        gzipStream.release();
+      }
+    } else {
+      jsonMapper.writeValue(newWriter(buffer), messages);
+    }
+    return new DataListEntity(buffer.buffer(), buffer.size(), gzip, extraParams);
+  }
+
+  /**
+   * 通过 Writer 序列化：直接写字节流时 Jackson 会把代理对（如 emoji）转义为两个 unicode 转义序列，与 writeValueAsString 的结果不一致
+   */
+  private static Writer newWriter(OutputStream out) {
+    return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 只有配置了 minCompressSize 时才估算数据大小
+   */
+  static boolean shouldCompress(CompressionCodec codec, List<Map<String, Object>> messages) {
+    if (codec == null) {
+      return false;
+    }
+    return !codec.isSizeAware() || codec.shouldCompress(JsonSizeEstimator.estimate(messages));
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream((int) contentLength);
+    writeTo(os);
+    return new ByteArrayInputStream(os.toByteArray());
+  }
+
+  @Override
+  public void writeTo(OutputStream outStream) throws IOException {
+    outStream.write(prefix);
+    byte[] out = new byte[WRITE_BUFFER_SIZE];
+    int pos = 0;
+    int i = 0;
+    while (i < payloadLength) {
+      int b0 = payload[i++] & 0xff;
+      int b1 = i < payloadLength ? payload[i++] & 0xff : -1;
+      int b2 = i < payloadLength ? payload[i++] & 0xff : -1;
+      // 每 3 个字节最多输出 4 个 base64 字符，每个字符 URL 编码后最多 3 个字节
+      if (pos > out.length - 12) {
+        outStream.write(out, 0, pos);
+        pos = 0;
+      }
+      pos = writeChar(out, pos, BASE64_CHARS[b0 >>> 2]);
+      pos = writeChar(out, pos, BASE64_CHARS[((b0 & 0x03) << 4) | (b1 < 0 ? 0 : b1 >>> 4)]);
+      pos = writeChar(out, pos, b1 < 0 ? '=' : BASE64_CHARS[((b1 & 0x0f) << 2) | (b2 < 0 ? 0 : b2 >>> 6)]);
+      pos = writeChar(out, pos, b2 < 0 ? '=' : BASE64_CHARS[b2 & 0x3f]);
+    }
+    if (pos > 0) {
+      outStream.write(out, 0, pos);
+    }
+    outStream.write(suffix);
+    outStream.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * base64 字符中只有 '+'、'/'、'=' 需要进行表单 URL 编码
+   */
+  private static int writeChar(byte[] out, int pos, char c) {
+    if (c == '+' || c == '/' || c == '=') {
+      out[pos++] = '%';
+      out[pos++] = HEX[c >>> 4];
+      out[pos++] = HEX[c & 0x0f];
+    } else {
+      out[pos++] = (byte) c;
+    }
+    return pos;
+  }
+
+  private static long encodedLength(byte[] payload, int payloadLength) {
+    long length = ((payloadLength + 2L) / 3) * 4;
+    int i = 0;
+    while (i < payloadLength) {
+      int b0 = payload[i++] & 0xff;
+      int b1 = i < payloadLength ? payload[i++] & 0xff : -1;
+      int b2 = i < payloadLength ? payload[i++] & 0xff : -1;
+      length += 2 * (escaped(b0 >>> 2) + escaped(((b0 & 0x03) << 4) | (b1 < 0 ? 0 : b1 >>> 4)));
+      length += 2 * (b1 < 0 ? 1 : escaped(((b1 & 0x0f) << 2) | (b2 < 0 ? 0 : b2 >>> 6)));
+      length += 2 * (b2 < 0 ? 1 : escaped(b2 & 0x3f));
+    }
+    return length;
+  }
+
+  /**
+   * 索引 62、63 分别对应 base64 的 '+' 与 '/'
+   */
+  private static int escaped(int index) {
+    return index >= 62 ? 1 : 0;
+  }
+
+  /**
+   * 可直接访问内部数组的 ByteArrayOutputStream，避免 toByteArray 复制
+   */
+  static class PayloadOutputStream extends ByteArrayOutputStream {
+
+    PayloadOutputStream() {
+      super(8192);
+    }
+
+    byte[] buffer() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Deflater 对象池
+ * <p>
+ * 每个 Deflater 都持有 native 的 zlib 状态，依赖 finalize 回收会造成 native 内存堆积，这里对其复用并在超出容量时立即 end()。
+ */
+class DeflaterPool {
+
+  private static final int DEFAULT_MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+  private static final DeflaterPool DEFAULT = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, DEFAULT_MAX_IDLE);
+
+  private final ConcurrentLinkedQueue<Deflater> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private final int level;
+  private final boolean nowrap;
+  private final byte[] dictionary;
+  private final int maxIdle;
+
+  DeflaterPool(int level, int maxIdle) {
+    this(level, true, null, maxIdle);
+  }
+
+  /**
+   * @param nowrap true 表示只输出 deflate 数据（gzip 使用），false 表示输出带头部及 Adler-32 校验的 zlib 格式
+   * @param dictionary 预置字典，为 null 时不使用；只能用于 zlib 格式，字典 ID 会写入 zlib 头部
+   */
+  DeflaterPool(int level, boolean nowrap, byte[] dictionary, int maxIdle) {
+    this.level = level;
+    this.nowrap = nowrap;
+    this.dictionary = dictionary;
+    this.maxIdle = maxIdle;
+  }
+
+  static int defaultMaxIdle() {
+    return DEFAULT_MAX_IDLE;
+  }
+
+  /**
+   * 与 GZIPOutputStream 默认配置一致的对象池：默认压缩级别，nowrap 模式
+   */
+  static DeflaterPool getDefault() {
+    return DEFAULT;
+  }
+
+  Deflater acquire() {
+    Deflater deflater = idle.poll();
+    if (deflater == null) {
+      deflater = new Deflater(level, nowrap);
+    } else {
+      idleCount.decrementAndGet();
+    }
+    // reset 会清除字典，每次取出时重新设置
+    if (dictionary != null) {
+      deflater.setDictionary(dictionary);
+    }
+    return deflater;
+  }
+
+  void release(Deflater deflater) {
+    if (idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      deflater.end();
+      return;
+    }
+    deflater.reset();
+    idle.offer(deflater);
+  }
+}
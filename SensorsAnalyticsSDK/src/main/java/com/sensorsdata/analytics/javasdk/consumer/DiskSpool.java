@@ -0,0 +1,515 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射分段文件的磁盘缓存（write-ahead spool）
+ * <p>
+ * 数据在 send 返回前追加到当前段文件，发送成功后推进段头部记录的已提交位置，段内数据全部提交后删除段文件；
+ * 重启后目录中未提交的数据会被重新读取发送，提供至少一次（at-least-once）的投递语义。
+ * <p>
+ * 段文件格式：16 字节头部（magic、version、已提交位置），之后为连续的记录；
+ * 每条记录为 4 字节长度、4 字节 CRC32、1 字节标记位以及 JSON 数据，长度为 0 表示段内数据结束。
+ * <p>
+ * append 可被多线程并发调用；read 与 commit 需由调用方保证单线程执行。
+ */
+@Slf4j
+class DiskSpool implements Closeable {
+
+  private static final int MAGIC = 0x53415350;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int COMMITTED_POSITION_OFFSET = 8;
+  private static final int RECORD_HEADER_SIZE = 9;
+  private static final byte FLAG_INSTANT = 1;
+  private static final String SEGMENT_SUFFIX = ".spool";
+  private static final String LOCK_FILE = "spool.lock";
+  private static final TypeReference<Map<String, Object>> MESSAGE_TYPE = new TypeReference<Map<String, Object>>() {
+  };
+
+  private final File dir;
+  private final int segmentSize;
+  private final long maxDiskUsage;
+  private final SpoolFsyncPolicy fsyncPolicy;
+  private final ObjectMapper jsonMapper;
+  private final RandomAccessFile lockFile;
+  private final FileLock lock;
+
+  /**
+   * 待发送的段，队首为正在读取的段，队尾为正在写入的段
+   */
+  private final LinkedList<Segment> segments = new LinkedList<>();
+  private final Object writeLock = new Object();
+  private final AtomicLong diskUsage = new AtomicLong();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private Segment active;
+  private long nextSegmentId;
+  private volatile boolean closed;
+
+  /**
+   * @param dir 缓存目录，同一目录同时只能被一个实例使用
+   * @param segmentSize 段文件大小（字节）
+   * @param maxDiskUsage 段文件总大小上限（字节），超出后 append 返回 false
+   * @param fsyncPolicy 刷盘策略
+   */
+  DiskSpool(File dir, int segmentSize, long maxDiskUsage, SpoolFsyncPolicy fsyncPolicy) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Failed to create spool directory: " + dir);
+    }
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxDiskUsage = maxDiskUsage;
+    this.fsyncPolicy = fsyncPolicy;
+    this.jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+    this.lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+    FileLock fileLock;
+    try {
+      fileLock = lockFile.getChannel().tryLock();
+    } catch (IOException e) {
+      lockFile.close();
+      throw e;
+    }
+    if (fileLock == null) {
+      lockFile.close();
+      throw new IOException("The spool directory is used by another process: " + dir);
+    }
+    this.lock = fileLock;
+    recover();
+  }
+
+  /**
+   * 加载目录中遗留的段文件，全部视为已写满的段等待重新发送
+   */
+  private void recover() throws IOException {
+    File[] files = dir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File d, String name) {
+        return name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      String name = file.getName();
+      long id;
+      try {
+        id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      nextSegmentId = Math.max(nextSegmentId, id + 1);
+      Segment segment = Segment.open(id, file);
+      if (segment == null) {
+        log.warn("Ignore invalid spool segment file:{}.", file);
+        continue;
+      }
+      if (segment.committedPosition >= segment.writePosition) {
+        delete(segment);
+        continue;
+      }
+      diskUsage.addAndGet(segment.capacity);
+      pendingCount.addAndGet(segment.countRecords(segment.committedPosition, segment.writePosition));
+      pendingBytes.addAndGet(segment.writePosition - segment.committedPosition);
+      segments.add(segment);
+    }
+    if (!segments.isEmpty()) {
+      log.info("Recovered {} messages from spool directory {}.", pendingCount.get(), dir);
+    }
+  }
+
+  /**
+   * 写入一条数据
+   *
+   * @param message 数据
+   * @param instant 是否为即时事件
+   * @return false：磁盘缓存已达到上限或已关闭，数据未写入
+   */
+  boolean append(Map<String, Object> message, boolean instant) throws JsonProcessingException {
+    byte[] payload = jsonMapper.writeValueAsBytes(message);
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    int recordSize = RECORD_HEADER_SIZE + payload.length;
+    synchronized (writeLock) {
+      if (closed) {
+        return false;
+      }
+      Segment segment = active;
+      if (segment == null || segment.writePosition + recordSize > segment.capacity) {
+        segment = roll(recordSize);
+        if (segment == null) {
+          return false;
+        }
+      }
+      ByteBuffer view = segment.writeView;
+      int position = segment.writePosition;
+      view.putInt(position + 4, (int) crc.getValue());
+      view.put(position + 8, instant ? FLAG_INSTANT : 0);
+      view.position(position + RECORD_HEADER_SIZE);
+      view.put(payload);
+      // 最后写入长度，崩溃时不完整的记录长度为 0 或校验失败
+      view.putInt(position, payload.length);
+      segment.writePosition = position + recordSize;
+      pendingCount.incrementAndGet();
+      pendingBytes.addAndGet(recordSize);
+      if (fsyncPolicy == SpoolFsyncPolicy.ALWAYS) {
+        segment.buffer.force();
+      }
+    }
+    return true;
+  }
+
+  private Segment roll(int recordSize) {
+    int capacity = Math.max(segmentSize, HEADER_SIZE + recordSize);
+    if (diskUsage.get() + capacity > maxDiskUsage) {
+      log.warn("The spool directory {} reached the max disk usage {}.", dir, maxDiskUsage);
+      return null;
+    }
+    Segment segment;
+    try {
+      segment = Segment.create(nextSegmentId, new File(dir, String.format("%020d%s", nextSegmentId, SEGMENT_SUFFIX)),
+          capacity);
+    } catch (IOException e) {
+      log.error("Failed to create spool segment.", e);
+      return null;
+    }
+    nextSegmentId++;
+    diskUsage.addAndGet(capacity);
+    if (active != null) {
+      active.sealed = true;
+    }
+    active = segment;
+    synchronized (segments) {
+      segments.add(segment);
+    }
+    return segment;
+  }
+
+  /**
+   * 从已提交位置开始读取一批数据，一批数据不会跨越段文件，且即时标记都相同；读取后需调用 commit 才会推进位置
+   *
+   * @param maxCount 最多读取的条数
+   * @param maxBytes 最多读取的 JSON 字节数，单条超出时单独成批；0 表示不限制
+   * @return 没有待发送数据时返回 null
+   */
+  Batch read(int maxCount, int maxBytes) {
+    while (!closed) {
+      Segment segment;
+      synchronized (segments) {
+        segment = segments.peekFirst();
+      }
+      if (segment == null) {
+        return null;
+      }
+      // 先读取 sealed，为 true 时 writePosition 不会再变化
+      boolean sealed = segment.sealed;
+      int end = segment.writePosition;
+      if (segment.committedPosition >= end) {
+        if (!sealed) {
+          return null;
+        }
+        remove(segment);
+        continue;
+      }
+      Batch batch = new Batch(segment);
+      int position = segment.committedPosition;
+      batch.start = position;
+      ByteBuffer view = segment.readView;
+      while (position < end && batch.count < maxCount) {
+        int length = view.getInt(position);
+        boolean instant = view.get(position + 8) == FLAG_INSTANT;
+        if (batch.count > 0 && (instant != batch.instant || (maxBytes > 0 && batch.bytes + length > maxBytes))) {
+          break;
+        }
+        batch.instant = instant;
+        byte[] payload = new byte[length];
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(payload);
+        try {
+          batch.messages.add(jsonMapper.<Map<String, Object>>readValue(payload, MESSAGE_TYPE));
+        } catch (IOException e) {
+          log.error("Failed to parse message from spool segment {}, skip it.", segment.file, e);
+        }
+        batch.count++;
+        batch.bytes += length;
+        position += RECORD_HEADER_SIZE + length;
+      }
+      batch.end = position;
+      return batch;
+    }
+    return null;
+  }
+
+  /**
+   * 提交已发送成功的批次，段内数据全部提交且已写满时删除段文件
+   */
+  void commit(Batch batch) {
+    Segment segment = batch.segment;
+    segment.committedPosition = batch.end;
+    segment.writeCommittedPosition();
+    pendingCount.addAndGet(-batch.count);
+    pendingBytes.addAndGet(-(batch.end - batch.start));
+    if (segment.sealed && segment.committedPosition >= segment.writePosition) {
+      remove(segment);
+    }
+  }
+
+  /**
+   * 按刷盘策略将数据写回磁盘，由定时任务调用
+   */
+  void sync() {
+    if (fsyncPolicy != SpoolFsyncPolicy.INTERVAL) {
+      return;
+    }
+    synchronized (writeLock) {
+      if (active != null && !closed) {
+        active.buffer.force();
+      }
+    }
+  }
+
+  /**
+   * 待发送的数据条数
+   */
+  int getPendingCount() {
+    return pendingCount.get();
+  }
+
+  /**
+   * 待发送数据占用的字节数
+   */
+  long getPendingBytes() {
+    return pendingBytes.get();
+  }
+
+  /**
+   * 是否存在已写满的待发送段，例如重启后遗留的数据
+   */
+  boolean hasSealedSegment() {
+    synchronized (segments) {
+      Segment segment = segments.peekFirst();
+      return segment != null && segment.sealed;
+    }
+  }
+
+  long getDiskUsage() {
+    return diskUsage.get();
+  }
+
+  private void remove(Segment segment) {
+    synchronized (segments) {
+      segments.remove(segment);
+    }
+    diskUsage.addAndGet(-segment.capacity);
+    delete(segment);
+  }
+
+  private void delete(Segment segment) {
+    // 先解除内存映射，否则文件被删除后磁盘空间要等到 MappedByteBuffer 被 GC 回收才会释放
+    unmap(segment.buffer);
+    if (!segment.file.delete()) {
+      log.warn("Failed to delete spool segment {}.", segment.file);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (writeLock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      synchronized (segments) {
+        for (Segment segment : segments) {
+          segment.buffer.force();
+          unmap(segment.buffer);
+        }
+      }
+    }
+    try {
+      lock.release();
+    } finally {
+      lockFile.close();
+    }
+  }
+
+  /**
+   * 释放内存映射，调用后不能再访问该 buffer 及其视图。只有已写满且全部提交的段，或关闭后的段才会被释放：
+   * 写线程只访问当前写入的段，读线程与 close 由调用方保证不会同时执行。
+   * JDK 9 及以上通过 Unsafe#invokeCleaner 释放，JDK 8 通过 DirectByteBuffer#cleaner 释放，都不可用时等待 GC 回收
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        invokeCleaner = null;
+      }
+      if (invokeCleaner != null) {
+        Field field = unsafeClass.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        invokeCleaner.invoke(field.get(null), buffer);
+        return;
+      }
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Exception e) {
+      log.debug("Failed to unmap spool segment, it will be released by GC.", e);
+    }
+  }
+
+  /**
+   * 从段文件中读取的一批数据
+   */
+  static class Batch {
+    final Segment segment;
+    final List<Map<String, Object>> messages = new ArrayList<>();
+    boolean instant;
+    int count;
+    long bytes;
+    int start;
+    int end;
+
+    Batch(Segment segment) {
+      this.segment = segment;
+    }
+  }
+
+  static class Segment {
+    final long id;
+    final File file;
+    final int capacity;
+    final MappedByteBuffer buffer;
+    /**
+     * 写线程与读线程各自使用独立的视图，避免共享 position
+     */
+    final ByteBuffer writeView;
+    final ByteBuffer readView;
+    volatile int writePosition;
+    volatile boolean sealed;
+    int committedPosition;
+
+    private Segment(long id, File file, MappedByteBuffer buffer) {
+      this.id = id;
+      this.file = file;
+      this.capacity = buffer.capacity();
+      this.buffer = buffer;
+      this.writeView = buffer.duplicate();
+      this.readView = buffer.duplicate();
+    }
+
+    static Segment create(long id, File file, int capacity) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(capacity);
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(COMMITTED_POSITION_OFFSET, HEADER_SIZE);
+        Segment segment = new Segment(id, file, buffer);
+        segment.writePosition = HEADER_SIZE;
+        segment.committedPosition = HEADER_SIZE;
+        return segment;
+      } finally {
+        raf.close();
+      }
+    }
+
+    /**
+     * 打开遗留的段文件并扫描出有效数据的结束位置，文件无效时返回 null
+     */
+    static Segment open(long id, File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        long length = raf.length();
+        if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+          return null;
+        }
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+          unmap(buffer);
+          return null;
+        }
+        Segment segment = new Segment(id, file, buffer);
+        segment.writePosition = segment.scan();
+        segment.committedPosition =
+            (int) Math.max(HEADER_SIZE, Math.min(buffer.getLong(COMMITTED_POSITION_OFFSET), segment.writePosition));
+        segment.sealed = true;
+        return segment;
+      } finally {
+        raf.close();
+      }
+    }
+
+    /**
+     * 从头部之后逐条校验记录，返回最后一条完整记录的结束位置
+     */
+    private int scan() {
+      int position = HEADER_SIZE;
+      CRC32 crc = new CRC32();
+      while (position + RECORD_HEADER_SIZE <= capacity) {
+        int length = readView.getInt(position);
+        if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+          break;
+        }
+        byte[] payload = new byte[length];
+        readView.position(position + RECORD_HEADER_SIZE);
+        readView.get(payload);
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != readView.getInt(position + 4)) {
+          break;
+        }
+        position += RECORD_HEADER_SIZE + length;
+      }
+      return position;
+    }
+
+    int countRecords(int from, int to) {
+      int count = 0;
+      int position = from;
+      while (position < to) {
+        position += RECORD_HEADER_SIZE + readView.getInt(position);
+        count++;
+      }
+      return count;
+    }
+
+    void writeCommittedPosition() {
+      readView.putLong(COMMITTED_POSITION_OFFSET, committedPosition);
+    }
+  }
+}
@@ -5,19 +5,31 @@ import com.sensorsdata.analytics.javasdk.exceptions.InvalidArgumentException;
 import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 网络批量请求发送，异常快速返回模式
@@ -27,22 +39,71 @@ import java.util.concurrent.TimeUnit;
  * @since 2021/11/05 23:48
  */
 @Slf4j
-public class FastBatchConsumer implements Consumer {
+public class FastBatchConsumer implements SpillableConsumer {
 
   private static final int MAX_CACHE_SIZE = 10000;
   private static final int MIN_CACHE_SIZE = 1000;
   private static final int MIN_BULK_SIZE = 1;
 
 
-  private final LinkedBlockingQueue<Map<String, Object>> buffer;
+  /**
+   * 开启 maxBatchBytes 时元素为 {@link CachedMessage}，否则直接缓存数据本身，不额外分配对象
+   */
+  private final MessageQueue<Object> buffer;
   private final HttpConsumer httpConsumer;
   private final InstantHttpConsumer instantHttpConsumer;
-  private final ObjectMapper jsonMapper;
   private final Callback callback;
   private final int bulkSize;
+  /**
+   * 单批数据 JSON 字节数上限，0 表示只按 bulkSize 切分
+   */
+  private final int maxBatchBytes;
+  /**
+   * 缓存中数据的估算字节数之和
+   */
+  private final AtomicLong bufferedBytes = new AtomicLong();
   private final ScheduledExecutorService executorService;
-  private List<String> instantEvents;
-  private boolean isInstantStatus;
+  /**
+   * 每个分区一个单线程的发送线程池，同一分区的批次按提交顺序发送；senderThreads 为 1 时为 null，由 flush 线程直接发送
+   */
+  private final ExecutorService[] senderExecutorServices;
+  private final int senderThreads;
+  /**
+   * close 时等待定时 flush 及各分区发送完成的最长时间
+   */
+  private final long closeTimeoutMs;
+  /**
+   * 已提交给发送线程、尚未发送完成的分区数上限，达到上限时 flush 线程等待，避免接收端变慢时积压过多数据
+   */
+  private final Semaphore senderPermits;
+  private final int maxSenderPermits;
+  private final DiskSpool spool;
+  private final Object spoolReadLock = new Object();
+  private final OverflowPolicy overflowPolicy;
+  private final long overflowBlockTimeoutMs;
+  /**
+   * 缓存已满时写入的磁盘缓存，仅在 {@link OverflowPolicy#SPILL_TO_FILE} 策略下使用
+   */
+  private final DiskSpool overflowSpool;
+  private final Object overflowLock = new Object();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final AtomicLong overflowCount = new AtomicLong();
+  private final AtomicLong overflowDroppedCount = new AtomicLong();
+  private final AtomicLong overflowSpilledCount = new AtomicLong();
+  private final InstantEvents instantEvents;
+  /**
+   * 即时事件的独立缓存及发送线程，与普通事件分别攒批、分别发送，未配置即时事件时为 null；即时事件缓存已满时通过 callback 返回
+   */
+  private final MessageQueue<Map<String, Object>> instantBuffer;
+  private final ScheduledExecutorService instantExecutorService;
+  private final long instantFlushMs;
+  private final AtomicBoolean instantFlushRequested = new AtomicBoolean();
+  /**
+   * 发送线程已从缓存取出、尚未发出的批次，由 drainLock 保护；{@link #drainUnsent()} 调用后不再发出新的批次
+   */
+  private final Set<Deque<List<Map<String, Object>>>> queuedBatches = new HashSet<>();
+  private final Object drainLock = new Object();
+  private boolean draining;
 
   public FastBatchConsumer(@NonNull String serverUrl, @NonNull Callback callback) {
     this(serverUrl, false, callback);
@@ -77,109 +138,758 @@ public class FastBatchConsumer implements Consumer {
 
   public FastBatchConsumer(HttpClientBuilder httpClientBuilder, @NonNull String serverUrl, final boolean timing, final int bulkSize, int maxCacheSize,
       int flushSec, int timeoutSec, @NonNull Callback callback, List<String> instantEvents) {
-    this.buffer =
-        new LinkedBlockingQueue<>(Math.min(Math.max(MIN_CACHE_SIZE, maxCacheSize), MAX_CACHE_SIZE));
-    this.httpConsumer = new HttpConsumer(httpClientBuilder, serverUrl, Math.max(timeoutSec, 1));
-    this.instantHttpConsumer = new InstantHttpConsumer(httpClientBuilder, serverUrl, Math.max(timeoutSec, 1));
+    this(builder().setHttpClientBuilder(httpClientBuilder)
+        .setServerUrl(serverUrl)
+        .setTiming(timing)
+        .setBulkSize(bulkSize)
+        .setMaxCacheSize(maxCacheSize)
+        .setFlushSec(flushSec)
+        .setTimeoutSec(timeoutSec)
+        .setCallback(callback)
+        .setInstantEvents(instantEvents));
+  }
+
+  private FastBatchConsumer(Builder builder) {
+    if (builder.serverUrl == null) {
+      throw new IllegalArgumentException("The serverUrl is empty.");
+    }
+    if (builder.callback == null) {
+      throw new IllegalArgumentException("The callback is empty.");
+    }
+    final boolean timing = builder.timing;
+    final int bulkSize = builder.bulkSize;
+    final int maxCacheSize = builder.maxCacheSize;
+    final int flushSec = builder.flushSec;
+    final int timeoutSec = builder.timeoutSec;
+    final int capacity = Math.min(Math.max(MIN_CACHE_SIZE, maxCacheSize), MAX_CACHE_SIZE);
+    if (builder.ringBuffer) {
+      this.buffer = new MpscRingBuffer<>(capacity);
+    } else {
+      this.buffer = new LinkedMessageQueue<>(capacity);
+    }
+    this.senderThreads = Math.max(builder.senderThreads, 1);
+    if (builder.closeTimeoutMs > 0) {
+      this.closeTimeoutMs = builder.closeTimeoutMs;
+    } else {
+      // 每次请求最多两倍超时时间，开启重试时按最大请求次数及最长等待时间累计
+      long requestMs = TimeUnit.SECONDS.toMillis(Math.max(timeoutSec, 1)) * 2;
+      if (builder.retryPolicy == null) {
+        this.closeTimeoutMs = requestMs;
+      } else {
+        this.closeTimeoutMs = (requestMs + builder.retryPolicy.getMaxBackoffMs()) * builder.retryPolicy.getMaxAttempts();
+      }
+    }
+    if (senderThreads > 1 && builder.connectionPoolConfig == null) {
+      if (builder.customHttpClientBuilder) {
+        // 调用方的 HttpClientBuilder 可能设置了自己的连接管理器，此时连接数上限不生效，不做修改
+        log.info("Use the given httpClientBuilder as is,it should allow at least {} connections per route.",
+            senderThreads);
+      } else {
+        // 默认的 HttpClientBuilder 每个路由只有 2 个连接
+        builder.httpClientBuilder.setMaxConnPerRoute(senderThreads).setMaxConnTotal(Math.max(senderThreads, 20));
+      }
+    }
+    if (builder.connectionPoolConfig != null) {
+      this.httpConsumer = new HttpConsumer(SharedHttpTransport.acquire(builder.serverUrl, builder.connectionPoolConfig),
+          builder.serverUrl, null, Math.max(timeoutSec, 1), builder.transportMode);
+      // 即时事件使用独立的连接，不与普通事件竞争共享连接池
+      this.instantHttpConsumer = new InstantHttpConsumer(builder.httpClientBuilder, builder.serverUrl, null,
+          Math.max(timeoutSec, 1), builder.transportMode);
+    } else {
+      this.httpConsumer = new HttpConsumer(builder.httpClientBuilder, builder.serverUrl, null,
+          Math.max(timeoutSec, 1), builder.transportMode);
+      this.instantHttpConsumer = new InstantHttpConsumer(builder.httpClientBuilder, builder.serverUrl, null,
+          Math.max(timeoutSec, 1), builder.transportMode);
+    }
+    if (builder.retryPolicy != null) {
+      CircuitBreaker circuitBreaker = builder.retryPolicy.newCircuitBreaker();
+      this.httpConsumer.setRetryPolicy(builder.retryPolicy, circuitBreaker);
+      this.instantHttpConsumer.setRetryPolicy(builder.retryPolicy, circuitBreaker);
+    }
+    this.httpConsumer.setCompressionCodec(builder.compressionCodec);
+    this.instantHttpConsumer.setCompressionCodec(builder.compressionCodec);
 
-    this.jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
-    this.callback = callback;
+    this.callback = builder.callback;
     this.bulkSize = Math.min(MIN_CACHE_SIZE, Math.max(bulkSize, MIN_BULK_SIZE));
-    this.instantEvents = instantEvents;
+    this.maxBatchBytes = Math.max(builder.maxBatchBytes, 0);
+    this.instantEvents = new InstantEvents(builder.instantEvents);
+    this.instantFlushMs = Math.max(builder.instantFlushMs, 0);
+    if (builder.spoolDir != null) {
+      try {
+        this.spool = new DiskSpool(new File(builder.spoolDir), builder.spoolSegmentSize, builder.spoolMaxDiskUsage,
+            builder.spoolFsyncPolicy);
+      } catch (IOException e) {
+        throw new RuntimeException("fail to open spool directory.", e);
+      }
+    } else {
+      this.spool = null;
+    }
+    this.overflowPolicy = builder.overflowPolicy;
+    this.overflowBlockTimeoutMs = Math.max(builder.overflowBlockTimeoutMs, 0);
+    if (spool == null && overflowPolicy == OverflowPolicy.SPILL_TO_FILE) {
+      if (builder.overflowSpillDir == null) {
+        throw new IllegalArgumentException("The overflowSpillDir is empty.");
+      }
+      try {
+        this.overflowSpool = new DiskSpool(new File(builder.overflowSpillDir), builder.spoolSegmentSize,
+            builder.spoolMaxDiskUsage, builder.spoolFsyncPolicy);
+      } catch (IOException e) {
+        throw new RuntimeException("fail to open overflow spill directory.", e);
+      }
+    } else {
+      this.overflowSpool = null;
+    }
+
+    // 开启磁盘缓存时即时事件写入磁盘缓存，按即时标记分批发送
+    if (spool == null && !instantEvents.isEmpty()) {
+      this.instantBuffer = new LinkedMessageQueue<>(capacity);
+      this.instantExecutorService = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "sa-fast-batch-instant");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      if (instantFlushMs > 0) {
+        instantExecutorService.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            flushInstant();
+          }
+        }, instantFlushMs, instantFlushMs, TimeUnit.MILLISECONDS);
+      }
+    } else {
+      this.instantBuffer = null;
+      this.instantExecutorService = null;
+    }
 
+    if (senderThreads > 1) {
+      this.senderExecutorServices = new ExecutorService[senderThreads];
+      for (int i = 0; i < senderThreads; i++) {
+        final String threadName = "sa-fast-batch-sender-" + i;
+        senderExecutorServices[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+    } else {
+      this.senderExecutorServices = null;
+    }
+    this.maxSenderPermits = senderThreads * 2;
+    this.senderPermits = new Semaphore(maxSenderPermits);
     executorService = new ScheduledThreadPoolExecutor(1);
     executorService.scheduleWithFixedDelay(new Runnable() {
       @Override
       public void run() {
-        if (timing) {
-          flush();
+        if (spool != null) {
+          spool.sync();
+          // 重启后遗留的数据及发送失败的数据不依赖新数据触发发送
+          if (timing || spool.getPendingCount() >= bulkSize || spool.hasSealedSegment()
+              || (maxBatchBytes > 0 && spool.getPendingBytes() >= maxBatchBytes)) {
+            flush(false);
+          }
         } else {
-          if (buffer.size() >= bulkSize) {
-            flush();
+          if (overflowSpool != null) {
+            overflowSpool.sync();
+          }
+          if (timing || buffer.size() >= bulkSize || (maxBatchBytes > 0 && bufferedBytes.get() >= maxBatchBytes)
+              || (overflowSpool != null && overflowSpool.getPendingCount() > 0)) {
+            flush(false);
           }
         }
       }
     }, 1, Math.max(flushSec, 1), TimeUnit.SECONDS);
     log.info(
-        "Initialize FastBatchConsumer with params:[timing:{};bulkSize:{};maxCacheSize:{};flushSec:{};timeoutSec:{}].",
-        timing, bulkSize, maxCacheSize, flushSec, timeoutSec);
+        "Initialize FastBatchConsumer with params:[timing:{};bulkSize:{};maxCacheSize:{};flushSec:{};timeoutSec:{};ringBuffer:{};spoolDir:{};maxBatchBytes:{};retryPolicy:{};overflowPolicy:{};compressionCodec:{};connectionPool:{};instantFlushMs:{};senderThreads:{}].",
+        timing, bulkSize, maxCacheSize, flushSec, timeoutSec, builder.ringBuffer, builder.spoolDir, maxBatchBytes,
+        builder.retryPolicy, overflowPolicy, builder.compressionCodec, builder.connectionPoolConfig, instantFlushMs,
+        senderThreads);
+  }
+
+  public static Builder builder() {
+    return new Builder();
   }
 
   @Override
   public void send(Map<String, Object> message) {
-    dealInstantSignal(message);
-    if (buffer.remainingCapacity() == 0) {
-      flush();
+    boolean instant = instantEvents.isInstant(message);
+    if (spool != null) {
+      appendToSpool(message, instant);
+      return;
+    }
+    if (instant) {
+      sendInstant(message);
+      return;
+    }
+    Object entry = maxBatchBytes > 0 ? new CachedMessage(message, JsonSizeEstimator.estimate(message)) : message;
+    if (!offer(entry)) {
+      overflowCount.incrementAndGet();
+      handleOverflow(entry);
+      return;
     }
-    buffer.offer(message);
     log.debug("Successfully save data to cache.The cache current size is {}.", buffer.size());
   }
 
-  private void dealInstantSignal(Map<String, Object> message) {
+  private boolean offer(Object entry) {
+    if (buffer.offer(entry)) {
+      if (maxBatchBytes > 0) {
+        bufferedBytes.addAndGet(sizeOf(entry));
+      }
+      return true;
+    }
+    return false;
+  }
 
-    /*
-     * 如果当前是「instant」状态，且（message中不包含event 或者 event 不是「instant」的，则刷新，设置 「非instant」状态
-     */
-    if (isInstantStatus && (!message.containsKey("event") || !instantEvents.contains(message.get("event")))) {
-      flush();
-      isInstantStatus = false;
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> messageOf(Object entry) {
+    return entry instanceof CachedMessage ? ((CachedMessage) entry).message : (Map<String, Object>) entry;
+  }
+
+  private static int sizeOf(Object entry) {
+    return entry instanceof CachedMessage ? ((CachedMessage) entry).size : 0;
+  }
+
+  /**
+   * 缓存已满时按 overflowPolicy 处理当前数据，未能入队的数据通过 callback 返回
+   */
+  private void handleOverflow(Object entry) {
+    switch (overflowPolicy) {
+      case BLOCK:
+        if (offerBlocking(entry)) {
+          return;
+        }
+        break;
+      case DROP_NEWEST:
+        break;
+      case DROP_OLDEST:
+        Object oldest = buffer.poll();
+        if (oldest != null) {
+          bufferedBytes.addAndGet(-sizeOf(oldest));
+          dropOverflow(messageOf(oldest));
+        }
+        if (offer(entry)) {
+          return;
+        }
+        break;
+      case SPILL_TO_FILE:
+        try {
+          if (overflowSpool.append(messageOf(entry), false)) {
+            overflowSpilledCount.incrementAndGet();
+            return;
+          }
+        } catch (JsonProcessingException e) {
+          overflowDroppedCount.incrementAndGet();
+          callback.onFailed(new FailedData(String.format("can't process json,message:%s.", e.getMessage()),
+              SensorsAnalyticsUtil.deepCopy(Collections.singletonList(messageOf(entry)))));
+          log.error("Failed to process json.", e);
+          return;
+        }
+        break;
+      default:
+        flush();
+        if (offer(entry)) {
+          return;
+        }
+        break;
     }
+    dropOverflow(messageOf(entry));
+  }
 
-    /*
-     * 如果当前是 「非instant」状态，且（message中包含event 且 event 是「instant」的，则刷新，设置 「instant」状态
-     */
-    if (!isInstantStatus && message.containsKey("event") && instantEvents.contains(message.get("event"))) {
-      flush();
-      isInstantStatus = true;
+  /**
+   * 等待后台线程发送数据腾出空间，超时或线程被中断时返回 false
+   */
+  private boolean offerBlocking(Object entry) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(overflowBlockTimeoutMs);
+    synchronized (overflowLock) {
+      while (!offer(entry)) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        requestFlush();
+        try {
+          TimeUnit.NANOSECONDS.timedWait(overflowLock, remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 不等待下一个 flushSec 周期，立即在后台线程执行一次 flush
+   */
+  private void requestFlush() {
+    if (flushRequested.compareAndSet(false, true)) {
+      try {
+        executorService.execute(new Runnable() {
+          @Override
+          public void run() {
+            flushRequested.set(false);
+            flush(false);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        flushRequested.set(false);
+      }
+    }
+  }
+
+  private void dropOverflow(Map<String, Object> message) {
+    overflowDroppedCount.incrementAndGet();
+    log.debug("The cache is full, drop data:{}.", message);
+    callback.onFailed(new FailedData("the cache is full.",
+        SensorsAnalyticsUtil.deepCopy(Collections.singletonList(message))));
+  }
+
+  private void appendToSpool(Map<String, Object> message, boolean instant) {
+    try {
+      if (spool.append(message, instant)) {
+        log.debug("Successfully save data to spool.The spool current size is {}.", spool.getPendingCount());
+        return;
+      }
+      callback.onFailed(new FailedData("the spool is full or closed.",
+          SensorsAnalyticsUtil.deepCopy(Collections.singletonList(message))));
+    } catch (JsonProcessingException e) {
+      callback.onFailed(new FailedData(String.format("can't process json,message:%s.", e.getMessage()),
+          SensorsAnalyticsUtil.deepCopy(Collections.singletonList(message))));
+      log.error("Failed to process json.", e);
+    }
+  }
+
+  private void sendInstant(Map<String, Object> message) {
+    if (!instantBuffer.offer(message)) {
+      overflowCount.incrementAndGet();
+      dropOverflow(message);
+      return;
+    }
+    if (instantFlushMs <= 0 || instantBuffer.size() >= bulkSize) {
+      requestInstantFlush();
+    }
+  }
+
+  /**
+   * 在即时事件发送线程中立即发送一次即时事件缓存
+   */
+  private void requestInstantFlush() {
+    if (instantFlushRequested.compareAndSet(false, true)) {
+      try {
+        instantExecutorService.execute(new Runnable() {
+          @Override
+          public void run() {
+            instantFlushRequested.set(false);
+            flushInstant();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        instantFlushRequested.set(false);
+      }
     }
   }
 
+  private void flushInstant() {
+    if (instantBuffer == null) {
+      return;
+    }
+    List<Map<String, Object>> results = new ArrayList<>();
+    instantBuffer.drainTo(results);
+    Deque<List<Map<String, Object>>> batches = new ArrayDeque<>();
+    for (int index = 0; index < results.size(); index += bulkSize) {
+      batches.addLast(new ArrayList<>(results.subList(index, Math.min(index + bulkSize, results.size()))));
+    }
+    sendQueued(batches, instantHttpConsumer);
+  }
+
   /**
    * This method don't need to be called actively.Because instance will create scheduled thread to do.
    */
   @Override
   public void flush() {
-    List<Map<String, Object>> results = new ArrayList<>();
+    flush(true);
+  }
+
+  /**
+   * @param await 多线程发送时是否等待各发送线程发送完成；后台定时 flush 不等待，下一次 flush 可以继续切分数据
+   */
+  private void flush(boolean await) {
+    if (spool != null) {
+      flushSpool(spool);
+      return;
+    }
+    flushInstant();
+    flushBuffer();
+    if (await) {
+      awaitSenders();
+    }
+    if (overflowSpool != null) {
+      flushSpool(overflowSpool);
+    }
+  }
+
+  private void flushBuffer() {
+    List<Object> results = new ArrayList<>();
     buffer.drainTo(results);
+    if (overflowPolicy == OverflowPolicy.BLOCK) {
+      synchronized (overflowLock) {
+        overflowLock.notifyAll();
+      }
+    }
     if (results.isEmpty()) {
       log.info("The Data of cache is empty when flush.");
       return;
     }
     log.debug("Successfully get [{}] messages from the cache.", results.size());
-    while (!results.isEmpty()) {
-      String sendingData;
-      List<Map<String, Object>> sendList = results.subList(0, Math.min(bulkSize, results.size()));
+    if (maxBatchBytes > 0) {
+      long drainedBytes = 0;
+      for (Object entry : results) {
+        drainedBytes += sizeOf(entry);
+      }
+      bufferedBytes.addAndGet(-drainedBytes);
+    }
+    // 数据不足以分给多个线程且没有发送中的分区时直接发送，避免拆成过小的批次；有发送中的分区时需要按分区发送以保持同一用户的顺序
+    if (senderThreads <= 1 || (results.size() <= bulkSize && senderPermits.availablePermits() == maxSenderPermits)) {
+      sendBatches(results);
+    } else {
+      sendPartitioned(results);
+    }
+    log.debug("Finish flush.");
+  }
+
+  /**
+   * 按 distinct_id 的 hash 将数据分给各分区的发送线程后立即返回，各分区独立发送；同一用户的数据总是落在同一分区内，保持原有顺序。
+   * 发送中的分区数达到上限时等待
+   */
+  private void sendPartitioned(List<Object> results) {
+    List<List<Object>> partitionList = new ArrayList<>(senderThreads);
+    for (int i = 0; i < senderThreads; i++) {
+      partitionList.add(new ArrayList<>(results.size() / senderThreads + 1));
+    }
+    for (Object entry : results) {
+      partitionList.get(partition(messageOf(entry), senderThreads)).add(entry);
+    }
+    for (int i = 0; i < senderThreads; i++) {
+      List<Object> partition = partitionList.get(i);
+      if (partition.isEmpty()) {
+        continue;
+      }
+      final Deque<List<Map<String, Object>>> batches = toBatches(partition);
+      if (!enqueue(batches)) {
+        return;
+      }
       try {
-        sendingData = jsonMapper.writeValueAsString(sendList);
-      } catch (JsonProcessingException e) {
-        callback.onFailed(new FailedData(String.format("can't process json,message:%s.", e.getMessage()),
-            SensorsAnalyticsUtil.deepCopy(sendList)));
-        sendList.clear();
-        log.error("Failed to process json.", e);
+        senderPermits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.warn("Interrupted while waiting for sender threads,send data in current thread.");
+        sendEnqueued(batches, httpConsumer);
         continue;
       }
-      log.debug("Data will be sent.{}", sendingData);
       try {
-        if (isInstantStatus) {
-          this.instantHttpConsumer.consume(sendingData);
-        } else {
-          this.httpConsumer.consume(sendingData);
+        senderExecutorServices[i].execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              sendEnqueued(batches, httpConsumer);
+            } finally {
+              senderPermits.release();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        senderPermits.release();
+        sendEnqueued(batches, httpConsumer);
+      }
+    }
+  }
+
+  /**
+   * 等待已提交给发送线程的分区全部发送完成
+   */
+  private void awaitSenders() {
+    if (senderThreads <= 1) {
+      return;
+    }
+    try {
+      senderPermits.acquire(maxSenderPermits);
+      senderPermits.release(maxSenderPermits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while waiting for sender threads.");
+    }
+  }
+
+  /**
+   * 按 distinct_id 计算分区，没有 distinct_id 的数据（如 item 数据）按 identities 计算，都没有时落在 0 号分区
+   */
+  private static int partition(Map<String, Object> message, int partitions) {
+    Object key = message.get("distinct_id");
+    if (key == null) {
+      key = message.get("identities");
+    }
+    if (key == null) {
+      return 0;
+    }
+    int hash = key.hashCode();
+    hash ^= hash >>> 16;
+    return (hash & Integer.MAX_VALUE) % partitions;
+  }
+
+  private void sendBatches(List<Object> results) {
+    sendQueued(toBatches(results), httpConsumer);
+  }
+
+  private Deque<List<Map<String, Object>>> toBatches(List<Object> results) {
+    Deque<List<Map<String, Object>>> batches = new ArrayDeque<>();
+    int index = 0;
+    while (index < results.size()) {
+      int count = nextBatchCount(results, index);
+      List<Map<String, Object>> sendList = new ArrayList<>(count);
+      for (int i = index; i < index + count; i++) {
+        sendList.add(messageOf(results.get(i)));
+      }
+      index += count;
+      batches.addLast(sendList);
+    }
+    return batches;
+  }
+
+  private void sendQueued(Deque<List<Map<String, Object>>> batches, HttpConsumer consumer) {
+    if (enqueue(batches)) {
+      sendEnqueued(batches, consumer);
+    }
+  }
+
+  /**
+   * 登记待发送的批次，登记后的批次可以被 {@link #drainUnsent()} 取走；已开始 drain 时返回 false
+   */
+  private boolean enqueue(Deque<List<Map<String, Object>>> batches) {
+    synchronized (drainLock) {
+      if (draining) {
+        return false;
+      }
+      queuedBatches.add(batches);
+      return true;
+    }
+  }
+
+  /**
+   * 依次发送已登记的批次，每次发送前从 batches 中取出
+   */
+  private void sendEnqueued(Deque<List<Map<String, Object>>> batches, HttpConsumer consumer) {
+    while (true) {
+      List<Map<String, Object>> sendList;
+      synchronized (drainLock) {
+        sendList = batches.pollFirst();
+        if (sendList == null) {
+          queuedBatches.remove(batches);
+          return;
         }
+      }
+      log.debug("Data will be sent.{}", sendList);
+      try {
+        consumer.consume(sendList);
+      } catch (JsonProcessingException e) {
+        callback.onFailed(new FailedData(String.format("can't process json,message:%s.", e.getMessage()),
+            SensorsAnalyticsUtil.deepCopy(sendList)));
+        log.error("Failed to process json.", e);
       } catch (Exception e) {
-        log.error("Failed to send data:{}.", sendingData, e);
+        log.error("Failed to send data:{}.", sendList, e);
         callback.onFailed(new FailedData(String.format("failed to send data,message:%s.", e.getMessage()),
             SensorsAnalyticsUtil.deepCopy(sendList)));
       }
-      sendList.clear();
+    }
+  }
+
+  /**
+   * 停止发送并取出尚未发出的数据：各发送线程已取出但尚未发出的批次以及缓存中的数据。开启磁盘缓存时数据已在磁盘中，
+   * 进程重启后补发，只停止发送并返回空列表
+   */
+  @Override
+  public List<Map<String, Object>> drainUnsent() {
+    List<Map<String, Object>> results = new ArrayList<>();
+    synchronized (drainLock) {
+      draining = true;
+      for (Deque<List<Map<String, Object>>> batches : queuedBatches) {
+        for (List<Map<String, Object>> batch : batches) {
+          results.addAll(batch);
+        }
+        batches.clear();
+      }
+      queuedBatches.clear();
+    }
+    if (instantBuffer != null) {
+      instantBuffer.drainTo(results);
+    }
+    List<Object> entries = new ArrayList<>();
+    buffer.drainTo(entries);
+    for (Object entry : entries) {
+      bufferedBytes.addAndGet(-sizeOf(entry));
+      results.add(messageOf(entry));
+    }
+    log.info("Drain {} unsent messages.", results.size());
+    return results;
+  }
+
+  /**
+   * 计算从 from 开始的下一批数据条数：不超过 bulkSize，开启 maxBatchBytes 时累计字节数不超过上限（单条超出上限时单独成批）
+   */
+  private int nextBatchCount(List<Object> results, int from) {
+    if (maxBatchBytes <= 0) {
+      return Math.min(bulkSize, results.size() - from);
+    }
+    int count = 0;
+    long bytes = 0;
+    for (int i = from; i < results.size(); i++) {
+      int size = sizeOf(results.get(i));
+      if (count > 0 && bytes + size > maxBatchBytes) {
+        break;
+      }
+      bytes += size;
+      count++;
+      if (count >= bulkSize || bytes >= maxBatchBytes) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * 按顺序发送磁盘缓存中的数据，发送失败时保留在磁盘中，等待下次 flush 重试；被接收端拒绝（4xx）的批次重发也不会成功，
+   * 通过 callback 返回后跳过，避免阻塞后续数据
+   */
+  private void flushSpool(DiskSpool diskSpool) {
+    synchronized (spoolReadLock) {
+      DiskSpool.Batch batch;
+      while (!isDraining() && (batch = diskSpool.read(bulkSize, maxBatchBytes)) != null) {
+        List<Map<String, Object>> sendList = batch.messages;
+        if (!sendList.isEmpty()) {
+          log.debug("Data will be sent.{}", sendList);
+          try {
+            if (batch.instant) {
+              this.instantHttpConsumer.consume(sendList);
+            } else {
+              this.httpConsumer.consume(sendList);
+            }
+          } catch (JsonProcessingException e) {
+            callback.onFailed(new FailedData(String.format("can't process json,message:%s.", e.getMessage()),
+                SensorsAnalyticsUtil.deepCopy(sendList)));
+            log.error("Failed to process json.", e);
+          } catch (Exception e) {
+            if (!(e instanceof HttpConsumer.HttpConsumerException) || RetryPolicy.isRetryable(e)) {
+              log.error("Failed to send data from spool, it will be resent later.", e);
+              return;
+            }
+            log.error("Skip {} messages from spool because of unrecoverable error.", sendList.size(), e);
+            callback.onFailed(new FailedData(String.format("failed to send data,message:%s.", e.getMessage()),
+                SensorsAnalyticsUtil.deepCopy(sendList)));
+          }
+        }
+        diskSpool.commit(batch);
+      }
     }
     log.debug("Finish flush.");
   }
 
+  private boolean isDraining() {
+    synchronized (drainLock) {
+      return draining;
+    }
+  }
+
+  /**
+   * 停止定时任务，发送内存缓存中的剩余数据后释放资源；磁盘缓存中的数据已持久化，下次启动时补发
+   */
   @Override
   public void close() {
     log.info("Call close method.");
-    this.httpConsumer.close();
     this.executorService.shutdown();
+    if (instantExecutorService != null) {
+      instantExecutorService.shutdown();
+    }
+    // 正在执行的定时 flush 已从缓存取出数据，需要等它发送完成后再做最后一次 flush 并关闭客户端
+    long deadline = System.currentTimeMillis() + closeTimeoutMs;
+    awaitTermination(executorService, deadline);
+    if (instantExecutorService != null) {
+      awaitTermination(instantExecutorService, deadline);
+    }
+    try {
+      if (spool == null) {
+        flushInstant();
+        flushBuffer();
+      }
+    } finally {
+      if (senderExecutorServices != null) {
+        for (ExecutorService senderExecutorService : senderExecutorServices) {
+          senderExecutorService.shutdown();
+        }
+        // 最后一次 flush 提交的分区重新计算等待时间
+        deadline = System.currentTimeMillis() + closeTimeoutMs;
+        for (ExecutorService senderExecutorService : senderExecutorServices) {
+          awaitTermination(senderExecutorService, deadline);
+        }
+      }
+      this.httpConsumer.close();
+      this.instantHttpConsumer.close();
+    }
+    closeSpool(spool);
+    closeSpool(overflowSpool);
+  }
+
+  /**
+   * 等待线程池中已提交的任务执行完成，到达 deadline 仍未结束时打印日志并中断线程池中的线程
+   */
+  private void awaitTermination(ExecutorService executor, long deadline) {
+    try {
+      long waitMs = Math.max(deadline - System.currentTimeMillis(), 0);
+      if (!executor.awaitTermination(waitMs, TimeUnit.MILLISECONDS)) {
+        log.warn("FastBatchConsumer did not finish sending in {} ms before close.", closeTimeoutMs);
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.warn("Interrupted while waiting for FastBatchConsumer to finish sending.");
+      executor.shutdownNow();
+    }
+  }
+
+  private void closeSpool(DiskSpool diskSpool) {
+    if (diskSpool != null) {
+      synchronized (spoolReadLock) {
+        try {
+          diskSpool.close();
+        } catch (IOException e) {
+          log.error("Failed to close spool.", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * 缓存已满时由 overflowPolicy 处理的数据条数
+   */
+  public long getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  /**
+   * 缓存已满时被丢弃并通过 callback 返回的数据条数，包括 DROP_OLDEST 策略下被挤出的数据及 BLOCK 策略下等待超时的数据
+   */
+  public long getOverflowDroppedCount() {
+    return overflowDroppedCount.get();
+  }
+
+  /**
+   * 缓存已满时写入磁盘缓存的数据条数
+   */
+  public long getOverflowSpilledCount() {
+    return overflowSpilledCount.get();
   }
 
   /**
@@ -191,15 +901,261 @@ public class FastBatchConsumer implements Consumer {
   public boolean resendFailedData(@NonNull FailedData failedData)
       throws InvalidArgumentException, JsonProcessingException {
     SensorsAnalyticsUtil.assertFailedData(failedData);
-    final String sendData = jsonMapper.writeValueAsString(failedData.getFailedData());
-    log.debug("Will be resent data.{}", sendData);
+    log.debug("Will be resent data.{}", failedData.getFailedData());
     try {
-      this.httpConsumer.consume(sendData);
+      this.httpConsumer.consume(failedData.getFailedData());
+    } catch (JsonProcessingException e) {
+      throw e;
     } catch (Exception e) {
-      log.error("failed to send data.data:{}.", sendData, e);
+      log.error("failed to send data.data:{}.", failedData.getFailedData(), e);
       return false;
     }
     log.info("Successfully resend failed data.");
     return true;
   }
+
+  /**
+   * 缓存中的数据及其入队时估算的 JSON 字节数
+   */
+  private static class CachedMessage {
+    private final Map<String, Object> message;
+    private final int size;
+
+    CachedMessage(Map<String, Object> message, int size) {
+      this.message = message;
+      this.size = size;
+    }
+  }
+
+  public static class Builder {
+    private HttpClientBuilder httpClientBuilder = HttpClients.custom();
+    private String serverUrl;
+    private boolean timing = false;
+    private int bulkSize = 50;
+    private int maxCacheSize = 6000;
+    private int flushSec = 1;
+    private int timeoutSec = 3;
+    private Callback callback;
+    private List<String> instantEvents = new ArrayList<>();
+    private long instantFlushMs = 100;
+    private boolean ringBuffer = false;
+    private TransportMode transportMode = TransportMode.FORM;
+    private String spoolDir;
+    private int spoolSegmentSize = 8 * 1024 * 1024;
+    private long spoolMaxDiskUsage = 1024L * 1024 * 1024;
+    private SpoolFsyncPolicy spoolFsyncPolicy = SpoolFsyncPolicy.NONE;
+    private RetryPolicy retryPolicy;
+    private int maxBatchBytes = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+    private long overflowBlockTimeoutMs = 1000;
+    private String overflowSpillDir;
+    private CompressionCodec compressionCodec = CompressionCodec.getDefault();
+    private ConnectionPoolConfig connectionPoolConfig;
+    private int senderThreads = 1;
+    private boolean customHttpClientBuilder;
+    private long closeTimeoutMs = 0;
+
+    private Builder() {
+    }
+
+    public FastBatchConsumer build() {
+      return new FastBatchConsumer(this);
+    }
+
+    /**
+     * 自定义的 HttpClientBuilder 按原样使用，senderThreads 大于 1 时需要自行保证每路由连接数不小于 senderThreads
+     */
+    public Builder setHttpClientBuilder(HttpClientBuilder httpClientBuilder) {
+      this.httpClientBuilder = httpClientBuilder;
+      this.customHttpClientBuilder = true;
+      return this;
+    }
+
+    public Builder setServerUrl(String serverUrl) {
+      this.serverUrl = serverUrl;
+      return this;
+    }
+
+    public Builder setTiming(boolean timing) {
+      this.timing = timing;
+      return this;
+    }
+
+    public Builder setBulkSize(int bulkSize) {
+      this.bulkSize = bulkSize;
+      return this;
+    }
+
+    public Builder setMaxCacheSize(int maxCacheSize) {
+      this.maxCacheSize = maxCacheSize;
+      return this;
+    }
+
+    public Builder setFlushSec(int flushSec) {
+      this.flushSec = flushSec;
+      return this;
+    }
+
+    public Builder setTimeoutSec(int timeoutSec) {
+      this.timeoutSec = timeoutSec;
+      return this;
+    }
+
+    public Builder setCallback(Callback callback) {
+      this.callback = callback;
+      return this;
+    }
+
+    public Builder setInstantEvents(List<String> instantEvents) {
+      if (instantEvents != null) {
+        this.instantEvents = instantEvents;
+      }
+      return this;
+    }
+
+    /**
+     * 即时事件的最长等待时间，默认 100 毫秒。即时事件使用独立的缓存和发送线程，达到 bulkSize 或等待超过该时间时发送，
+     * 不受 flushSec 及普通事件的影响；0 表示每次 send 后立即发送
+     */
+    public Builder setInstantFlushMs(long instantFlushMs) {
+      this.instantFlushMs = instantFlushMs;
+      return this;
+    }
+
+    /**
+     * 使用预分配的无锁环形缓冲队列代替 LinkedBlockingQueue，适用于大量线程并发上报的场景
+     */
+    public Builder setRingBuffer(boolean ringBuffer) {
+      this.ringBuffer = ringBuffer;
+      return this;
+    }
+
+    /**
+     * 请求体格式，默认为 {@link TransportMode#FORM}；其它格式需要接收端支持
+     */
+    public Builder setTransportMode(TransportMode transportMode) {
+      if (transportMode != null) {
+        this.transportMode = transportMode;
+      }
+      return this;
+    }
+
+    /**
+     * 单批数据序列化后（压缩前）的字节数上限，bulkSize 作为条数上限同时生效；默认 0，表示只按 bulkSize 切分。
+     * 字节数在数据入队时估算，不会额外序列化；开启磁盘缓存时使用记录的实际字节数
+     */
+    public Builder setMaxBatchBytes(int maxBatchBytes) {
+      this.maxBatchBytes = maxBatchBytes;
+      return this;
+    }
+
+    /**
+     * 开启磁盘缓存：数据先写入该目录再发送，发送成功后删除，进程重启后自动补发未发送的数据。
+     * 开启后网络发送失败的数据保留在磁盘中重试，不再通过 callback 返回；只有磁盘缓存已满、数据无法序列化或被接收端拒绝（4xx）时才回调。
+     * 同一目录同时只能被一个 FastBatchConsumer 使用。
+     */
+    public Builder setSpoolDir(String spoolDir) {
+      this.spoolDir = spoolDir;
+      return this;
+    }
+
+    /**
+     * 磁盘缓存单个段文件大小，默认 8MB
+     */
+    public Builder setSpoolSegmentSize(int spoolSegmentSize) {
+      this.spoolSegmentSize = Math.max(spoolSegmentSize, 64 * 1024);
+      return this;
+    }
+
+    /**
+     * 磁盘缓存占用空间上限，默认 1GB
+     */
+    public Builder setSpoolMaxDiskUsage(long spoolMaxDiskUsage) {
+      this.spoolMaxDiskUsage = spoolMaxDiskUsage;
+      return this;
+    }
+
+    /**
+     * 磁盘缓存刷盘策略，默认 {@link SpoolFsyncPolicy#NONE}
+     */
+    public Builder setSpoolFsyncPolicy(SpoolFsyncPolicy spoolFsyncPolicy) {
+      if (spoolFsyncPolicy != null) {
+        this.spoolFsyncPolicy = spoolFsyncPolicy;
+      }
+      return this;
+    }
+
+    /**
+     * 发送失败时的重试及熔断策略，默认不重试；重试次数用尽或熔断期间的失败数据仍通过 callback 返回
+     */
+    public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * 缓存已满时的处理策略，默认 {@link OverflowPolicy#CALLER_RUNS}；开启 spoolDir 时所有数据都写入磁盘，该配置不生效
+     */
+    public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+      if (overflowPolicy != null) {
+        this.overflowPolicy = overflowPolicy;
+      }
+      return this;
+    }
+
+    /**
+     * {@link OverflowPolicy#BLOCK} 策略下 send 的最长等待时间，默认 1000ms
+     */
+    public Builder setOverflowBlockTimeoutMs(long overflowBlockTimeoutMs) {
+      this.overflowBlockTimeoutMs = overflowBlockTimeoutMs;
+      return this;
+    }
+
+    /**
+     * {@link OverflowPolicy#SPILL_TO_FILE} 策略下磁盘缓存目录，段文件大小、空间上限及刷盘策略与 spoolDir 的配置相同
+     */
+    public Builder setOverflowSpillDir(String overflowSpillDir) {
+      this.overflowSpillDir = overflowSpillDir;
+      return this;
+    }
+
+    /**
+     * 压缩配置，默认 {@link CompressionCodec#getDefault()}；使用预置字典时 transportMode 不能为 FORM
+     */
+    public Builder setCompressionCodec(CompressionCodec compressionCodec) {
+      if (compressionCodec != null) {
+        this.compressionCodec = compressionCodec;
+      }
+      return this;
+    }
+
+    /**
+     * 使用进程内按接收端地址共享的连接池（参见 {@link SharedHttpTransport}），此时 httpClientBuilder 只用于即时事件的独立连接；
+     * 默认不共享
+     */
+    public Builder setConnectionPool(ConnectionPoolConfig connectionPoolConfig) {
+      this.connectionPoolConfig = connectionPoolConfig;
+      return this;
+    }
+
+    /**
+     * 并行发送的线程数，默认 1。大于 1 时每次 flush 按 distinct_id 的 hash 将缓存数据分区，各分区在独立线程中按顺序发送，
+     * 同一用户的数据保持上报顺序，一个慢请求不会阻塞其他分区，后台 flush 也不等待各分区发送完成；发送中的分区数上限为线程数的 2 倍。
+     * 默认的 httpClientBuilder 的连接数上限会按线程数调整，自定义的 httpClientBuilder 及共享连接池需要保证每路由连接数不小于该值。
+     * 开启磁盘缓存时仍按顺序单线程发送
+     */
+    public Builder setSenderThreads(int senderThreads) {
+      this.senderThreads = senderThreads;
+      return this;
+    }
+
+    /**
+     * close 时等待正在执行的 flush 及各分区发送完成的最长时间；默认 0，表示按 timeoutSec 及重试次数计算。
+     * 超时后中断发送线程并打印日志
+     */
+    public Builder setCloseTimeoutMs(long closeTimeoutMs) {
+      this.closeTimeoutMs = closeTimeoutMs;
+      return this;
+    }
+  }
 }
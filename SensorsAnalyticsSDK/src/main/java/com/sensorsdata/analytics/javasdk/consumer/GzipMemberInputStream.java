@@ -0,0 +1,219 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 从指定位置开始依次解压文件中拼接的 gzip member，供 {@link LogShipper} 读取压缩后的日志文件
+ * <p>
+ * 与 GZIPInputStream 不同，读到文件末尾时不要求最后一个 member 完整（文件可能仍在写入），直接返回 -1；
+ * 并记录最后一个完整 member 结束时在文件中的位置及此前解压出的字节数，下次可以从该位置继续读取，不需要从头解压。
+ */
+final class GzipMemberInputStream extends InputStream {
+
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private final FileChannel channel;
+  /**
+   * 读模式，保存已从文件读出但尚未解压的数据
+   */
+  private final ByteBuffer input = ByteBuffer.allocate(64 * 1024);
+  private final Inflater inflater = new Inflater(true);
+  private final CRC32 crc = new CRC32();
+  private long inputPosition;
+  private boolean inMember;
+  private long memberEnd;
+  private long memberEndOutput;
+  private long output;
+
+  /**
+   * @param position 一个 member 开始的位置
+   * @param outputBase position 之前的 member 解压后的字节数
+   */
+  GzipMemberInputStream(FileChannel channel, long position, long outputBase) {
+    this.channel = channel;
+    this.inputPosition = position;
+    this.memberEnd = position;
+    this.memberEndOutput = outputBase;
+    this.output = outputBase;
+    input.limit(0);
+  }
+
+  /**
+   * 最后一个完整 member 结束时在文件中的位置
+   */
+  long getMemberEnd() {
+    return memberEnd;
+  }
+
+  /**
+   * 最后一个完整 member 结束时解压出的字节数（包括 outputBase）
+   */
+  long getMemberEndOutput() {
+    return memberEndOutput;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+  }
+
+  /**
+   * 每次最多返回一个 member 中的数据；没有更多数据或最后一个 member 不完整时返回 -1
+   */
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (true) {
+      if (!inMember) {
+        if (!readHeader()) {
+          return -1;
+        }
+        inMember = true;
+        inflater.reset();
+        crc.reset();
+      }
+      if (inflater.finished()) {
+        if (!readTrailer()) {
+          return -1;
+        }
+        inMember = false;
+        memberEnd = inputPosition - input.remaining();
+        memberEndOutput = output;
+        continue;
+      }
+      if (!input.hasRemaining() && !fill()) {
+        return -1;
+      }
+      inflater.setInput(input.array(), input.position(), input.remaining());
+      int n;
+      try {
+        n = inflater.inflate(b, off, len);
+      } catch (DataFormatException e) {
+        throw new ZipException(e.getMessage());
+      }
+      input.position(input.limit() - inflater.getRemaining());
+      if (n > 0) {
+        crc.update(b, off, n);
+        output += n;
+        return n;
+      }
+      if (inflater.needsDictionary()) {
+        throw new ZipException("Unexpected preset dictionary in gzip member.");
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    inflater.end();
+  }
+
+  private boolean readHeader() throws IOException {
+    if (!ensure(10)) {
+      return false;
+    }
+    if (byteAt(0) != 0x1f || byteAt(1) != 0x8b || byteAt(2) != 8) {
+      throw new ZipException("Not in gzip format.");
+    }
+    int flags = byteAt(3);
+    int size = 10;
+    if ((flags & FEXTRA) != 0) {
+      if (!ensure(size + 2)) {
+        return false;
+      }
+      size += 2 + (byteAt(size) | byteAt(size + 1) << 8);
+    }
+    if ((flags & FNAME) != 0 && (size = skipZeroTerminated(size)) < 0) {
+      return false;
+    }
+    if ((flags & FCOMMENT) != 0 && (size = skipZeroTerminated(size)) < 0) {
+      return false;
+    }
+    if ((flags & FHCRC) != 0) {
+      size += 2;
+    }
+    if (!ensure(size)) {
+      return false;
+    }
+    input.position(input.position() + size);
+    return true;
+  }
+
+  private boolean readTrailer() throws IOException {
+    if (!ensure(8)) {
+      return false;
+    }
+    long expectedCrc = intAt(0) & 0xffffffffL;
+    long expectedSize = intAt(4) & 0xffffffffL;
+    if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+      throw new ZipException("Corrupt gzip trailer.");
+    }
+    input.position(input.position() + 8);
+    return true;
+  }
+
+  /**
+   * 返回字符串结束符之后的位置，数据不完整时返回 -1
+   */
+  private int skipZeroTerminated(int size) throws IOException {
+    while (true) {
+      if (!ensure(size + 1)) {
+        return -1;
+      }
+      if (byteAt(size++) == 0) {
+        return size;
+      }
+    }
+  }
+
+  private int byteAt(int index) {
+    return input.get(input.position() + index) & 0xff;
+  }
+
+  private int intAt(int index) {
+    return byteAt(index) | byteAt(index + 1) << 8 | byteAt(index + 2) << 16 | byteAt(index + 3) << 24;
+  }
+
+  /**
+   * 保证 input 中至少有 size 字节未读数据，文件中没有更多数据时返回 false
+   */
+  private boolean ensure(int size) throws IOException {
+    while (input.remaining() < size) {
+      if (size > input.capacity()) {
+        throw new ZipException("The gzip header is too long.");
+      }
+      if (!fill()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean fill() throws IOException {
+    input.compact();
+    int n;
+    try {
+      n = channel.read(input, inputPosition);
+    } finally {
+      input.flip();
+    }
+    if (n <= 0) {
+      return false;
+    }
+    inputPosition += n;
+    return true;
+  }
+}
@@ -2,13 +2,19 @@ package com.sensorsdata.analytics.javasdk.consumer;
 
 import com.sensorsdata.analytics.javasdk.SensorsConst;
 import com.sensorsdata.analytics.javasdk.util.Base64Coder;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
@@ -21,16 +27,22 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
 
+@Slf4j
 class HttpConsumer implements Closeable {
     CloseableHttpClient httpClient;
     final String serverUrl;
     final Map<String, String> httpHeaders;
-    final boolean compressData;
+    CompressionCodec compressionCodec;
     final RequestConfig requestConfig;
+    final ObjectMapper jsonMapper;
+    final TransportMode transportMode;
+    RetryPolicy retryPolicy;
+    SharedHttpTransport sharedTransport;
+    CircuitBreaker circuitBreaker;
 
     public HttpConsumer(String serverUrl, int timeoutSec) {
         this(HttpClients.custom(), serverUrl, null, timeoutSec);
@@ -53,20 +65,135 @@ class HttpConsumer implements Closeable {
     }
 
     HttpConsumer(HttpClientBuilder httpClientBuilder, String serverUrl, Map<String, String> httpHeaders, int timeoutSec) {
+        this(httpClientBuilder, serverUrl, httpHeaders, timeoutSec, TransportMode.FORM);
+    }
+
+    HttpConsumer(HttpClientBuilder httpClientBuilder, String serverUrl, Map<String, String> httpHeaders, int timeoutSec,
+        TransportMode transportMode) {
+        this(serverUrl, httpHeaders, timeoutSec, transportMode);
+        this.httpClient = httpClientBuilder
+                .setUserAgent(String.format("SensorsAnalytics Java SDK %s", SensorsConst.SDK_VERSION))
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * 使用进程内共享的连接池，close 时只释放引用
+     */
+    HttpConsumer(SharedHttpTransport sharedTransport, String serverUrl, Map<String, String> httpHeaders,
+        int timeoutSec, TransportMode transportMode) {
+        this(serverUrl, httpHeaders, timeoutSec, transportMode);
+        this.sharedTransport = sharedTransport;
+        this.httpClient = sharedTransport.getHttpClient();
+    }
+
+    private HttpConsumer(String serverUrl, Map<String, String> httpHeaders, int timeoutSec,
+        TransportMode transportMode) {
         this.serverUrl = serverUrl.trim();
         this.httpHeaders = httpHeaders;
-        this.compressData = true;
+        this.compressionCodec = CompressionCodec.getDefault();
+        this.transportMode = transportMode == null ? TransportMode.FORM : transportMode;
+        this.jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
         int timeout = timeoutSec * 1000;
         this.requestConfig = RequestConfig.custom().setConnectionRequestTimeout(timeout)
                 .setConnectTimeout(timeout).setSocketTimeout(timeout).build();
-        this.httpClient = httpClientBuilder
-                .setUserAgent(String.format("SensorsAnalytics Java SDK %s", SensorsConst.SDK_VERSION))
-                .setDefaultRequestConfig(requestConfig)
-                .build();
     }
 
     void consume(final String data) throws IOException, HttpConsumerException {
-        HttpUriRequest request = getHttpRequest(data);
+        execute(getHttpRequest(data), data, null);
+    }
+
+    /**
+     * 发送批量数据，请求体格式由 transportMode 决定；FORM 模式下请求体由 {@link DataListEntity} 流式构造，
+     * 发送内容与 {@link #consume(String)} 完全一致
+     *
+     * @throws com.fasterxml.jackson.core.JsonProcessingException 数据序列化失败，此时请求尚未发出
+     */
+    void consume(final List<Map<String, Object>> messages) throws IOException, HttpConsumerException {
+        execute(getHttpRequest(messages), null, messages);
+    }
+
+    /**
+     * 设置压缩配置，使用预置字典时只支持非 FORM 的请求体格式
+     */
+    void setCompressionCodec(CompressionCodec compressionCodec) {
+        if (compressionCodec.hasPresetDictionary() && transportMode == TransportMode.FORM) {
+            throw new IllegalArgumentException("The preset dictionary is not supported in FORM transport mode.");
+        }
+        this.compressionCodec = compressionCodec;
+    }
+
+    /**
+     * 设置失败重试策略，同一个 Consumer 下的 HttpConsumer 共用一个熔断器；retryPolicy 为 null 时不重试
+     */
+    void setRetryPolicy(RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    private void execute(HttpUriRequest request, String data, List<Map<String, Object>> messages)
+        throws IOException, HttpConsumerException {
+        if (retryPolicy == null) {
+            doExecute(request, data, messages);
+            return;
+        }
+        int attempt = 0;
+        while (true) {
+            if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+                throw new CircuitBreaker.CircuitBreakerOpenException(
+                    String.format("Circuit breaker is open, skip sending data to %s.", serverUrl));
+            }
+            attempt++;
+            Exception failure;
+            try {
+                doExecute(request, data, messages);
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess();
+                }
+                return;
+            } catch (IOException | HttpConsumerException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onAbort();
+                }
+                throw e;
+            }
+            boolean retryable = RetryPolicy.isRetryable(failure);
+            if (circuitBreaker != null) {
+                if (failure instanceof ClientClosedException) {
+                    circuitBreaker.onAbort();
+                } else if (retryable) {
+                    circuitBreaker.onFailure();
+                } else {
+                    // 数据本身有问题导致的 4xx 说明接收端可用，不计入熔断
+                    circuitBreaker.onSuccess();
+                }
+            }
+            if (!retryable || attempt >= retryPolicy.getMaxAttempts()) {
+                throwFailure(failure);
+            }
+            long backoffMs = retryPolicy.getBackoffMs(attempt);
+            log.warn("Failed to send data to {} (attempt {}), retry in {} ms: {}", serverUrl, attempt, backoffMs,
+                failure.getMessage());
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throwFailure(failure);
+            }
+        }
+    }
+
+    private static void throwFailure(Exception failure) throws IOException, HttpConsumerException {
+        if (failure instanceof HttpConsumerException) {
+            throw (HttpConsumerException) failure;
+        }
+        throw (IOException) failure;
+    }
+
+    private void doExecute(HttpUriRequest request, String data, List<Map<String, Object>> messages)
+        throws IOException, HttpConsumerException {
         CloseableHttpResponse response = null;
         if (httpClient == null) {
             httpClient = HttpClients.custom()
@@ -75,13 +202,19 @@ class HttpConsumer implements Closeable {
                 .build();
         }
         try {
-            response = httpClient.execute(request);
+            try {
+                response = httpClient.execute(request);
+            } catch (IllegalStateException e) {
+                // 并发调用 close 后 HttpClient 抛出 "Connection pool shut down"
+                throw new ClientClosedException(e);
+            }
             int httpStatusCode = response.getStatusLine().getStatusCode();
             if (httpStatusCode < 200 || httpStatusCode >= 300) {
                 String httpContent = new String(EntityUtils.toByteArray(response.getEntity()), StandardCharsets.UTF_8);
+                String sendingData = data != null ? data : jsonMapper.writeValueAsString(messages);
                 throw new HttpConsumerException(
-                        String.format("Unexpected response %d from Sensors Analytics: %s", httpStatusCode, httpContent), data,
-                        httpStatusCode, httpContent);
+                        String.format("Unexpected response %d from Sensors Analytics: %s", httpStatusCode, httpContent),
+                        sendingData, httpStatusCode, httpContent);
             }
         } finally {
             if (response != null) {
@@ -92,6 +225,7 @@ class HttpConsumer implements Closeable {
 
     HttpUriRequest getHttpRequest(final String data) throws IOException {
         HttpPost httpPost = new HttpPost(this.serverUrl);
+        httpPost.setConfig(requestConfig);
         httpPost.setEntity(getHttpEntry(data));
 
         if (this.httpHeaders != null) {
@@ -103,24 +237,78 @@ class HttpConsumer implements Closeable {
         return httpPost;
     }
 
+    HttpUriRequest getHttpRequest(final List<Map<String, Object>> messages) throws IOException {
+        HttpPost httpPost = newHttpPost(this.serverUrl, transportMode, getExtraNameValuePairs());
+        // 共享连接池的客户端没有本实例的默认超时配置
+        httpPost.setConfig(requestConfig);
+        httpPost.setEntity(getHttpEntry(messages));
+
+        if (this.httpHeaders != null) {
+            for (Map.Entry<String, String> entry : this.httpHeaders.entrySet()) {
+                httpPost.addHeader(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return httpPost;
+    }
+
+    /**
+     * 构造批量数据请求，非 FORM 模式下附加参数只能放在 URL 上
+     */
+    static HttpPost newHttpPost(String serverUrl, TransportMode transportMode,
+        List<NameValuePair> extraNameValuePairs) {
+        if (transportMode == TransportMode.FORM || extraNameValuePairs.isEmpty()) {
+            return new HttpPost(serverUrl);
+        }
+        return new HttpPost(serverUrl + (serverUrl.indexOf('?') < 0 ? '?' : '&')
+            + URLEncodedUtils.format(extraNameValuePairs, Consts.UTF_8));
+    }
+
+    /**
+     * 按请求体格式构造批量数据请求体
+     */
+    static HttpEntity newHttpEntity(ObjectMapper jsonMapper, List<Map<String, Object>> messages,
+        TransportMode transportMode, CompressionCodec compressionCodec, List<NameValuePair> extraNameValuePairs)
+        throws IOException {
+        if (transportMode != TransportMode.FORM) {
+            return RawDataEntity.create(jsonMapper, messages, transportMode, compressionCodec);
+        }
+        return DataListEntity.create(jsonMapper, messages, compressionCodec, extraNameValuePairs);
+    }
+
     UrlEncodedFormEntity getHttpEntry(final String data) throws IOException {
         List<NameValuePair> nameValuePairs = getNameValuePairs(data);
+        nameValuePairs.addAll(getExtraNameValuePairs());
         return new UrlEncodedFormEntity(nameValuePairs);
     }
 
+    HttpEntity getHttpEntry(final List<Map<String, Object>> messages) throws IOException {
+        return newHttpEntity(jsonMapper, messages, transportMode, compressionCodec, getExtraNameValuePairs());
+    }
+
+    /**
+     * 追加在 data_list 之后的表单参数，非 FORM 模式下追加在 URL 上
+     */
+    List<NameValuePair> getExtraNameValuePairs() {
+        return Collections.emptyList();
+    }
+
     List<NameValuePair> getNameValuePairs(String data) throws IOException {
 
         byte[] bytes = data.getBytes(Charset.forName("UTF-8"));
 
         List<NameValuePair> nameValuePairs = new ArrayList<NameValuePair>();
 
-        if (compressData) {
+        if (compressionCodec != null && compressionCodec.shouldCompress(bytes.length)) {
             ByteArrayOutputStream os = new ByteArrayOutputStream(bytes.length);
-            GZIPOutputStream gos = new GZIPOutputStream(os);
-            gos.write(bytes);
-            gos.close();
+            PooledDeflaterOutputStream gos = compressionCodec.newGzipStream(os);
+            try {
+                gos.write(bytes);
+                gos.close();
+            } finally {
+                gos.release();
+            }
             byte[] compressed = os.toByteArray();
-            os.close();
 
             nameValuePairs.add(new BasicNameValuePair("gzip", "1"));
             nameValuePairs.add(new BasicNameValuePair("data_list", new String(Base64Coder.encode
@@ -136,6 +324,12 @@ class HttpConsumer implements Closeable {
 
     @Override
     public synchronized void close() {
+        if (sharedTransport != null) {
+            sharedTransport.release();
+            sharedTransport = null;
+            httpClient = null;
+            return;
+        }
         try {
             if (httpClient != null) {
                 httpClient.close();
@@ -146,6 +340,18 @@ class HttpConsumer implements Closeable {
         }
     }
 
+    /**
+     * HttpClient 已被关闭，重试也不会成功；数据仍按发送失败处理
+     */
+    static class ClientClosedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        ClientClosedException(IllegalStateException cause) {
+            super("The http client is closed: " + cause.getMessage(), cause);
+        }
+    }
+
     static class HttpConsumerException extends Exception {
 
         HttpConsumerException(String error, String sendingData, int httpStatusCode, String
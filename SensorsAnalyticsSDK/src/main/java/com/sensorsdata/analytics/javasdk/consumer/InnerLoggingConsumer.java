@@ -2,29 +2,74 @@ package com.sensorsdata.analytics.javasdk.consumer;
 
 import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.FileNotFoundException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 class InnerLoggingConsumer implements Consumer {
 
     // 默认缓存限制为 1G
     private static final int BUFFER_LIMITATION = 1024 * 1024 * 1024;
+    private static final long WRITE_RETRY_INTERVAL_MS = 1000;
+    private static final long COMPRESSOR_CLOSE_TIMEOUT_MS = 30 * 1000;
+    private static final long WRITER_CLOSE_TIMEOUT_MS = 30 * 1000;
+    private static final AtomicInteger WRITER_THREAD_INDEX = new AtomicInteger();
     private final ObjectMapper jsonMapper;
     private final String filenamePrefix;
-    private final StringBuilder messageBuffer;
+    private final LoggingBuffer messageBuffer;
+    private final LineEncoder messageEncoder;
     private final int bufferSize;
-    private final SimpleDateFormat simpleDateFormat;
+    private final LogSplitMode splitMode;
+    private LogFileRoller fileRoller;
+    /**
+     * 切换文件后压缩旧文件，为 null 表示不压缩
+     */
+    private LogFileCompressor compressor;
+    private String currentFileName;
+    /**
+     * gzip 输出模式下保存每次写文件前压缩得到的 gzip member，为 null 表示写入原始数据；只在写文件的线程中访问
+     */
+    private LoggingBuffer gzipBuffer;
 
     private final LoggingFileWriterFactory fileWriterFactory;
     private LoggingFileWriter fileWriter;
 
+    /**
+     * 异步写入模式下的后台写入线程，为 null 表示同步写入：由触发阈值的调用方线程直接写文件
+     */
+    private Thread writerThread;
+    /**
+     * 后台线程正在写入的缓存，与 messageBuffer 交换得到；写入失败时保留，下次重试
+     */
+    private LoggingBuffer writingBuffer;
+    private long maxPendingBytes;
+    private long maxWaitMs;
+    private boolean writing;
+    private boolean flushRequested;
+    private boolean closing;
+    private long appendedBytes;
+    private long writtenBytes;
+
+    private LogFsyncPolicy fsyncPolicy = LogFsyncPolicy.NONE;
+    private long fsyncIntervalBytes;
+    private long fsyncIntervalMs;
+    /**
+     * 距上次刷盘写入的字节数与上次刷盘时间，只在写文件的线程中访问
+     */
+    private long unsyncedBytes;
+    private long lastSyncTime = System.currentTimeMillis();
+
+    /**
+     * 分条带模式下每个条带独立加锁、独立缓存，写满 bufferSize 后整体追加到 messageBuffer；为 null 表示不分条带
+     */
+    private volatile LineEncoder[] stripes;
+
     InnerLoggingConsumer(
         LoggingFileWriterFactory fileWriterFactory,
         String filenamePrefix,
@@ -32,58 +77,393 @@ class InnerLoggingConsumer implements Consumer {
         this.fileWriterFactory = fileWriterFactory;
         this.filenamePrefix = filenamePrefix;
         this.jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
-        this.messageBuffer = new StringBuilder(bufferSize);
+        this.messageBuffer = new LoggingBuffer(bufferSize);
+        this.messageEncoder = new LineEncoder(messageBuffer);
         this.bufferSize = bufferSize;
-        if (splitMode == LogSplitMode.HOUR) {
-            this.simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd-HH");
-        } else {
-            this.simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        }
+        this.splitMode = splitMode;
+        this.fileRoller = new LogFileRoller(filenamePrefix, splitMode, 1, 0, null);
         log.info(
             "Initialize LoggingConsumer with params:[filenamePrefix:{},bufferSize:{},splitMode:{}].",
             filenamePrefix, bufferSize, splitMode);
     }
 
+    /**
+     * 设置刷盘策略，fsyncIntervalBytes 与 fsyncIntervalMs 只在 {@link LogFsyncPolicy#GROUP_COMMIT} 下生效，小于等于 0 表示不按该条件刷盘
+     */
+    synchronized void setFsyncPolicy(LogFsyncPolicy fsyncPolicy, long fsyncIntervalBytes, long fsyncIntervalMs) {
+        this.fsyncPolicy = fsyncPolicy == null ? LogFsyncPolicy.NONE : fsyncPolicy;
+        this.fsyncIntervalBytes = fsyncIntervalBytes;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        log.info("Set logging fsync policy with params:[fsyncPolicy:{},fsyncIntervalBytes:{},fsyncIntervalMs:{}].",
+            this.fsyncPolicy, fsyncIntervalBytes, fsyncIntervalMs);
+    }
+
+    /**
+     * 设置文件切分方式：splitIntervalMinutes 为 {@link LogSplitMode#MINUTE} 下的切分间隔；maxFileSize 大于 0 时同一时间段内
+     * 文件超过该大小后切换到下一个序号的文件；segmentId 不为 null 时文件名在时间之后增加该标识；
+     * compressRotatedFiles 为 true 时切换文件后在后台线程中将旧文件压缩为 .gz
+     */
+    synchronized void setRolling(int splitIntervalMinutes, long maxFileSize, String segmentId,
+        boolean compressRotatedFiles) {
+        this.fileRoller = new LogFileRoller(filenamePrefix, splitMode, splitIntervalMinutes, maxFileSize, segmentId);
+        if (compressRotatedFiles && gzipBuffer != null) {
+            log.warn("Ignore compressRotatedFiles because logging output is already gzip compressed.");
+        } else if (compressRotatedFiles && compressor == null) {
+            this.compressor = new LogFileCompressor();
+        }
+        log.info("Set logging rolling with params:[splitIntervalMinutes:{},maxFileSize:{},segmentId:{},"
+            + "compressRotatedFiles:{}].", splitIntervalMinutes, maxFileSize, segmentId, compressRotatedFiles);
+    }
+
+    /**
+     * 开启 gzip 输出：每次写文件时将待写入数据压缩为一个独立的 gzip member 追加到文件，文件为多个 member 拼接而成的合法 gzip 文件，
+     * 进程异常退出时最多只有最后一个 member 不完整。文件名与切分方式不变，maxFileSize 按压缩后的大小计算；
+     * 需要在 {@link #setRolling} 之前调用，开启后不再压缩切换后的旧文件
+     */
+    synchronized void enableGzip() {
+        if (gzipBuffer != null) {
+            return;
+        }
+        this.gzipBuffer = new LoggingBuffer(bufferSize);
+        log.info("Enable gzip logging output.");
+    }
+
+    /**
+     * 开启异步写入：调用方只将数据写入内存缓存，缓存达到 bufferSize 或调用 flush 时由后台线程交换缓存并写文件。
+     * 待写入数据（包括正在写入的数据）达到 maxPendingBytes 时 send 最多等待 maxWaitMs，超时抛出异常
+     */
+    synchronized void enableAsync(long maxPendingBytes, long maxWaitMs) {
+        if (writerThread != null) {
+            return;
+        }
+        this.maxPendingBytes = Math.max(maxPendingBytes, bufferSize);
+        this.maxWaitMs = Math.max(maxWaitMs, 0);
+        this.writingBuffer = new LoggingBuffer(bufferSize);
+        this.closing = false;
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }
+        }, "sa-logging-writer-" + WRITER_THREAD_INDEX.incrementAndGet());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        log.info("Enable async logging writer with params:[maxPendingBytes:{},maxWaitMs:{}].", this.maxPendingBytes,
+            this.maxWaitMs);
+    }
+
+    /**
+     * 开启分条带写入：调用方线程按线程 id 分到 stripes 个条带之一，只竞争条带自身的锁；条带缓存达到 bufferSize 后
+     * 以完整的若干行整体追加到 messageBuffer，不同线程的数据不会在行内交错
+     */
+    synchronized void enableStripes(int stripes) {
+        if (stripes <= 0 || this.stripes != null) {
+            return;
+        }
+        LineEncoder[] encoders = new LineEncoder[stripes];
+        for (int i = 0; i < stripes; i++) {
+            encoders[i] = new LineEncoder(new LoggingBuffer(bufferSize));
+        }
+        this.stripes = encoders;
+        log.info("Enable striped logging buffer with params:[stripes:{}].", stripes);
+    }
+
     @Override
-    public synchronized void send(Map<String, Object> message) {
-        if (messageBuffer.length() < BUFFER_LIMITATION) {
+    public void send(Map<String, Object> message) {
+        LineEncoder[] currentStripes = stripes;
+        if (currentStripes != null) {
+            sendStriped(currentStripes, message);
+            return;
+        }
+        synchronized (this) {
+            if (writerThread != null) {
+                awaitPendingSpace(true);
+            }
+            int mark = messageBuffer.size();
+            if (mark < BUFFER_LIMITATION) {
+                messageEncoder.append(message);
+            } else {
+                log.error("Logging cache exceeded the allowed limitation,current cache size is {}.",
+                    messageBuffer.size());
+                throw new RuntimeException("logging buffer exceeded the allowed limitation.");
+            }
+            afterAppend(messageBuffer.size() - mark);
+        }
+    }
+
+    private void sendStriped(LineEncoder[] currentStripes, Map<String, Object> message) {
+        LineEncoder stripe = currentStripes[(int) (Thread.currentThread().getId() % currentStripes.length)];
+        synchronized (stripe) {
+            if (stripe.buffer.size() >= bufferSize) {
+                // 上一次移交时后台线程落后或写文件失败，先重试移交，仍然失败则本条数据不写入
+                handOff(stripe, true);
+            }
+            stripe.append(message);
+            if (stripe.buffer.size() >= bufferSize) {
+                handOff(stripe, false);
+            }
+        }
+    }
+
+    /**
+     * 将条带缓存整体追加到 messageBuffer，调用方持有条带锁；异步模式下等待超时且 throwOnTimeout 为 false 时数据留在条带中
+     */
+    private void handOff(LineEncoder stripe, boolean throwOnTimeout) {
+        synchronized (this) {
+            if (writerThread != null && !awaitPendingSpace(throwOnTimeout)) {
+                return;
+            }
+            if (messageBuffer.size() >= BUFFER_LIMITATION) {
+                log.error("Logging cache exceeded the allowed limitation,current cache size is {}.",
+                    messageBuffer.size());
+                throw new RuntimeException("logging buffer exceeded the allowed limitation.");
+            }
+            int size = stripe.buffer.size();
+            stripe.buffer.writeTo(messageBuffer);
+            stripe.buffer.reset();
+            afterAppend(size);
+        }
+    }
+
+    /**
+     * 将所有条带中的数据追加到 messageBuffer，不检查缓存上限；不能在持有 this 锁时调用，避免与 handOff 的加锁顺序相反
+     */
+    private void drainStripes() {
+        LineEncoder[] currentStripes = stripes;
+        if (currentStripes == null) {
+            return;
+        }
+        for (LineEncoder stripe : currentStripes) {
+            synchronized (stripe) {
+                if (stripe.buffer.size() == 0) {
+                    continue;
+                }
+                synchronized (this) {
+                    int size = stripe.buffer.size();
+                    stripe.buffer.writeTo(messageBuffer);
+                    stripe.buffer.reset();
+                    if (writerThread != null) {
+                        appendedBytes += size;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 数据追加到 messageBuffer 之后调用，调用方持有 this 锁
+     */
+    private void afterAppend(int appended) {
+        log.debug("Successfully save data to cache,The cache current size is {}.", messageBuffer.size());
+        if (writerThread != null) {
+            appendedBytes += appended;
+            if (messageBuffer.size() >= bufferSize && !writing) {
+                notifyAll();
+            }
+            return;
+        }
+        if (messageBuffer.size() >= bufferSize) {
+            log.info("Flush triggered because logging cache size reached the threshold,cache size:{},bulkSize:{}.",
+                messageBuffer.size(), bufferSize);
+            flushBuffer();
+        }
+    }
+
+    /**
+     * 后台线程落后时等待，直到待写入数据低于 maxPendingBytes，最多等待 maxWaitMs；超时时按 throwOnTimeout 抛出异常或返回 false
+     */
+    private boolean awaitPendingSpace(boolean throwOnTimeout) {
+        if (messageBuffer.size() + writingBuffer.size() < maxPendingBytes) {
+            return true;
+        }
+        notifyAll();
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        while (messageBuffer.size() + writingBuffer.size() >= maxPendingBytes) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.error("Logging writer fell behind,pending size is {},maxPendingBytes:{}.",
+                    messageBuffer.size() + writingBuffer.size(), maxPendingBytes);
+                if (!throwOnTimeout) {
+                    return false;
+                }
+                throw new RuntimeException("logging buffer exceeded the allowed limitation.");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("interrupted while waiting for logging writer.", e);
+            }
+        }
+        return true;
+    }
+
+    private void runWriter() {
+        while (true) {
+            synchronized (this) {
+                while (!closing && !flushRequested && writingBuffer.size() == 0 && messageBuffer.size() < bufferSize) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        closing = true;
+                    }
+                }
+                flushRequested = false;
+                if (writingBuffer.size() == 0) {
+                    if (messageBuffer.size() == 0) {
+                        notifyAll();
+                        if (closing) {
+                            return;
+                        }
+                        continue;
+                    }
+                    messageBuffer.swap(writingBuffer);
+                }
+                writing = true;
+            }
+            boolean success = false;
             try {
-                messageBuffer.append(jsonMapper.writeValueAsString(message));
-                messageBuffer.append("\n");
-            } catch (JsonProcessingException e) {
+                success = writeToFile(writingBuffer);
+            } catch (RuntimeException e) {
+                log.error("Failed to write logging data in background,size:{}.", writingBuffer.size(), e);
+            }
+            boolean retryLater;
+            synchronized (this) {
+                writing = false;
+                retryLater = !success && !closing;
+                if (!retryLater) {
+                    if (!success) {
+                        log.error("Drop logging data because consumer is closing,size:{}.", writingBuffer.size());
+                    }
+                    writtenBytes += writingBuffer.size();
+                    writingBuffer.reset();
+                }
+                notifyAll();
+            }
+            if (retryLater) {
+                try {
+                    Thread.sleep(WRITE_RETRY_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    synchronized (this) {
+                        closing = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 绑定在一个缓存上的 JsonGenerator，数据直接序列化为 UTF-8 字节追加到缓存，每条数据一行，不经过 String
+     */
+    private final class LineEncoder {
+        private final LoggingBuffer buffer;
+        private JsonGenerator jsonGenerator;
+
+        LineEncoder(LoggingBuffer buffer) {
+            this.buffer = buffer;
+            this.jsonGenerator = newJsonGenerator();
+        }
+
+        void append(Map<String, Object> message) {
+            int mark = buffer.size();
+            try {
+                jsonMapper.writeValue(jsonGenerator, message);
+                jsonGenerator.flush();
+                buffer.write('\n');
+            } catch (IOException e) {
+                // 序列化中途失败时 JsonGenerator 的状态已不可用，丢弃已写入的部分数据并重建
+                buffer.truncate(mark);
+                jsonGenerator = newJsonGenerator();
                 log.error("Failed to process json.", e);
                 throw new RuntimeException("fail to process json", e);
             }
-        } else {
-            log.error("Logging cache exceeded the allowed limitation,current cache size is {}.",
-                messageBuffer.length());
-            throw new RuntimeException("logging buffer exceeded the allowed limitation.");
         }
-        log.debug("Successfully save data to cache,The cache current size is {}.", messageBuffer.length());
-        if (messageBuffer.length() >= bufferSize) {
-            log.info("Flush triggered because logging cache size reached the threshold,cache size:{},bulkSize:{}.",
-                messageBuffer.length(), bufferSize);
-            flush();
+
+        private JsonGenerator newJsonGenerator() {
+            try {
+                JsonGenerator generator = jsonMapper.getFactory().createGenerator(buffer);
+                // 每条数据之后写入换行符，不需要 JsonGenerator 的根节点分隔符
+                generator.setRootValueSeparator(null);
+                return generator;
+            } catch (IOException e) {
+                throw new RuntimeException("fail to create json generator.", e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        drainStripes();
+        synchronized (this) {
+            flushBuffer();
         }
     }
 
-    private String constructFileName(Date now) {
-        return filenamePrefix + "." + simpleDateFormat.format(now);
+    /**
+     * 写入 messageBuffer 中的数据，调用方持有 this 锁
+     */
+    private void flushBuffer() {
+        if (writerThread != null) {
+            flushAsync();
+            return;
+        }
+        if (messageBuffer.size() == 0) {
+            log.info("The cache is empty when flush.");
+            return;
+        }
+        log.debug("Will be write data from cache to file.[{}]", messageBuffer);
+        if (writeToFile(messageBuffer)) {
+            messageBuffer.reset();
+            log.info("Successfully write data from cache to file.");
+        }
     }
 
-    @Override
-    public synchronized void flush() {
-        if (messageBuffer.length() == 0) {
+    /**
+     * 通知后台线程写入当前缓存，最多等待 maxWaitMs；超时后数据仍由后台线程继续写入
+     */
+    private void flushAsync() {
+        long target = appendedBytes;
+        if (writtenBytes >= target) {
             log.info("The cache is empty when flush.");
             return;
         }
+        flushRequested = true;
+        notifyAll();
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        while (writtenBytes < target) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                log.warn("Timed out waiting for logging writer to flush,pending size is {}.", target - writtenBytes);
+                return;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 
-        String filename = constructFileName(new Date());
+    /**
+     * 按当前时间选择文件并写入 buffer，同步模式下在锁内调用，异步模式下只由后台线程调用
+     */
+    private boolean writeToFile(LoggingBuffer buffer) {
+        if (gzipBuffer != null) {
+            buffer = compress(buffer);
+        }
+        String filename = fileRoller.fileName(System.currentTimeMillis(), buffer.size());
 
         if (fileWriter != null && !fileWriter.isValid(filename)) {
+            syncIfNeeded(true);
             this.fileWriterFactory.closeFileWriter(fileWriter);
             log.info("The new file name [{}] is different from current file name,so update file writer.", filename);
             fileWriter = null;
+            if (compressor != null) {
+                compressor.submit(currentFileName);
+            }
         }
 
         if (fileWriter == null) {
@@ -93,21 +473,104 @@ class InnerLoggingConsumer implements Consumer {
                 log.error("Failed to create file Writer.", e);
                 throw new RuntimeException(e);
             }
+            currentFileName = filename;
             log.info("Initialize LoggingConsumer file writer,fileName:{}.", filename);
         }
-        log.debug("Will be write data from cache to file.[{}]", messageBuffer);
-        if (fileWriter.write(messageBuffer)) {
-            messageBuffer.setLength(0);
-            log.info("Successfully write data from cache to file.");
+        if (!fileWriter.write(buffer)) {
+            return false;
+        }
+        fileRoller.onWritten(buffer.size());
+        unsyncedBytes += buffer.size();
+        syncIfNeeded(false);
+        if (buffer == gzipBuffer) {
+            gzipBuffer.reset();
+        }
+        return true;
+    }
+
+    /**
+     * 将 buffer 压缩为一个完整的 gzip member 写入 gzipBuffer，buffer 内容不变，写文件失败时可以重新压缩
+     */
+    private LoggingBuffer compress(LoggingBuffer buffer) {
+        gzipBuffer.reset();
+        PooledGzipOutputStream gzipStream = null;
+        try {
+            gzipStream = new PooledGzipOutputStream(gzipBuffer, DeflaterPool.getDefault());
+            buffer.writeTo(gzipStream);
+            gzipStream.close();
+        } catch (IOException e) {
+            if (gzipStream != null) {
+                gzipStream.release();
+            }
+            log.error("Failed to compress logging data.", e);
+            throw new RuntimeException("fail to compress logging data.", e);
+        }
+        return gzipBuffer;
+    }
+
+    /**
+     * 按刷盘策略决定是否刷盘；force 为 true 时（切换文件、close）只要有未刷盘数据且策略不是 NONE 就刷盘
+     */
+    private void syncIfNeeded(boolean force) {
+        if (fsyncPolicy == LogFsyncPolicy.NONE || fileWriter == null || unsyncedBytes == 0) {
+            return;
         }
+        long now = System.currentTimeMillis();
+        if (!force && fsyncPolicy == LogFsyncPolicy.GROUP_COMMIT
+            && (fsyncIntervalBytes <= 0 || unsyncedBytes < fsyncIntervalBytes)
+            && (fsyncIntervalMs <= 0 || now - lastSyncTime < fsyncIntervalMs)) {
+            return;
+        }
+        try {
+            fileWriter.sync();
+        } catch (RuntimeException e) {
+            // 数据已经写入文件，刷盘失败不能让调用方重新写入，保留未刷盘字节数，下次写文件时重试
+            log.error("Failed to sync logging file,size:{}.", unsyncedBytes, e);
+            return;
+        }
+        log.debug("Successfully sync logging file,size:{}.", unsyncedBytes);
+        unsyncedBytes = 0;
+        lastSyncTime = now;
     }
 
     @Override
-    public synchronized void close() {
-        flush();
-        if (fileWriter != null) {
-            this.fileWriterFactory.closeFileWriter(fileWriter);
-            fileWriter = null;
+    public void close() {
+        drainStripes();
+        Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            if (thread != null) {
+                closing = true;
+                notifyAll();
+            }
+        }
+        if (thread != null) {
+            try {
+                thread.join(WRITER_CLOSE_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for logging writer to finish.");
+            }
+            if (thread.isAlive()) {
+                // 后台线程仍在写文件，不能关闭它正在使用的文件；closing 已设置，写完剩余数据后线程自行退出
+                log.warn("Logging writer thread did not finish in {} ms, leave the file open.", WRITER_CLOSE_TIMEOUT_MS);
+                return;
+            }
+        }
+        synchronized (this) {
+            // 后台线程退出后恢复为同步写入，close 之后的 send 与原有行为一致
+            writerThread = null;
+            flushBuffer();
+            if (fileWriter != null) {
+                syncIfNeeded(true);
+                this.fileWriterFactory.closeFileWriter(fileWriter);
+                fileWriter = null;
+            }
+            // 当前文件没有切换，不压缩；只等待已切换的文件压缩完成
+            if (compressor != null) {
+                compressor.close(COMPRESSOR_CLOSE_TIMEOUT_MS);
+                compressor = null;
+            }
         }
         log.info("Call close method.");
     }
@@ -117,7 +580,12 @@ class InnerLoggingConsumer implements Consumer {
 interface LoggingFileWriter {
     boolean isValid(final String fileName);
 
-    boolean write(final StringBuilder sb);
+    boolean write(final LoggingBuffer buffer);
+
+    /**
+     * 将已写入的数据刷到磁盘
+     */
+    void sync();
 
     void close();
 }
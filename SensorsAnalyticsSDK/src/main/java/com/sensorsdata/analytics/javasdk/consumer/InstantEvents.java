@@ -0,0 +1,31 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 即时事件名集合，判断一条数据是否走即时通道；创建后不再修改，可以被多个线程同时读取
+ */
+final class InstantEvents {
+
+  private final Set<String> events;
+
+  InstantEvents(List<String> events) {
+    this.events = events == null || events.isEmpty() ? Collections.<String>emptySet() : new HashSet<>(events);
+  }
+
+  boolean isEmpty() {
+    return events.isEmpty();
+  }
+
+  boolean isInstant(Map<String, Object> message) {
+    if (events.isEmpty()) {
+      return false;
+    }
+    Object event = message.get("event");
+    return event != null && events.contains(event);
+  }
+}
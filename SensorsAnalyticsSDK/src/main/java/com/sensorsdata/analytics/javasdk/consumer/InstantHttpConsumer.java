@@ -1,16 +1,18 @@
 package com.sensorsdata.analytics.javasdk.consumer;
 
 import org.apache.http.NameValuePair;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicNameValuePair;
 
-import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 public class InstantHttpConsumer extends HttpConsumer{
 
+  static final List<NameValuePair> INSTANT_EVENT_PARAMS =
+      Collections.<NameValuePair>singletonList(new BasicNameValuePair("instant_event", "true"));
+
   public InstantHttpConsumer(String serverUrl, int timeoutSec) {
     super(serverUrl, timeoutSec);
   }
@@ -37,10 +39,18 @@ public class InstantHttpConsumer extends HttpConsumer{
     super(httpClientBuilder, serverUrl, httpHeaders, timeoutSec);
   }
 
+  InstantHttpConsumer(HttpClientBuilder httpClientBuilder, String serverUrl, Map<String, String> httpHeaders,
+      int timeoutSec, TransportMode transportMode) {
+    super(httpClientBuilder, serverUrl, httpHeaders, timeoutSec, transportMode);
+  }
+
+  InstantHttpConsumer(SharedHttpTransport sharedTransport, String serverUrl, Map<String, String> httpHeaders,
+      int timeoutSec, TransportMode transportMode) {
+    super(sharedTransport, serverUrl, httpHeaders, timeoutSec, transportMode);
+  }
+
   @Override
-  UrlEncodedFormEntity getHttpEntry(final String data) throws IOException {
-    List<NameValuePair> nameValuePairs = getNameValuePairs(data);
-    nameValuePairs.add(new BasicNameValuePair("instant_event", "true"));
-    return new UrlEncodedFormEntity(nameValuePairs);
+  List<NameValuePair> getExtraNameValuePairs() {
+    return INSTANT_EVENT_PARAMS;
   }
 }
@@ -0,0 +1,99 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 估算数据序列化为 JSON 后的 UTF-8 字节数，只遍历数据结构，不做序列化，用于入队时按字节数切分批次
+ * <p>
+ * 结果为近似值：转义字符按 2 字节计算，浮点数按 toString 的长度计算，Date 按 SDK 默认的 "yyyy-MM-dd HH:mm:ss.SSS" 格式计算。
+ */
+final class JsonSizeEstimator {
+
+  private static final int DATE_SIZE = 25;
+
+  private JsonSizeEstimator() {
+  }
+
+  static int estimate(Object value) {
+    if (value == null) {
+      return 4;
+    }
+    if (value instanceof String) {
+      return estimateString((String) value);
+    }
+    if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      int size = 2 + Math.max(map.size() - 1, 0);
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        size += estimateString(String.valueOf(entry.getKey())) + 1 + estimate(entry.getValue());
+      }
+      return size;
+    }
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      int size = 2 + Math.max(collection.size() - 1, 0);
+      for (Object element : collection) {
+        size += estimate(element);
+      }
+      return size;
+    }
+    if (value instanceof Object[]) {
+      Object[] array = (Object[]) value;
+      int size = 2 + Math.max(array.length - 1, 0);
+      for (Object element : array) {
+        size += estimate(element);
+      }
+      return size;
+    }
+    if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      return longSize(((Number) value).longValue());
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value ? 4 : 5;
+    }
+    if (value instanceof Date) {
+      return DATE_SIZE;
+    }
+    if (value instanceof Number) {
+      return value.toString().length();
+    }
+    return estimateString(value.toString());
+  }
+
+  private static int estimateString(String value) {
+    int size = 2;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        size += (c < 0x20 || c == '"' || c == '\\') ? 2 : 1;
+      } else if (c < 0x800) {
+        size += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length) {
+        size += 4;
+        i++;
+      } else {
+        size += 3;
+      }
+    }
+    return size;
+  }
+
+  private static int longSize(long value) {
+    if (value == Long.MIN_VALUE) {
+      return 20;
+    }
+    int size = 1;
+    if (value < 0) {
+      size++;
+      value = -value;
+    }
+    while (value >= 10) {
+      value /= 10;
+      size++;
+    }
+    return size;
+  }
+}
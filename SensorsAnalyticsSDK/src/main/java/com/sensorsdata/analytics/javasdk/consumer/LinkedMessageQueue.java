@@ -0,0 +1,17 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 基于 {@link LinkedBlockingQueue} 的数据缓存队列，FastBatchConsumer 默认使用该实现
+ *
+ * @param <E> 元素类型
+ */
+class LinkedMessageQueue<E> extends LinkedBlockingQueue<E> implements MessageQueue<E> {
+
+  private static final long serialVersionUID = 2514936011367380539L;
+
+  LinkedMessageQueue(int capacity) {
+    super(capacity);
+  }
+}
@@ -0,0 +1,97 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 在后台线程中将切换后不再写入的日志文件压缩为 .gz 并删除原文件
+ * <p>
+ * 先写入 .gz.tmp 再重命名，进程退出时不会留下不完整的 .gz 文件；压缩失败时保留原文件。
+ */
+@Slf4j
+class LogFileCompressor {
+
+  static final String SUFFIX = ".gz";
+
+  private final ExecutorService executor;
+
+  LogFileCompressor() {
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "sa-log-compressor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  void submit(final String fileName) {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          compress(new File(fileName));
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      log.warn("Skip compressing log file because compressor is closed,file:{}.", fileName);
+    }
+  }
+
+  static boolean compress(File file) {
+    if (!file.isFile()) {
+      return false;
+    }
+    File tmp = new File(file.getPath() + SUFFIX + ".tmp");
+    File target = new File(file.getPath() + SUFFIX);
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = new FileInputStream(file);
+         OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp), buffer.length)) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+    } catch (IOException e) {
+      log.error("Failed to compress log file:{}.", file, e);
+      tmp.delete();
+      return false;
+    }
+    if (!tmp.renameTo(target)) {
+      log.error("Failed to rename compressed log file:{}.", tmp);
+      tmp.delete();
+      return false;
+    }
+    if (!file.delete()) {
+      log.warn("Failed to delete log file after compressing:{}.", file);
+    }
+    log.info("Successfully compress log file:{}.", target);
+    return true;
+  }
+
+  /**
+   * 停止接收新任务，最多等待 timeoutMs 让已提交的文件压缩完成
+   */
+  void close(long timeoutMs) {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+        log.warn("Log compressor did not finish in {} ms.", timeoutMs);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * 计算日志文件名：按时间切分，可选按文件大小继续切分
+ * <p>
+ * 当前时间段的文件名与下一次切换的时间戳预先计算好，每次写文件只比较一次时间戳，不需要格式化日期。
+ * 开启按大小切分后文件名带 4 位序号，例如 prefix.2026-10-17-13.0003，序号从 0 开始，重启后从已有的最大序号继续。
+ * 分段模式下时间之后增加分段标识，例如 prefix.2026-10-17-13.12345.0003。
+ * 按大小切分时只在切换文件时读取一次文件大小，之后累加本进程写入的字节数；多个进程写同一个文件时不包括其它进程写入的数据。
+ * 非线程安全，由写文件的线程调用。
+ */
+class LogFileRoller {
+
+  private static final long MINUTES_PER_DAY = 24 * 60;
+
+  private final String filenamePrefix;
+  private final LogSplitMode splitMode;
+  private final int intervalMinutes;
+  private final long maxFileSize;
+  private final String segmentId;
+  private final SimpleDateFormat dateFormat;
+
+  private long periodStart = Long.MAX_VALUE;
+  private long nextRolloverTime = Long.MIN_VALUE;
+  private String periodName;
+  private int index = -1;
+  private String fileName;
+  private long fileLength;
+
+  /**
+   * @param intervalMinutes MINUTE 模式下的切分间隔，小于等于 0 时按 1 分钟处理，其它模式忽略
+   * @param maxFileSize     单个文件的大小上限，小于等于 0 表示不按大小切分
+   * @param segmentId       分段标识，为 null 表示不分段
+   */
+  LogFileRoller(String filenamePrefix, LogSplitMode splitMode, int intervalMinutes, long maxFileSize,
+      String segmentId) {
+    this.filenamePrefix = filenamePrefix;
+    this.splitMode = splitMode == null ? LogSplitMode.DAY : splitMode;
+    this.intervalMinutes = (int) Math.min(Math.max(intervalMinutes, 1), MINUTES_PER_DAY);
+    this.maxFileSize = maxFileSize;
+    this.segmentId = segmentId;
+    switch (this.splitMode) {
+      case MINUTE:
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH-mm");
+        break;
+      case HOUR:
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd-HH");
+        break;
+      default:
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    }
+  }
+
+  /**
+   * 返回在 now 时刻写入 pendingBytes 字节应使用的文件名
+   */
+  String fileName(long now, int pendingBytes) {
+    if (now >= nextRolloverTime || now < periodStart) {
+      roll(now);
+    }
+    if (maxFileSize <= 0) {
+      return periodName;
+    }
+    if (index < 0) {
+      index = lastIndex();
+      fileName = indexedName(index);
+      fileLength = new File(fileName).length();
+    }
+    // 文件为空时即使单次写入超过上限也写入，避免一直切换
+    while (fileLength > 0 && fileLength + pendingBytes > maxFileSize) {
+      index++;
+      fileName = indexedName(index);
+      fileLength = new File(fileName).length();
+    }
+    return fileName;
+  }
+
+  /**
+   * 向 {@link #fileName(long, int)} 返回的文件成功写入 bytes 字节后调用
+   */
+  void onWritten(long bytes) {
+    fileLength += bytes;
+  }
+
+  private void roll(long now) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(now);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    Calendar next;
+    switch (splitMode) {
+      case MINUTE:
+        int minuteOfDay = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+        int aligned = minuteOfDay - minuteOfDay % intervalMinutes;
+        calendar.set(Calendar.HOUR_OF_DAY, aligned / 60);
+        calendar.set(Calendar.MINUTE, aligned % 60);
+        next = (Calendar) calendar.clone();
+        next.add(Calendar.MINUTE, intervalMinutes);
+        // 间隔不能整除一天时，最后一个时间段在 0 点截止，第二天重新对齐
+        Calendar nextDay = (Calendar) calendar.clone();
+        nextDay.set(Calendar.HOUR_OF_DAY, 0);
+        nextDay.set(Calendar.MINUTE, 0);
+        nextDay.add(Calendar.DAY_OF_MONTH, 1);
+        if (next.after(nextDay)) {
+          next = nextDay;
+        }
+        break;
+      case HOUR:
+        calendar.set(Calendar.MINUTE, 0);
+        next = (Calendar) calendar.clone();
+        next.add(Calendar.HOUR_OF_DAY, 1);
+        break;
+      default:
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        next = (Calendar) calendar.clone();
+        next.add(Calendar.DAY_OF_MONTH, 1);
+    }
+    periodStart = calendar.getTimeInMillis();
+    nextRolloverTime = next.getTimeInMillis();
+    periodName = filenamePrefix + "." + dateFormat.format(new Date(periodStart));
+    if (segmentId != null) {
+      periodName = periodName + "." + segmentId;
+    }
+    index = -1;
+    fileName = periodName;
+  }
+
+  /**
+   * 当前时间段已有文件的最大序号，已压缩的文件不再追加，从下一个序号开始
+   */
+  private int lastIndex() {
+    File periodFile = new File(periodName);
+    File dir = periodFile.getAbsoluteFile().getParentFile();
+    String[] names = dir == null ? null : dir.list();
+    if (names == null) {
+      return 0;
+    }
+    String prefix = periodFile.getName() + ".";
+    int last = 0;
+    for (String name : names) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+      String suffix = name.substring(prefix.length());
+      boolean compressed = suffix.endsWith(LogFileCompressor.SUFFIX);
+      if (compressed) {
+        suffix = suffix.substring(0, suffix.length() - LogFileCompressor.SUFFIX.length());
+      }
+      if (suffix.length() != 4) {
+        continue;
+      }
+      try {
+        int value = Integer.parseInt(suffix);
+        last = Math.max(last, compressed ? value + 1 : value);
+      } catch (NumberFormatException ignored) {
+        // 不是本 SDK 生成的文件
+      }
+    }
+    return last;
+  }
+
+  private String indexedName(int value) {
+    StringBuilder sb = new StringBuilder(periodName.length() + 5).append(periodName).append('.');
+    if (value < 1000) {
+      sb.append('0');
+    }
+    if (value < 100) {
+      sb.append('0');
+    }
+    if (value < 10) {
+      sb.append('0');
+    }
+    return sb.append(value).toString();
+  }
+}
@@ -0,0 +1,22 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+/**
+ * 日志文件的刷盘策略
+ * <p>
+ * 日志数据通过 FileOutputStream 写入，进程崩溃时已写入的数据由操作系统负责落盘，不会丢失；刷盘策略只影响操作系统崩溃或断电时的数据安全。
+ */
+public enum LogFsyncPolicy {
+  /**
+   * 不主动刷盘，由操作系统决定何时写回磁盘
+   */
+  NONE,
+  /**
+   * 组提交：距上次刷盘累计写入 fsyncIntervalBytes 字节或经过 fsyncIntervalMs 后，在下一次写文件时刷盘一次，
+   * 多次写入共用一次刷盘；close 及切换文件时也会刷盘
+   */
+  GROUP_COMMIT,
+  /**
+   * 每次将缓存写入文件后立即刷盘，性能开销最大
+   */
+  FLUSH
+}
@@ -0,0 +1,99 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 将分段模式下各进程写入的同一时间段的文件合并为一个文件，兼容只识别 prefix.&lt;时间&gt; 文件名的导入工具
+ * <p>
+ * 只能在该时间段结束、所有进程都已切换到下一个文件之后调用；每个分段文件都由完整的行组成，按文件名顺序拼接即可。
+ */
+@Slf4j
+public final class LogSegmentMerger {
+
+  /**
+   * 分段标识，可能带有按大小切分的 4 位序号；分段标识不会是 4 位数字，未分段时按大小切分的文件（例如 .0003）、
+   * 已压缩的文件与临时文件不参与合并
+   */
+  private static final Pattern SEGMENT_SUFFIX = Pattern.compile("(?!\\d{4}(\\.|$))[A-Za-z0-9_-]+(\\.\\d{4})?");
+
+  private LogSegmentMerger() {
+  }
+
+  /**
+   * 合并 periodFileName 对应的分段文件，例如 /data/sa/service.log.2026-10-17 会合并 service.log.2026-10-17.12345、
+   * service.log.2026-10-17.23456.0001 等文件。periodFileName 已存在时分段数据追加在原有数据之后。
+   * 合并结果先写入临时文件再重命名，成功后删除分段文件
+   *
+   * @param periodFileName 合并后的文件名，即不带分段标识的文件名
+   * @return 合并的分段文件个数
+   */
+  public static int merge(String periodFileName) {
+    if (periodFileName == null || periodFileName.isEmpty()) {
+      throw new IllegalArgumentException("The periodFileName is empty.");
+    }
+    File target = new File(periodFileName).getAbsoluteFile();
+    File dir = target.getParentFile();
+    File[] files = dir == null ? null : dir.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    String prefix = target.getName() + ".";
+    List<File> segments = new ArrayList<>();
+    for (File file : files) {
+      String name = file.getName();
+      if (file.isFile() && name.startsWith(prefix)
+          && SEGMENT_SUFFIX.matcher(name.substring(prefix.length())).matches()) {
+        segments.add(file);
+      }
+    }
+    if (segments.isEmpty()) {
+      return 0;
+    }
+    Collections.sort(segments);
+    File tmp = new File(target.getPath() + ".merge.tmp");
+    try (FileChannel out = new FileOutputStream(tmp).getChannel()) {
+      if (target.isFile()) {
+        transfer(target, out);
+      }
+      for (File segment : segments) {
+        transfer(segment, out);
+      }
+      out.force(false);
+    } catch (IOException e) {
+      tmp.delete();
+      log.error("Failed to merge log segments,file:{}.", target, e);
+      throw new RuntimeException("fail to merge log segments.", e);
+    }
+    if ((target.exists() && !target.delete()) || !tmp.renameTo(target)) {
+      tmp.delete();
+      throw new RuntimeException("fail to rename merged log file.");
+    }
+    for (File segment : segments) {
+      if (!segment.delete()) {
+        log.warn("Failed to delete log segment after merging:{}.", segment);
+      }
+    }
+    log.info("Successfully merge {} log segments into file:{}.", segments.size(), target);
+    return segments.size();
+  }
+
+  private static void transfer(File source, FileChannel out) throws IOException {
+    try (FileChannel in = new FileInputStream(source).getChannel()) {
+      long position = 0;
+      long size = in.size();
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+    }
+  }
+}
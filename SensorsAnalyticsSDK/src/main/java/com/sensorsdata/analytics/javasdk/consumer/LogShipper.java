@@ -0,0 +1,771 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipException;
+
+/**
+ * 日志文件上传工具：读取 {@link ConcurrentLoggingConsumer} 写入的日志文件，按 data_list 协议批量发送到接收端
+ * <p>
+ * 扫描线程每隔 pollIntervalMs 检查 filenamePrefix 所在目录中以 filenamePrefix 开头的文件，使用 FileChannel 从上次读到的位置
+ * 继续读取完整的行（最后一行没有换行符时等下次再读），按 bulkSize 与 maxBatchBytes 切分为批次，由 threads 个上传线程并行发送；
+ * 同一文件的多个批次可以同时发送。每个文件已确认的位置只按文件顺序前进：一个批次及其之前的批次都发送成功后才记录该批次的结束位置，
+ * 并定期写入 checkpoint 文件，重启后从记录的位置继续读取。
+ * <p>
+ * 保证至少一次送达：进程退出时已发送但未记录的批次在重启后会重新发送。接收端返回 4xx 等重试也不会成功的错误时，该批次记录日志后跳过；
+ * 网络异常、5xx 与 429 在重试策略用完之后每隔 pollIntervalMs 继续重试，直到成功或关闭。
+ * <p>
+ * gzip 输出模式写入的文件按 member 依次解压后读取，位置按解压后的字节数记录。切换后被压缩为 .gz 的文件与原文件共用同一个位置，
+ * 原文件未读完就被压缩时从 .gz 文件中的相同位置继续读取。临时文件不会上传。
+ */
+@Slf4j
+public class LogShipper implements Closeable {
+
+  private static final int MIN_READ_BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_LINE_BYTES = 64 * 1024 * 1024;
+  private static final AtomicInteger SHIPPER_INDEX = new AtomicInteger();
+
+  private final File directory;
+  private final String fileNamePrefix;
+  private final File checkpointFile;
+  private final HttpConsumer httpConsumer;
+  private final RetryPolicy retryPolicy;
+  private final int bulkSize;
+  private final int maxBatchBytes;
+  private final long pollIntervalMs;
+  private final long closeTimeoutMs;
+  private final ExecutorService uploadExecutor;
+  /**
+   * 已切分但尚未确认的批次数上限，达到上限时扫描线程等待，避免接收端变慢时读入过多数据
+   */
+  private final Semaphore inflightPermits;
+  private final Thread scannerThread;
+  private final Object scannerLock = new Object();
+  /**
+   * 只由扫描线程访问
+   */
+  private final Map<String, TailedFile> files = new HashMap<>();
+  private final Map<String, Long> restoredOffsets;
+  private final AtomicBoolean checkpointDirty = new AtomicBoolean();
+  private final AtomicLong shippedLines = new AtomicLong();
+  private final AtomicLong skippedLines = new AtomicLong();
+  private byte[] readBuffer = new byte[MIN_READ_BUFFER_SIZE];
+  private volatile boolean running = true;
+
+  private LogShipper(Builder builder) {
+    if (builder.filenamePrefix == null || builder.filenamePrefix.isEmpty()) {
+      throw new IllegalArgumentException("The filenamePrefix is empty.");
+    }
+    if (builder.serverUrl == null || builder.serverUrl.isEmpty()) {
+      throw new IllegalArgumentException("The serverUrl is empty.");
+    }
+    File prefixFile = new File(builder.filenamePrefix).getAbsoluteFile();
+    this.directory = prefixFile.getParentFile();
+    this.fileNamePrefix = prefixFile.getName() + ".";
+    this.checkpointFile = builder.checkpointFile != null ? new File(builder.checkpointFile).getAbsoluteFile()
+        : new File(directory, "." + prefixFile.getName() + ".checkpoint");
+    int threads = Math.max(builder.threads, 1);
+    ConnectionPoolConfig connectionPoolConfig = builder.connectionPoolConfig != null ? builder.connectionPoolConfig
+        : ConnectionPoolConfig.builder().setMaxTotal(threads).setMaxPerRoute(threads).build();
+    this.httpConsumer = new HttpConsumer(SharedHttpTransport.acquire(builder.serverUrl, connectionPoolConfig),
+        builder.serverUrl, null, Math.max(builder.timeoutSec, 1), TransportMode.FORM);
+    this.retryPolicy = builder.retryPolicy != null ? builder.retryPolicy : RetryPolicy.builder().build();
+    this.httpConsumer.setRetryPolicy(retryPolicy, retryPolicy.newCircuitBreaker());
+    this.httpConsumer.setCompressionCodec(builder.compressionCodec);
+    this.bulkSize = Math.max(builder.bulkSize, 1);
+    this.maxBatchBytes = Math.max(builder.maxBatchBytes, 1);
+    this.pollIntervalMs = Math.max(builder.pollIntervalMs, 1);
+    this.closeTimeoutMs = Math.max(builder.closeTimeoutMs, 0);
+    this.restoredOffsets = loadCheckpoint();
+    this.inflightPermits = new Semaphore(threads * 2);
+    final int shipperIndex = SHIPPER_INDEX.incrementAndGet();
+    this.uploadExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger threadIndex = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "sa-log-shipper-" + shipperIndex + "-upload-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    this.scannerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        runScanner();
+      }
+    }, "sa-log-shipper-" + shipperIndex);
+    this.scannerThread.setDaemon(true);
+    this.scannerThread.start();
+    log.info("Initialize LogShipper with params:[filenamePrefix:{};serverUrl:{};checkpointFile:{};threads:{};"
+            + "bulkSize:{};maxBatchBytes:{};pollIntervalMs:{};retryPolicy:{};compressionCodec:{}].",
+        builder.filenamePrefix, builder.serverUrl, checkpointFile, threads, bulkSize, maxBatchBytes, pollIntervalMs,
+        retryPolicy, builder.compressionCodec);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * 已发送成功的行数
+   */
+  public long getShippedLines() {
+    return shippedLines.get();
+  }
+
+  /**
+   * 因接收端返回不可重试的错误而跳过的行数
+   */
+  public long getSkippedLines() {
+    return skippedLines.get();
+  }
+
+  private void runScanner() {
+    while (running) {
+      try {
+        scan();
+      } catch (RuntimeException e) {
+        log.error("Failed to scan log files in {}.", directory, e);
+      }
+      if (checkpointDirty.getAndSet(false)) {
+        saveCheckpoint();
+      }
+      synchronized (scannerLock) {
+        if (running) {
+          try {
+            scannerLock.wait(pollIntervalMs);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  private void scan() {
+    String[] names = directory.list();
+    if (names == null) {
+      return;
+    }
+    Arrays.sort(names);
+    Set<String> current = new HashSet<>();
+    for (String name : names) {
+      if (!name.startsWith(fileNamePrefix) || name.endsWith(".tmp")) {
+        continue;
+      }
+      File file = new File(directory, name);
+      if (!file.isFile() || file.equals(checkpointFile)) {
+        continue;
+      }
+      // 压缩后的文件使用原文件名记录位置；排序后原文件在前，原文件尚未删除时继续读取原文件
+      String fileName = name.endsWith(LogFileCompressor.SUFFIX)
+          ? name.substring(0, name.length() - LogFileCompressor.SUFFIX.length()) : name;
+      if (!current.add(fileName)) {
+        continue;
+      }
+      TailedFile tailedFile = files.get(fileName);
+      if (tailedFile == null) {
+        Long offset = restoredOffsets.remove(fileName);
+        tailedFile = new TailedFile(fileName, file, offset == null ? 0 : offset);
+        files.put(fileName, tailedFile);
+      } else if (!tailedFile.file.equals(file)) {
+        log.info("Log file {} is compressed,continue shipping {} from offset {}.", tailedFile.file, file,
+            tailedFile.readOffset);
+        tailedFile.switchTo(file);
+      }
+      if (!running) {
+        return;
+      }
+      tail(tailedFile);
+    }
+    // 已删除的文件不再记录位置
+    if (restoredOffsets.keySet().retainAll(current)) {
+      checkpointDirty.set(true);
+    }
+    Iterator<Map.Entry<String, TailedFile>> iterator = files.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, TailedFile> entry = iterator.next();
+      if (!current.contains(entry.getKey()) && entry.getValue().isIdle()) {
+        iterator.remove();
+        checkpointDirty.set(true);
+      }
+    }
+  }
+
+  /**
+   * 从 readOffset 开始读取文件中完整的行并发送，直到文件末尾；gzip 文件从 readOffset 之前最后一个完整 member 开始解压
+   */
+  private void tail(TailedFile tailedFile) {
+    long length = tailedFile.file.length();
+    if (!tailedFile.formatChecked && !checkFormat(tailedFile, length)) {
+      return;
+    }
+    if (length < (tailedFile.gzip ? tailedFile.memberOffset : tailedFile.readOffset)) {
+      // 文件被截断或被同名文件替换，等待已发送的批次结束后从头读取
+      if (!tailedFile.isIdle()) {
+        return;
+      }
+      log.warn("Log file {} is shorter than shipped offset {},ship it from the beginning.", tailedFile.file,
+          tailedFile.readOffset);
+      tailedFile.reset();
+      if (!checkFormat(tailedFile, length)) {
+        return;
+      }
+    }
+    if (tailedFile.skipped || length == (tailedFile.gzip ? tailedFile.scannedLength : tailedFile.readOffset)) {
+      return;
+    }
+    try (FileChannel channel = new FileInputStream(tailedFile.file).getChannel()) {
+      if (tailedFile.gzip) {
+        try (GzipMemberInputStream in = new GzipMemberInputStream(channel, tailedFile.memberOffset,
+            tailedFile.memberOutput)) {
+          if (skip(in, tailedFile.readOffset - tailedFile.memberOutput) && readLines(tailedFile, in)) {
+            tailedFile.scannedLength = length;
+          }
+          if (in.getMemberEndOutput() <= tailedFile.readOffset) {
+            tailedFile.memberOffset = in.getMemberEnd();
+            tailedFile.memberOutput = in.getMemberEndOutput();
+          }
+        }
+      } else {
+        channel.position(tailedFile.readOffset);
+        readLines(tailedFile, Channels.newInputStream(channel));
+      }
+    } catch (ZipException e) {
+      log.error("Skip shipping log file {} because it is not a valid gzip file.", tailedFile.file, e);
+      tailedFile.skipped = true;
+    } catch (IOException e) {
+      log.error("Failed to read log file:{}.", tailedFile.file, e);
+    }
+  }
+
+  /**
+   * 根据文件名或文件头判断是否为 gzip 文件，文件头尚未写完时返回 false
+   */
+  private boolean checkFormat(TailedFile tailedFile, long length) {
+    if (tailedFile.file.getName().endsWith(LogFileCompressor.SUFFIX)) {
+      tailedFile.gzip = true;
+    } else {
+      if (length < 2) {
+        return false;
+      }
+      ByteBuffer magic = ByteBuffer.allocate(2);
+      try (FileChannel channel = new FileInputStream(tailedFile.file).getChannel()) {
+        if (channel.read(magic, 0) < 2) {
+          return false;
+        }
+      } catch (IOException e) {
+        log.error("Failed to read log file:{}.", tailedFile.file, e);
+        return false;
+      }
+      tailedFile.gzip = magic.get(0) == (byte) 0x1f && magic.get(1) == (byte) 0x8b;
+    }
+    tailedFile.formatChecked = true;
+    return true;
+  }
+
+  private boolean skip(InputStream in, long bytes) throws IOException {
+    while (bytes > 0) {
+      int n = in.read(readBuffer, 0, (int) Math.min(bytes, readBuffer.length));
+      if (n <= 0) {
+        return false;
+      }
+      bytes -= n;
+    }
+    return true;
+  }
+
+  /**
+   * 读取 in 中完整的行并提交，in 的第一个字节位于 readOffset；最后一行没有换行符时等下次再读。读到末尾时返回 true
+   */
+  private boolean readLines(TailedFile tailedFile, InputStream in) throws IOException {
+    BatchBuilder batch = new BatchBuilder();
+    int filled = 0;
+    boolean eof = false;
+    while (running) {
+      if (filled == readBuffer.length && !growReadBuffer(tailedFile)) {
+        break;
+      }
+      int n = in.read(readBuffer, filled, readBuffer.length - filled);
+      if (n <= 0) {
+        eof = true;
+        break;
+      }
+      int lineStart = 0;
+      for (int i = filled; i < filled + n; i++) {
+        if (readBuffer[i] != '\n') {
+          continue;
+        }
+        batch.append(readBuffer, lineStart, i);
+        lineStart = i + 1;
+        if (batch.isFull()) {
+          dispatch(tailedFile, batch, tailedFile.readOffset + lineStart);
+          if (!running) {
+            return false;
+          }
+        }
+      }
+      filled += n;
+      // 未写完的行移到读缓存开头，一行超过读缓存大小时扩大读缓存
+      if (lineStart > 0) {
+        System.arraycopy(readBuffer, lineStart, readBuffer, 0, filled - lineStart);
+        filled -= lineStart;
+        tailedFile.readOffset += lineStart;
+      }
+    }
+    if (batch.hasData()) {
+      dispatch(tailedFile, batch, tailedFile.readOffset);
+    }
+    return eof;
+  }
+
+  private boolean growReadBuffer(TailedFile tailedFile) {
+    if (readBuffer.length >= MAX_LINE_BYTES) {
+      log.error("Skip shipping log file {} because a line at offset {} exceeds {} bytes.", tailedFile.file,
+          tailedFile.readOffset, MAX_LINE_BYTES);
+      tailedFile.skipped = true;
+      return false;
+    }
+    readBuffer = Arrays.copyOf(readBuffer, readBuffer.length * 2);
+    return true;
+  }
+
+  /**
+   * 提交 batch 中的数据，endOffset 为批次最后一行之后的位置；等待上传线程空闲时会阻塞扫描线程
+   */
+  private void dispatch(final TailedFile tailedFile, BatchBuilder batch, long endOffset) {
+    final Chunk chunk = new Chunk(endOffset, batch.lines, batch.lines == 0 ? null : batch.build());
+    batch.clear();
+    try {
+      while (!inflightPermits.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS)) {
+        if (!running) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    tailedFile.add(chunk);
+    if (chunk.data == null) {
+      // 只有空行，不需要发送
+      complete(tailedFile, chunk);
+      return;
+    }
+    uploadExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        upload(tailedFile, chunk);
+      }
+    });
+  }
+
+  private void upload(TailedFile tailedFile, Chunk chunk) {
+    while (true) {
+      Exception failure;
+      try {
+        httpConsumer.consume(chunk.data);
+        shippedLines.addAndGet(chunk.lines);
+        break;
+      } catch (IOException | HttpConsumer.HttpConsumerException e) {
+        failure = e;
+      }
+      if (failure instanceof HttpConsumer.HttpConsumerException && !RetryPolicy.isRetryable(failure)) {
+        log.error("Skip {} lines of log file {} before offset {} because of unrecoverable error.", chunk.lines,
+            tailedFile.file, chunk.endOffset, failure);
+        skippedLines.addAndGet(chunk.lines);
+        break;
+      }
+      if (!running) {
+        // 不记录位置，重启后重新发送
+        log.warn("Stop shipping log file {} before offset {} because shipper is closing.", tailedFile.file,
+            chunk.endOffset);
+        inflightPermits.release();
+        return;
+      }
+      log.warn("Failed to ship log file {},retry in {} ms: {}", tailedFile.file, pollIntervalMs, failure.getMessage());
+      try {
+        Thread.sleep(pollIntervalMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        inflightPermits.release();
+        return;
+      }
+    }
+    complete(tailedFile, chunk);
+  }
+
+  private void complete(TailedFile tailedFile, Chunk chunk) {
+    tailedFile.complete(chunk);
+    checkpointDirty.set(true);
+    inflightPermits.release();
+  }
+
+  private Map<String, Long> loadCheckpoint() {
+    Map<String, Long> offsets = new HashMap<>();
+    if (!checkpointFile.isFile()) {
+      return offsets;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(checkpointFile)) {
+      properties.load(in);
+    } catch (IOException e) {
+      log.error("Failed to load log shipper checkpoint:{},ship all files from the beginning.", checkpointFile, e);
+      return offsets;
+    }
+    for (String name : properties.stringPropertyNames()) {
+      try {
+        offsets.put(name, Long.parseLong(properties.getProperty(name)));
+      } catch (NumberFormatException e) {
+        log.warn("Ignore invalid checkpoint of log file {}:{}.", name, properties.getProperty(name));
+      }
+    }
+    log.info("Load log shipper checkpoint:{},files:{}.", checkpointFile, offsets.size());
+    return offsets;
+  }
+
+  /**
+   * 先写入临时文件再重命名，进程退出时不会留下不完整的 checkpoint
+   */
+  private void saveCheckpoint() {
+    Properties properties = new Properties();
+    for (TailedFile tailedFile : files.values()) {
+      properties.setProperty(tailedFile.name, Long.toString(tailedFile.getCommittedOffset()));
+    }
+    // 尚未扫描到的文件保留原有位置
+    for (Map.Entry<String, Long> entry : restoredOffsets.entrySet()) {
+      properties.setProperty(entry.getKey(), Long.toString(entry.getValue()));
+    }
+    File tmp = new File(checkpointFile.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(tmp)) {
+      properties.store(out, "sa log shipper checkpoint");
+      out.getChannel().force(false);
+    } catch (IOException e) {
+      log.error("Failed to save log shipper checkpoint:{}.", checkpointFile, e);
+      tmp.delete();
+      return;
+    }
+    if (!tmp.renameTo(checkpointFile)) {
+      log.error("Failed to rename log shipper checkpoint:{}.", tmp);
+      tmp.delete();
+    }
+  }
+
+  /**
+   * 停止读取新数据，最多等待 closeTimeoutMs 让已切分的批次发送完成，然后保存 checkpoint；未确认的批次在下次启动时重新发送
+   */
+  @Override
+  public void close() {
+    synchronized (scannerLock) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      scannerLock.notifyAll();
+    }
+    try {
+      scannerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    uploadExecutor.shutdown();
+    try {
+      if (!uploadExecutor.awaitTermination(closeTimeoutMs, TimeUnit.MILLISECONDS)) {
+        uploadExecutor.shutdownNow();
+        log.warn("Log shipper did not finish uploading in {} ms.", closeTimeoutMs);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      uploadExecutor.shutdownNow();
+    }
+    saveCheckpoint();
+    httpConsumer.close();
+    log.info("Call close method,shipped lines:{},skipped lines:{}.", shippedLines.get(), skippedLines.get());
+  }
+
+  /**
+   * 正在读取的文件，committedOffset 与 inflight 由对象锁保护，其它字段只由扫描线程访问；位置均为解压后的字节数
+   */
+  private static final class TailedFile {
+    private final String name;
+    private final ArrayDeque<Chunk> inflight = new ArrayDeque<>();
+    private volatile File file;
+    private long committedOffset;
+    private long readOffset;
+    private boolean skipped;
+    private boolean formatChecked;
+    private boolean gzip;
+    /**
+     * gzip 文件中 readOffset 之前最后一个完整 member 结束的位置，以及此前解压出的字节数
+     */
+    private long memberOffset;
+    private long memberOutput;
+    /**
+     * 已读到末尾的 gzip 文件的长度，文件长度不变时不需要再次解压
+     */
+    private long scannedLength = -1;
+
+    TailedFile(String name, File file, long offset) {
+      this.name = name;
+      this.file = file;
+      this.committedOffset = offset;
+      this.readOffset = offset;
+    }
+
+    synchronized void add(Chunk chunk) {
+      inflight.addLast(chunk);
+    }
+
+    /**
+     * 标记批次发送完成，并将 committedOffset 推进到连续完成的最后一个批次
+     */
+    synchronized void complete(Chunk chunk) {
+      chunk.done = true;
+      while (!inflight.isEmpty() && inflight.peekFirst().done) {
+        committedOffset = inflight.pollFirst().endOffset;
+      }
+    }
+
+    synchronized long getCommittedOffset() {
+      return committedOffset;
+    }
+
+    synchronized boolean isIdle() {
+      return inflight.isEmpty();
+    }
+
+    synchronized void reset() {
+      committedOffset = 0;
+      readOffset = 0;
+      skipped = false;
+      formatChecked = false;
+      resetMember();
+    }
+
+    /**
+     * 原文件被压缩为 .gz 后从新文件的相同位置继续读取
+     */
+    void switchTo(File compressedFile) {
+      file = compressedFile;
+      formatChecked = false;
+      resetMember();
+    }
+
+    private void resetMember() {
+      memberOffset = 0;
+      memberOutput = 0;
+      scannedLength = -1;
+    }
+  }
+
+  private static final class Chunk {
+    private final long endOffset;
+    private final int lines;
+    private final String data;
+    private boolean done;
+
+    Chunk(long endOffset, int lines, String data) {
+      this.endOffset = endOffset;
+      this.lines = lines;
+      this.data = data;
+    }
+  }
+
+  /**
+   * 将多行 JSON 拼接为 data_list 使用的 JSON 数组
+   */
+  private final class BatchBuilder {
+    private final LoggingBuffer buffer = new LoggingBuffer(MIN_READ_BUFFER_SIZE);
+    private int lines;
+    /**
+     * 是否有行（包括空行）进入批次，只有空行时也需要提交以推进位置
+     */
+    private boolean hasData;
+
+    BatchBuilder() {
+      buffer.write('[');
+    }
+
+    void append(byte[] bytes, int start, int end) {
+      hasData = true;
+      while (start < end && isWhitespace(bytes[start])) {
+        start++;
+      }
+      while (end > start && isWhitespace(bytes[end - 1])) {
+        end--;
+      }
+      if (start == end) {
+        return;
+      }
+      if (lines > 0) {
+        buffer.write(',');
+      }
+      buffer.write(bytes, start, end - start);
+      lines++;
+    }
+
+    boolean isFull() {
+      return lines >= bulkSize || buffer.size() >= maxBatchBytes;
+    }
+
+    boolean hasData() {
+      return hasData;
+    }
+
+    String build() {
+      buffer.write(']');
+      return buffer.toString();
+    }
+
+    void clear() {
+      buffer.reset();
+      buffer.write('[');
+      lines = 0;
+      hasData = false;
+    }
+
+    private boolean isWhitespace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r';
+    }
+  }
+
+  public static class Builder {
+    private String filenamePrefix;
+    private String serverUrl;
+    private String checkpointFile;
+    private int threads = 4;
+    private int bulkSize = 500;
+    private int maxBatchBytes = 1024 * 1024;
+    private long pollIntervalMs = 1000;
+    private long closeTimeoutMs = 10 * 1000;
+    private int timeoutSec = 3;
+    private RetryPolicy retryPolicy;
+    private CompressionCodec compressionCodec = CompressionCodec.getDefault();
+    private ConnectionPoolConfig connectionPoolConfig;
+
+    private Builder() {
+    }
+
+    public LogShipper build() {
+      return new LogShipper(this);
+    }
+
+    /**
+     * 与 ConcurrentLoggingConsumer 相同的 filenamePrefix，上传所在目录中以 filenamePrefix 开头的所有文件
+     */
+    public Builder setFilenamePrefix(String filenamePrefix) {
+      this.filenamePrefix = filenamePrefix;
+      return this;
+    }
+
+    public Builder setServerUrl(String serverUrl) {
+      this.serverUrl = serverUrl;
+      return this;
+    }
+
+    /**
+     * 记录每个文件已发送位置的文件，默认为日志目录下的 .&lt;文件名前缀&gt;.checkpoint；多个 LogShipper 不能使用同一个文件
+     */
+    public Builder setCheckpointFile(String checkpointFile) {
+      this.checkpointFile = checkpointFile;
+      return this;
+    }
+
+    /**
+     * 并行上传的线程数，默认 4
+     */
+    public Builder setThreads(int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * 每个请求最多包含的行数，默认 500
+     */
+    public Builder setBulkSize(int bulkSize) {
+      this.bulkSize = bulkSize;
+      return this;
+    }
+
+    /**
+     * 每个请求未压缩数据的字节数上限，默认 1MB；单行超过上限时单独发送
+     */
+    public Builder setMaxBatchBytes(int maxBatchBytes) {
+      this.maxBatchBytes = maxBatchBytes;
+      return this;
+    }
+
+    /**
+     * 扫描目录的间隔，以及重试策略用完之后再次重试的间隔，默认 1000ms
+     */
+    public Builder setPollIntervalMs(long pollIntervalMs) {
+      this.pollIntervalMs = pollIntervalMs;
+      return this;
+    }
+
+    /**
+     * close 时等待已读取数据发送完成的最长时间，默认 10s
+     */
+    public Builder setCloseTimeoutMs(long closeTimeoutMs) {
+      this.closeTimeoutMs = closeTimeoutMs;
+      return this;
+    }
+
+    public Builder setTimeoutSec(int timeoutSec) {
+      this.timeoutSec = timeoutSec;
+      return this;
+    }
+
+    /**
+     * 单个请求的重试策略，默认使用 {@link RetryPolicy} 的默认配置
+     */
+    public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    public Builder setCompressionCodec(CompressionCodec compressionCodec) {
+      if (compressionCodec != null) {
+        this.compressionCodec = compressionCodec;
+      }
+      return this;
+    }
+
+    /**
+     * 连接池配置，默认最大连接数与 threads 相同
+     */
+    public Builder setConnectionPoolConfig(ConnectionPoolConfig connectionPoolConfig) {
+      this.connectionPoolConfig = connectionPoolConfig;
+      return this;
+    }
+  }
+}
@@ -1,5 +1,9 @@
 package com.sensorsdata.analytics.javasdk.consumer;
 
 public enum LogSplitMode {
-        DAY, HOUR
-    }
\ No newline at end of file
+        DAY, HOUR,
+        /**
+         * 按分钟切分，默认每分钟一个文件，可以通过 splitIntervalMinutes 指定间隔（按当天 0 点对齐）
+         */
+        MINUTE
+    }
@@ -0,0 +1,114 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 日志缓存，保存已经编码为 UTF-8 的数据，可重复使用
+ * <p>
+ * 与 ByteArrayOutputStream 不同，不做同步，写文件时直接使用内部数组，不会复制；由调用方保证线程安全。
+ */
+class LoggingBuffer extends OutputStream {
+
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private final int initialCapacity;
+  private byte[] buf;
+  private int count;
+
+  LoggingBuffer(int initialCapacity) {
+    this.initialCapacity = Math.max(initialCapacity, 16);
+    this.buf = new byte[this.initialCapacity];
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(count + 1);
+    buf[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(count + len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /**
+   * 丢弃 size 之后的数据，用于序列化失败时回滚
+   */
+  void truncate(int size) {
+    if (size < count) {
+      count = Math.max(size, 0);
+    }
+  }
+
+  /**
+   * 清空缓存；容量超过初始容量两倍时（一次写入的数据过多）缩回初始容量，避免长期占用内存
+   */
+  void reset() {
+    count = 0;
+    if (buf.length > (long) initialCapacity * 2) {
+      buf = new byte[initialCapacity];
+    }
+  }
+
+  /**
+   * 与另一个缓存交换内容，用于双缓冲写入；绑定在本对象上的输出（如 JsonGenerator）不受影响
+   */
+  void swap(LoggingBuffer other) {
+    byte[] otherBuf = other.buf;
+    int otherCount = other.count;
+    other.buf = buf;
+    other.count = count;
+    buf = otherBuf;
+    count = otherCount;
+  }
+
+  /**
+   * 将缓存中的全部数据写入 channel，不修改缓存内容
+   */
+  void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer byteBuffer = ByteBuffer.wrap(buf, 0, count);
+    while (byteBuffer.hasRemaining()) {
+      channel.write(byteBuffer);
+    }
+  }
+
+  void writeTo(LoggingBuffer other) {
+    other.write(buf, 0, count);
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    out.write(buf, 0, count);
+  }
+
+  private void ensureCapacity(int minCapacity) {
+    if (minCapacity < 0) {
+      throw new OutOfMemoryError("logging buffer exceeded the maximum array size.");
+    }
+    if (minCapacity > buf.length) {
+      int newCapacity = buf.length << 1;
+      if (newCapacity - minCapacity < 0) {
+        newCapacity = minCapacity;
+      }
+      if (newCapacity - MAX_ARRAY_SIZE > 0) {
+        newCapacity = minCapacity > MAX_ARRAY_SIZE ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+      }
+      buf = Arrays.copyOf(buf, newCapacity);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return new String(buf, 0, count, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,34 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.Collection;
+
+/**
+ * FastBatchConsumer 使用的数据缓存队列，方法语义与 {@link java.util.concurrent.BlockingQueue} 中的同名方法一致
+ *
+ * @param <E> 元素类型
+ */
+interface MessageQueue<E> {
+
+  /**
+   * 非阻塞入队
+   *
+   * @return true:入队成功；false:队列已满
+   */
+  boolean offer(E e);
+
+  /**
+   * 取出队首元素
+   *
+   * @return 队列为空时返回 null
+   */
+  E poll();
+
+  int drainTo(Collection<? super E> c);
+
+  int drainTo(Collection<? super E> c, int maxElements);
+
+  int size();
+
+  int remainingCapacity();
+
+}
@@ -0,0 +1,138 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 预分配的多生产者/单消费者环形缓冲队列
+ * <p>
+ * 生产者通过 CAS 抢占写入序号，入队时不加锁、不分配节点；每个槽位维护一个序号，用于标识该槽位当前可写还是可读
+ * （参考 Disruptor 与 Dmitry Vyukov 的有界队列实现）。消费端按批次取数，多个线程同时消费时由内部锁串行化，
+ * 在 FastBatchConsumer 中消费端只有定时 flush 线程，锁基本无竞争。
+ *
+ * @param <E> 元素类型
+ */
+class MpscRingBuffer<E> implements MessageQueue<E> {
+
+  private final int capacity;
+  private final AtomicReferenceArray<E> slots;
+  /**
+   * 槽位序号：等于写入序号时可写；等于写入序号 + 1 时可读
+   */
+  private final AtomicLongArray sequences;
+  /**
+   * 下一个写入序号，由生产者 CAS 竞争
+   */
+  private final AtomicLong tail = new AtomicLong();
+  /**
+   * 下一个读取序号，只在持有 consumerLock 时修改
+   */
+  private final AtomicLong head = new AtomicLong();
+  private final Object consumerLock = new Object();
+
+  MpscRingBuffer(int capacity) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("The capacity of ring buffer should be at least 2.");
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long pos = tail.get();
+    while (true) {
+      int index = (int) (pos % capacity);
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          slots.lazySet(index, e);
+          // 发布：消费者看到序号变化后才会读取槽位
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        // 槽位还未被消费，队列已满
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  @Override
+  public E poll() {
+    synchronized (consumerLock) {
+      return pollInternal();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (c == null) {
+      throw new NullPointerException();
+    }
+    int count = 0;
+    synchronized (consumerLock) {
+      while (count < maxElements) {
+        E e = pollInternal();
+        if (e == null) {
+          break;
+        }
+        c.add(e);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private E pollInternal() {
+    long pos = head.get();
+    int index = (int) (pos % capacity);
+    if (sequences.get(index) != pos + 1) {
+      // 队列为空，或生产者已抢占序号但尚未完成写入
+      return null;
+    }
+    E e = slots.get(index);
+    slots.lazySet(index, null);
+    head.lazySet(pos + 1);
+    // 释放槽位给下一轮写入
+    sequences.set(index, pos + capacity);
+    return e;
+  }
+
+  @Override
+  public int size() {
+    while (true) {
+      long before = head.get();
+      long currentTail = tail.get();
+      if (head.get() == before) {
+        return (int) Math.max(0, Math.min(capacity, currentTail - before));
+      }
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return capacity - size();
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
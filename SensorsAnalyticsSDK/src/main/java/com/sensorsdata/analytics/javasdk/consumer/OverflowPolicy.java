@@ -0,0 +1,29 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+/**
+ * FastBatchConsumer 缓存已满时的处理策略
+ * <p>
+ * 受影响的数据条数可以通过 {@link FastBatchConsumer#getOverflowCount()} 等方法获取，丢弃的数据通过 callback 返回。
+ */
+public enum OverflowPolicy {
+  /**
+   * 在调用 send 的线程中同步执行 flush，保证数据完整，但调用方需要等待网络请求完成
+   */
+  CALLER_RUNS,
+  /**
+   * 阻塞调用 send 的线程等待后台线程发送数据腾出空间，超过 overflowBlockTimeoutMs 仍无空间时丢弃当前数据
+   */
+  BLOCK,
+  /**
+   * 直接丢弃当前数据
+   */
+  DROP_NEWEST,
+  /**
+   * 丢弃缓存中最早的一条数据，为当前数据腾出空间
+   */
+  DROP_OLDEST,
+  /**
+   * 将当前数据写入 overflowSpillDir 下的磁盘缓存，由后台线程在发送完内存数据后发送
+   */
+  SPILL_TO_FILE
+}
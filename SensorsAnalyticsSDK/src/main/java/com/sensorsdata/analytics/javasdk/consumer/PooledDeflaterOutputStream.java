@@ -0,0 +1,46 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 使用池化 Deflater 的压缩输出流，输出格式由对象池的 nowrap 配置决定；close 时将 Deflater 归还对象池
+ */
+class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+  private final DeflaterPool pool;
+  private boolean released;
+
+  PooledDeflaterOutputStream(OutputStream out, DeflaterPool pool) {
+    this(out, pool, pool.acquire());
+  }
+
+  private PooledDeflaterOutputStream(OutputStream out, DeflaterPool pool, Deflater deflater) {
+    super(out, deflater, 512);
+    this.pool = pool;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!released) {
+        finish();
+      }
+    } finally {
+      release();
+      out.close();
+    }
+  }
+
+  /**
+   * 异常情况下放弃输出并归还 Deflater
+   */
+  void release() {
+    if (!released) {
+      released = true;
+      pool.release(def);
+    }
+  }
+}
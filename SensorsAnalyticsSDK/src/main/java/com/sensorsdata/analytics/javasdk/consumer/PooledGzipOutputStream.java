@@ -0,0 +1,62 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 使用池化 Deflater 的 gzip 输出流，输出字节与 {@link GZIPOutputStream} 完全一致；close 时将 Deflater 归还对象池
+ */
+class PooledGzipOutputStream extends PooledDeflaterOutputStream {
+
+  private static final byte[] HEADER;
+  private static final int TRAILER_SIZE = 8;
+
+  static {
+    // 直接取当前 JDK 的 GZIPOutputStream 头部，保证不同 JDK 版本下输出与原实现一致
+    try {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      new GZIPOutputStream(os).close();
+      HEADER = Arrays.copyOf(os.toByteArray(), 10);
+    } catch (IOException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final CRC32 crc = new CRC32();
+
+  PooledGzipOutputStream(OutputStream out, DeflaterPool pool) throws IOException {
+    super(out, pool);
+    out.write(HEADER);
+  }
+
+  @Override
+  public synchronized void write(byte[] buf, int off, int len) throws IOException {
+    super.write(buf, off, len);
+    crc.update(buf, off, len);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (!def.finished()) {
+      def.finish();
+      while (!def.finished()) {
+        deflate();
+      }
+      byte[] trailer = new byte[TRAILER_SIZE];
+      writeInt((int) crc.getValue(), trailer, 0);
+      writeInt(def.getTotalIn(), trailer, 4);
+      out.write(trailer);
+    }
+  }
+
+  private static void writeInt(int i, byte[] buf, int offset) {
+    buf[offset] = (byte) (i & 0xff);
+    buf[offset + 1] = (byte) ((i >> 8) & 0xff);
+    buf[offset + 2] = (byte) ((i >> 16) & 0xff);
+    buf[offset + 3] = (byte) ((i >> 24) & 0xff);
+  }
+}
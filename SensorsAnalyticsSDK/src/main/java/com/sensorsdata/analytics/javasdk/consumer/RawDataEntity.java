@@ -0,0 +1,82 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.http.Consts;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link TransportMode#OCTET_STREAM} 与 {@link TransportMode#NDJSON} 模式的请求体，压缩后的字节直接作为请求体发送，
+ * 省去 base64 与表单 URL 编码
+ */
+class RawDataEntity extends ByteArrayEntity {
+
+  static final ContentType OCTET_STREAM = ContentType.APPLICATION_OCTET_STREAM;
+  static final ContentType NDJSON = ContentType.create("application/x-ndjson", Consts.UTF_8);
+
+  RawDataEntity(byte[] payload, int payloadLength, ContentType contentType, String contentEncoding) {
+    super(payload, 0, payloadLength, contentType);
+    if (contentEncoding != null) {
+      setContentEncoding(contentEncoding);
+    }
+  }
+
+  /**
+   * 将数据序列化（并压缩）后构造请求体
+   *
+   * @param jsonMapper 序列化使用的 ObjectMapper
+   * @param messages 待发送数据
+   * @param mode 请求体格式，仅支持 OCTET_STREAM 与 NDJSON
+   * @param codec 压缩配置，为 null 时不压缩
+   */
+  static RawDataEntity create(ObjectMapper jsonMapper, List<Map<String, Object>> messages, TransportMode mode,
+      CompressionCodec codec) throws IOException {
+    DataListEntity.PayloadOutputStream buffer = new DataListEntity.PayloadOutputStream();
+    String contentEncoding = null;
+    if (DataListEntity.shouldCompress(codec, messages)) {
+      PooledDeflaterOutputStream compressStream = codec.newStream(buffer);
+      try {
+        write(jsonMapper, messages, mode, compressStream);
+      } finally {
+        compressStream.release();
+      }
+      contentEncoding = codec.getContentEncoding();
+    } else {
+      write(jsonMapper, messages, mode, buffer);
+    }
+    ContentType contentType = mode == TransportMode.NDJSON ? NDJSON : OCTET_STREAM;
+    return new RawDataEntity(buffer.buffer(), buffer.size(), contentType, contentEncoding);
+  }
+
+  /**
+   * 写入完成后关闭目标流
+   */
+  private static void write(ObjectMapper jsonMapper, List<Map<String, Object>> messages, TransportMode mode,
+      OutputStream out) throws IOException {
+    if (mode != TransportMode.NDJSON) {
+      jsonMapper.writeValue(out, messages);
+      return;
+    }
+    ObjectWriter writer = jsonMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    JsonGenerator generator = jsonMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+    try {
+      // 行之间只使用换行分隔，不使用默认的空格
+      generator.setRootValueSeparator(null);
+      for (Map<String, Object> message : messages) {
+        writer.writeValue(generator, message);
+        generator.writeRaw('\n');
+      }
+    } finally {
+      generator.close();
+    }
+  }
+}
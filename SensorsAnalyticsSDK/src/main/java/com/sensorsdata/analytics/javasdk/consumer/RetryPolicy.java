@@ -0,0 +1,151 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 网络请求失败重试及熔断策略
+ * <p>
+ * 只有网络异常、5xx 以及 429 响应会重试，其它 4xx 响应说明数据本身有问题，直接失败；
+ * 重试间隔按指数增长，实际等待时间在 [间隔/2, 间隔] 之间随机，避免大量实例同时重试。
+ * <p>
+ * 连续失败次数达到 circuitBreakerThreshold 后熔断，熔断期间请求直接失败；熔断时间结束后只放行一个探测请求，
+ * 探测成功则恢复，失败则重新熔断。
+ */
+public class RetryPolicy {
+
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+  private final double multiplier;
+  private final int circuitBreakerThreshold;
+  private final long circuitBreakerOpenMs;
+
+  private RetryPolicy(Builder builder) {
+    this.maxAttempts = Math.max(builder.maxAttempts, 1);
+    this.initialBackoffMs = Math.max(builder.initialBackoffMs, 0);
+    this.maxBackoffMs = Math.max(builder.maxBackoffMs, initialBackoffMs);
+    this.multiplier = Math.max(builder.multiplier, 1);
+    this.circuitBreakerThreshold = builder.circuitBreakerThreshold;
+    this.circuitBreakerOpenMs = Math.max(builder.circuitBreakerOpenMs, 0);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  long getMaxBackoffMs() {
+    return maxBackoffMs;
+  }
+
+  /**
+   * 判断失败的请求是否值得重试
+   */
+  static boolean isRetryable(Exception e) {
+    if (e instanceof HttpConsumer.HttpConsumerException) {
+      int httpStatusCode = ((HttpConsumer.HttpConsumerException) e).getHttpStatusCode();
+      return httpStatusCode >= 500 || httpStatusCode == 429;
+    }
+    return e instanceof IOException && !(e instanceof CircuitBreaker.CircuitBreakerOpenException)
+        && !(e instanceof HttpConsumer.ClientClosedException) && !(e instanceof JsonProcessingException);
+  }
+
+  /**
+   * 第 attempt 次请求失败后的等待时间
+   */
+  long getBackoffMs(int attempt) {
+    double backoff = initialBackoffMs * Math.pow(multiplier, attempt - 1);
+    long bound = (long) Math.min(backoff, maxBackoffMs);
+    if (bound <= 1) {
+      return bound;
+    }
+    return bound / 2 + ThreadLocalRandom.current().nextLong(bound - bound / 2 + 1);
+  }
+
+  /**
+   * 按本策略创建熔断器，未开启熔断时返回 null
+   */
+  CircuitBreaker newCircuitBreaker() {
+    if (circuitBreakerThreshold <= 0) {
+      return null;
+    }
+    return new CircuitBreaker(circuitBreakerThreshold, circuitBreakerOpenMs);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RetryPolicy[maxAttempts:%d;initialBackoffMs:%d;maxBackoffMs:%d;multiplier:%s;"
+            + "circuitBreakerThreshold:%d;circuitBreakerOpenMs:%d]", maxAttempts, initialBackoffMs, maxBackoffMs,
+        multiplier, circuitBreakerThreshold, circuitBreakerOpenMs);
+  }
+
+  public static class Builder {
+    private int maxAttempts = 3;
+    private long initialBackoffMs = 200;
+    private long maxBackoffMs = 5000;
+    private double multiplier = 2;
+    private int circuitBreakerThreshold = 5;
+    private long circuitBreakerOpenMs = 30000;
+
+    private Builder() {
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+
+    /**
+     * 单批数据最多请求次数（包含第一次），默认 3
+     */
+    public Builder setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * 第一次重试的间隔，默认 200ms
+     */
+    public Builder setInitialBackoffMs(long initialBackoffMs) {
+      this.initialBackoffMs = initialBackoffMs;
+      return this;
+    }
+
+    /**
+     * 重试间隔上限，默认 5000ms
+     */
+    public Builder setMaxBackoffMs(long maxBackoffMs) {
+      this.maxBackoffMs = maxBackoffMs;
+      return this;
+    }
+
+    /**
+     * 重试间隔增长倍数，默认 2
+     */
+    public Builder setMultiplier(double multiplier) {
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    /**
+     * 触发熔断的连续失败请求数，默认 5；小于等于 0 表示不熔断
+     */
+    public Builder setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+      this.circuitBreakerThreshold = circuitBreakerThreshold;
+      return this;
+    }
+
+    /**
+     * 熔断持续时间，结束后放行一个探测请求，默认 30000ms
+     */
+    public Builder setCircuitBreakerOpenMs(long circuitBreakerOpenMs) {
+      this.circuitBreakerOpenMs = circuitBreakerOpenMs;
+      return this;
+    }
+  }
+}
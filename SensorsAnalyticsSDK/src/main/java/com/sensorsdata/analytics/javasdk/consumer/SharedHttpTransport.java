@@ -0,0 +1,146 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.SensorsConst;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内共享的 HTTP 连接池，按接收端地址（scheme://host:port）注册并引用计数
+ * <p>
+ * 开启共享连接池的 Consumer（包括其中发送 instant 数据的 InstantHttpConsumer）会复用同一个 {@link CloseableHttpClient}，
+ * 连接、TLS 会话及 keep-alive 在同一进程的所有 SensorsAnalytics 实例之间共享；最后一个使用者关闭时连接池随之关闭。
+ */
+@Slf4j
+public final class SharedHttpTransport {
+
+  private static final Map<String, SharedHttpTransport> REGISTRY = new HashMap<>();
+
+  private final String key;
+  private final ConnectionPoolConfig config;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  /**
+   * 由 REGISTRY 锁保护
+   */
+  private int refCount;
+
+  private SharedHttpTransport(String key, ConnectionPoolConfig config) {
+    this.key = key;
+    this.config = config;
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(config.getMaxTotal());
+    connectionManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+    connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivityMs());
+    final long keepAliveMs = TimeUnit.SECONDS.toMillis(config.getKeepAliveSec());
+    this.httpClient = HttpClients.custom()
+        .setUserAgent(String.format("SensorsAnalytics Java SDK %s", SensorsConst.SDK_VERSION))
+        .setConnectionManager(connectionManager)
+        .setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+          @Override
+          public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = super.getKeepAliveDuration(response, context);
+            return duration > 0 ? Math.min(duration, keepAliveMs) : keepAliveMs;
+          }
+        })
+        .evictExpiredConnections()
+        .evictIdleConnections(config.getIdleTimeoutSec(), TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * 获取 serverUrl 对应的共享连接池，不存在时按 config 创建；使用完毕后必须调用 {@link #release()}
+   * <p>
+   * 连接池已存在时沿用创建时的配置，传入不同的 config 只会打印告警
+   */
+  static SharedHttpTransport acquire(String serverUrl, ConnectionPoolConfig config) {
+    String key = keyOf(serverUrl);
+    synchronized (REGISTRY) {
+      SharedHttpTransport transport = REGISTRY.get(key);
+      if (transport == null) {
+        transport = new SharedHttpTransport(key, config);
+        REGISTRY.put(key, transport);
+        log.info("Create shared http transport for {} with {}.", key, config);
+      } else if (!transport.config.toString().equals(config.toString())) {
+        log.warn("Shared http transport for {} already exists with {}, ignore {}.", key, transport.config, config);
+      }
+      transport.refCount++;
+      return transport;
+    }
+  }
+
+  CloseableHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  /**
+   * 释放一次引用，引用计数归零时关闭连接池
+   */
+  void release() {
+    synchronized (REGISTRY) {
+      if (refCount <= 0 || --refCount > 0) {
+        return;
+      }
+      REGISTRY.remove(key);
+    }
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      log.warn("Failed to close shared http transport for {}.", key, e);
+    }
+    log.info("Close shared http transport for {}.", key);
+  }
+
+  /**
+   * 当前连接池的连接使用情况
+   */
+  public PoolStats getTotalStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * 进程内所有共享连接池的连接使用情况，key 为接收端地址（scheme://host:port）
+   */
+  public static Map<String, PoolStats> getPoolStats() {
+    Map<String, PoolStats> stats = new LinkedHashMap<>();
+    synchronized (REGISTRY) {
+      for (Map.Entry<String, SharedHttpTransport> entry : REGISTRY.entrySet()) {
+        stats.put(entry.getKey(), entry.getValue().getTotalStats());
+      }
+    }
+    return Collections.unmodifiableMap(stats);
+  }
+
+  /**
+   * 同一 host 的不同项目、不同路径共用一个连接池
+   */
+  static String keyOf(String serverUrl) {
+    try {
+      URI uri = URI.create(serverUrl.trim());
+      if (uri.getScheme() != null && uri.getHost() != null) {
+        int port = uri.getPort();
+        if (port < 0) {
+          port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ":" + port;
+      }
+    } catch (IllegalArgumentException ignored) {
+      // 无法解析时按原始地址区分
+    }
+    return serverUrl.trim();
+  }
+}
@@ -0,0 +1,265 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程退出时统一 flush 所有 Consumer，整个过程不超过截止时间
+ * <p>
+ * 所有 Consumer 并行 flush；截止时间前仍未完成的 {@link SpillableConsumer} 会停止发送，缓存中尚未发出的数据按行写入
+ * spillFilenamePrefix 对应的本地文件，格式与 LoggingConsumer 相同，可以通过 {@link LogShipper} 或导入工具补发。
+ * 进程内只有 {@link #getDefault()} 一个实例，只注册一个 JVM 关闭钩子，多个 SensorsAnalytics 实例共用。
+ */
+@Slf4j
+public final class ShutdownCoordinator {
+
+  private static final ShutdownCoordinator DEFAULT = new ShutdownCoordinator();
+
+  /**
+   * 为取出并写入未发送数据预留的时间上限
+   */
+  private static final long SPILL_RESERVE_MS = 1000;
+
+  /**
+   * 强引用持有，直到 unregister 或进程退出；应用不再引用但未调用 shutdown 的 Consumer 中的数据在退出时仍会 flush
+   */
+  private final Set<Consumer> consumers = new LinkedHashSet<>();
+  private final AtomicBoolean hookRegistered = new AtomicBoolean();
+  private volatile long deadlineMs = 10000;
+  private volatile String spillFilenamePrefix;
+
+  private ShutdownCoordinator() {
+  }
+
+  /**
+   * 进程内共享的实例，SensorsAnalytics 创建时自动注册到该实例
+   */
+  public static ShutdownCoordinator getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * 进程退出时 flush 的截止时间，默认 10000 毫秒；需要小于容器发送 SIGTERM 到 SIGKILL 之间的宽限期
+   */
+  public ShutdownCoordinator setDeadlineMs(long deadlineMs) {
+    if (deadlineMs <= 0) {
+      throw new IllegalArgumentException("The deadlineMs must be positive.");
+    }
+    this.deadlineMs = deadlineMs;
+    return this;
+  }
+
+  /**
+   * 未发送数据的文件名前缀，例如 /data/sa/unsent.log，实际文件名为 unsent.log.&lt;时间&gt;.&lt;进程号&gt;；
+   * 默认为空，此时截止时间前未发送的数据只记录日志
+   */
+  public ShutdownCoordinator setSpillFilenamePrefix(String spillFilenamePrefix) {
+    this.spillFilenamePrefix = spillFilenamePrefix;
+    return this;
+  }
+
+  /**
+   * 注册 Consumer，首次注册时添加 JVM 关闭钩子；同一个 Consumer 重复注册只保留一次
+   */
+  public void register(Consumer consumer) {
+    synchronized (consumers) {
+      consumers.add(consumer);
+    }
+    if (hookRegistered.compareAndSet(false, true)) {
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          log.info("Triggered flush when the program is closed.");
+          drain();
+        }
+      }, "sa-shutdown-coordinator"));
+    }
+  }
+
+  public void unregister(Consumer consumer) {
+    synchronized (consumers) {
+      consumers.remove(consumer);
+    }
+  }
+
+  public int getConsumerCount() {
+    synchronized (consumers) {
+      return consumers.size();
+    }
+  }
+
+  /**
+   * 并行 flush 所有已注册的 Consumer，最多等待到截止时间；未完成的 {@link SpillableConsumer} 中尚未发出的数据写入本地文件
+   *
+   * @return 写入本地文件的数据条数
+   */
+  public int drain() {
+    List<Consumer> snapshot;
+    synchronized (consumers) {
+      snapshot = new ArrayList<>(consumers);
+    }
+    if (snapshot.isEmpty()) {
+      return 0;
+    }
+    long start = System.currentTimeMillis();
+    long deadline = start + deadlineMs;
+    long spillTime = deadline - Math.min(SPILL_RESERVE_MS, deadlineMs / 4);
+    ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger index = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "sa-shutdown-" + index.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      Map<Consumer, Future<?>> flushes = new LinkedHashMap<>();
+      for (final Consumer consumer : snapshot) {
+        flushes.put(consumer, executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            consumer.flush();
+          }
+        }));
+      }
+      List<Consumer> unfinished = new ArrayList<>();
+      for (Map.Entry<Consumer, Future<?>> entry : flushes.entrySet()) {
+        if (!await(entry.getValue(), spillTime)) {
+          unfinished.add(entry.getKey());
+        }
+      }
+      int spilled = unfinished.isEmpty() ? 0 : spill(unfinished, executor, deadline);
+      log.info("Finish shutdown flush in {} ms,consumers:{},unfinished:{},spilled:{}.",
+          System.currentTimeMillis() - start, snapshot.size(), unfinished.size(), spilled);
+      return spilled;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private int spill(List<Consumer> unfinished, ExecutorService executor, long deadline) {
+    Map<Consumer, Future<List<Map<String, Object>>>> drains = new LinkedHashMap<>();
+    for (final Consumer consumer : unfinished) {
+      if (!(consumer instanceof SpillableConsumer)) {
+        log.warn("Consumer did not finish flushing before the shutdown deadline,consumer:{}.",
+            consumer.getClass().getSimpleName());
+        continue;
+      }
+      drains.put(consumer, executor.submit(new Callable<List<Map<String, Object>>>() {
+        @Override
+        public List<Map<String, Object>> call() {
+          return ((SpillableConsumer) consumer).drainUnsent();
+        }
+      }));
+    }
+    List<Map<String, Object>> records = new ArrayList<>();
+    for (Map.Entry<Consumer, Future<List<Map<String, Object>>>> entry : drains.entrySet()) {
+      Future<List<Map<String, Object>>> future = entry.getValue();
+      if (!await(future, deadline)) {
+        log.warn("Failed to drain unsent data before the shutdown deadline,consumer:{}.",
+            entry.getKey().getClass().getSimpleName());
+        continue;
+      }
+      try {
+        records.addAll(future.get());
+      } catch (InterruptedException | ExecutionException e) {
+        log.error("Failed to drain unsent data,consumer:{}.", entry.getKey().getClass().getSimpleName(), e);
+      }
+    }
+    if (records.isEmpty()) {
+      return 0;
+    }
+    String prefix = spillFilenamePrefix;
+    if (prefix == null || prefix.isEmpty()) {
+      log.warn("Drop {} unsent records because the spillFilenamePrefix is empty.", records.size());
+      return 0;
+    }
+    return write(prefix, records);
+  }
+
+  /**
+   * 先写入临时文件再重命名，LogShipper 不会读到写了一半的文件
+   */
+  private static int write(String prefix, List<Map<String, Object>> records) {
+    String fileName = String.format("%s.%s.%s", prefix,
+        new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss-SSS").format(new Date()), ConcurrentLoggingConsumer.currentProcessId());
+    File tmp = new File(fileName + ".tmp");
+    ObjectMapper jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+    int count = 0;
+    try (FileOutputStream out = new FileOutputStream(tmp);
+         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+      for (Map<String, Object> record : records) {
+        String line;
+        try {
+          line = jsonMapper.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+          log.error("Failed to process json.", e);
+          continue;
+        }
+        writer.write(line);
+        writer.write('\n');
+        count++;
+      }
+      writer.flush();
+      out.getFD().sync();
+    } catch (IOException e) {
+      tmp.delete();
+      log.error("Failed to write unsent records,file:{}.", fileName, e);
+      return 0;
+    }
+    if (!tmp.renameTo(new File(fileName))) {
+      log.error("Failed to rename unsent records file:{}.", tmp);
+      return 0;
+    }
+    log.warn("Write {} unsent records to file:{}.", count, fileName);
+    return count;
+  }
+
+  /**
+   * 等待任务完成直到 until，任务抛出异常也视为已完成
+   */
+  private static boolean await(Future<?> future, long until) {
+    try {
+      future.get(Math.max(until - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      log.error("Failed to flush consumer when the program is closed.", e.getCause());
+      return true;
+    }
+  }
+}
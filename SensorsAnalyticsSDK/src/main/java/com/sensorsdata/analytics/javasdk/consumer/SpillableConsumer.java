@@ -0,0 +1,15 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程退出时可以交出尚未发送数据的 Consumer，由 {@link ShutdownCoordinator} 在截止时间到达后写入本地文件
+ */
+public interface SpillableConsumer extends Consumer {
+
+    /**
+     * 停止发送并取出缓存中尚未发出的数据，调用后不再发起新的请求；已经发出的请求不受影响，其数据不在返回结果中
+     */
+    List<Map<String, Object>> drainUnsent();
+}
@@ -0,0 +1,21 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+/**
+ * 磁盘缓存的刷盘策略
+ * <p>
+ * 磁盘缓存通过内存映射文件写入，JVM 崩溃时已写入的数据由操作系统负责落盘，不会丢失；刷盘策略只影响操作系统崩溃或断电时的数据安全。
+ */
+public enum SpoolFsyncPolicy {
+  /**
+   * 不主动刷盘，由操作系统决定何时写回磁盘
+   */
+  NONE,
+  /**
+   * 每个 flushSec 周期刷盘一次
+   */
+  INTERVAL,
+  /**
+   * 每条数据写入后立即刷盘，性能开销最大
+   */
+  ALWAYS
+}
@@ -0,0 +1,21 @@
+package com.sensorsdata.analytics.javasdk.consumer;
+
+/**
+ * 批量数据发送的请求体格式
+ * <p>
+ * 除 {@link #FORM} 外均为非标准协议，需要接收端支持对应格式后再开启；即时事件在 URL 上追加 instant_event=true 参数。
+ */
+public enum TransportMode {
+  /**
+   * 默认格式：application/x-www-form-urlencoded，gzip 压缩后 base64 编码放入 data_list 参数
+   */
+  FORM,
+  /**
+   * application/octet-stream，请求体直接为 gzip 压缩后的 JSON 数组，Content-Encoding 为 gzip
+   */
+  OCTET_STREAM,
+  /**
+   * application/x-ndjson，每行一条 JSON 数据，整体 gzip 压缩，Content-Encoding 为 gzip
+   */
+  NDJSON
+}
@@ -0,0 +1,28 @@
+package com.sensorsdata.analytics.javasdk;
+
+import java.util.Optional;
+
+/**
+ * 获取调用栈中的指定帧，JDK 9 及以上版本的实现：StackWalker 按需遍历，只构造需要的几帧
+ */
+final class CallerFrames {
+
+  /**
+   * 是否使用 StackWalker 实现
+   */
+  static final boolean STACK_WALKER = true;
+
+  private static final StackWalker WALKER = StackWalker.getInstance();
+
+  private CallerFrames() {
+  }
+
+  /**
+   * @param skip 跳过的帧数，0 表示调用本方法的方法
+   * @return 对应的帧，调用栈深度不足时返回 null
+   */
+  static StackTraceElement frame(final int skip) {
+    Optional<StackWalker.StackFrame> frame = WALKER.walk(s -> s.skip(skip + 1).findFirst());
+    return frame.isPresent() ? frame.get().toStackTraceElement() : null;
+  }
+}
@@ -0,0 +1,160 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.AsyncBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncBatchConsumer 单测
+ */
+public class AsyncBatchConsumerTest extends SensorsBaseTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  @Test
+  public void checkConcurrentSend() throws Exception {
+    AsyncBatchConsumer consumer = AsyncBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setBulkSize(20)
+        .setMaxInFlight(4)
+        .setCallback(callback)
+        .build();
+    final SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    int threads = 4;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    final List<Throwable> errors = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int index = t;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 250; i++) {
+              sa.track("a" + index, false, "test");
+            }
+          } catch (Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          } finally {
+            latch.countDown();
+          }
+        }
+      }).start();
+    }
+    latch.await();
+    sa.flush();
+    assertTrue(errors.isEmpty());
+    assertEquals(0, failedCount.get());
+    assertEquals(0, consumer.getInFlightCount());
+    consumer.close();
+  }
+
+  @Test
+  public void checkFailedCallback() throws Exception {
+    AsyncBatchConsumer consumer = AsyncBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/not_found")
+        .setBulkSize(3)
+        .setCallback(callback)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 10; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    assertEquals(10, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkInstantEventsWithNdjson() throws Exception {
+    RawServlet.RECEIVED.set(0);
+    RawServlet.RECEIVED_INSTANT.set(0);
+    AsyncBatchConsumer consumer = AsyncBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setCallback(callback)
+        .setTransportMode(TransportMode.NDJSON)
+        .setInstantEvents(Collections.singletonList("instant"))
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 10; i++) {
+      sa.track("a123", false, "test");
+    }
+    for (int i = 0; i < 4; i++) {
+      sa.track("a123", false, "instant");
+    }
+    sa.flush();
+    assertEquals(0, failedCount.get());
+    assertEquals(14, RawServlet.RECEIVED.get());
+    assertEquals(4, RawServlet.RECEIVED_INSTANT.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkInstantEventsAreBatched() throws Exception {
+    RawServlet.RECEIVED_INSTANT.set(0);
+    RawServlet.REQUESTS.set(0);
+    AsyncBatchConsumer consumer = AsyncBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setCallback(callback)
+        .setTransportMode(TransportMode.NDJSON)
+        .setInstantEvents(Collections.singletonList("instant"))
+        .setInstantFlushMs(10000)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 4; i++) {
+      sa.track("a123", false, "instant");
+    }
+    assertEquals(0, RawServlet.REQUESTS.get());
+    sa.flush();
+    assertEquals(4, RawServlet.RECEIVED_INSTANT.get());
+    assertEquals(1, RawServlet.REQUESTS.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkSendDoesNotBlockWhenInFlightIsFull() throws Exception {
+    ReceiverEmulator receiver = new ReceiverEmulator(0).setLatencyMs(300).start();
+    try {
+      AsyncBatchConsumer consumer = AsyncBatchConsumer.builder()
+          .setServerUrl(receiver.getUrl())
+          .setBulkSize(1)
+          .setMaxInFlight(1)
+          .setCallback(callback)
+          .build();
+      SensorsAnalytics sa = new SensorsAnalytics(consumer);
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < 10; i++) {
+        sa.track("a123", false, "test");
+      }
+      // 在调用线程中发送时 10 个请求串行需要 3 秒左右
+      assertTrue(System.currentTimeMillis() - start < 1000);
+      sa.flush();
+      assertEquals(0, failedCount.get());
+      assertEquals(10, receiver.getRecords());
+      assertEquals(1, receiver.getMaxConcurrentRequests());
+      consumer.close();
+    } finally {
+      receiver.stop();
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sensorsdata.analytics.javasdk.bean.EventRecord;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.exceptions.InvalidArgumentException;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BatchConsumer 流水线模式单测
+ */
+public class BatchConsumerPipelinedTest extends SensorsBaseTest {
+
+  @Test
+  public void checkPipelinedSend() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setBulkSize(50)
+        .setThrowException(true)
+        .setPipelined(true)
+        .build();
+    sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 120; i++) {
+      sa.track("a123", false, "test" + i);
+    }
+    sa.flush();
+    assertEquals(0, getMessageList(consumer).size());
+    consumer.close();
+  }
+
+  @Test
+  public void checkPipelinedInstantEvent() throws InvalidArgumentException {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/instant")
+        .setThrowException(true)
+        .setInstantEvents(Arrays.asList("test1", "test4"))
+        .setPipelined(true)
+        .build();
+    sa = new SensorsAnalytics(consumer);
+    for (int i = 1; i <= 5; i++) {
+      sa.track(EventRecord.builder().setEventName("test" + i).setDistinctId("1234").isLoginId(false).build());
+    }
+    sa.flush();
+    consumer.close();
+  }
+
+  @Test
+  public void checkPipelinedThrowException() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/not_found")
+        .setBulkSize(10)
+        .setThrowException(true)
+        .setPipelined(true)
+        .build();
+    sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 5; i++) {
+      sa.track("a123", false, "test" + i);
+    }
+    try {
+      sa.flush();
+      fail("flush should rethrow the failure of sender thread.");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("BatchConsumer"));
+    }
+    // 发送失败的数据仍保留在待发送批次中，等待下次重发
+    Field field = consumer.getClass().getDeclaredField("pendingCount");
+    field.setAccessible(true);
+    assertEquals(5, field.get(consumer));
+    try {
+      consumer.close();
+    } catch (RuntimeException ignored) {
+      // 服务端依然返回错误
+    }
+  }
+
+  @Test
+  public void checkPipelinedThrowExceptionKeepsCurrentMessage() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/not_found")
+        .setBulkSize(5)
+        .setThrowException(true)
+        .setPipelined(true)
+        .build();
+    sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 5; i++) {
+      sa.track("a123", false, "test" + i);
+    }
+    Field field = consumer.getClass().getDeclaredField("sendFailure");
+    field.setAccessible(true);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (field.get(consumer) == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    try {
+      sa.track("a123", false, "test5");
+      fail("send should rethrow the failure of sender thread.");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("BatchConsumer"));
+    }
+    // 抛出异常的这一条数据已经入队，不会丢失
+    assertEquals(1, getMessageList(consumer).size());
+    try {
+      consumer.close();
+    } catch (RuntimeException ignored) {
+      // 服务端依然返回错误
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Map<String, Object>> getMessageList(BatchConsumer consumer) throws Exception {
+    Field field = consumer.getClass().getDeclaredField("messageList");
+    field.setAccessible(true);
+    return (List<Map<String, Object>>) field.get(consumer);
+  }
+}
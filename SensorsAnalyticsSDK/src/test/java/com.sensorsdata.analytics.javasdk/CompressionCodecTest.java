@@ -0,0 +1,113 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.CompressionCodec;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 压缩配置单测
+ */
+public class CompressionCodecTest extends SensorsBaseTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  @Before
+  public void resetCounter() {
+    RawServlet.RECEIVED.set(0);
+    RawServlet.REQUESTS.set(0);
+    RawServlet.UNCOMPRESSED.set(0);
+    RawServlet.DICTIONARY.set(0);
+  }
+
+  @Test
+  public void checkMinCompressSize() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(20)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.NDJSON)
+        .setCompressionCodec(CompressionCodec.builder().setMinCompressSize(4000).build())
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 50; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    assertEquals(50, RawServlet.RECEIVED.get());
+    assertEquals(3, RawServlet.REQUESTS.get());
+    // 每条数据 200 多字节，只有最后 10 条数据的批次不压缩
+    assertEquals(1, RawServlet.UNCOMPRESSED.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkPresetDictionary() throws Exception {
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(20)
+        .setCallback(callback)
+        .setTransportMode(TransportMode.OCTET_STREAM)
+        .setCompressionCodec(CompressionCodec.builder()
+            .setLevel(9)
+            .setPresetDictionary(CompressionCodec.getDefaultDictionary())
+            .build())
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 50; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    assertEquals(0, failedCount.get());
+    assertEquals(50, RawServlet.RECEIVED.get());
+    assertEquals(RawServlet.REQUESTS.get(), RawServlet.DICTIONARY.get());
+    consumer.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void checkPresetDictionaryWithForm() {
+    BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setCompressionCodec(CompressionCodec.builder()
+            .setPresetDictionary(CompressionCodec.getDefaultDictionary())
+            .build())
+        .build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void checkInvalidLevel() {
+    CompressionCodec.builder().setLevel(10).build();
+  }
+
+  @Test
+  public void checkFormWithLevel() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setBulkSize(20)
+        .setThrowException(true)
+        .setCompressionCodec(CompressionCodec.builder().setLevel(1).build())
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 50; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    consumer.close();
+  }
+}
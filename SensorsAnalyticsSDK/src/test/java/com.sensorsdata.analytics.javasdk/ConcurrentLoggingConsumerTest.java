@@ -3,17 +3,42 @@ package com.sensorsdata.analytics.javasdk;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.sensorsdata.analytics.javasdk.consumer.ConcurrentLoggingConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.LogFsyncPolicy;
+import com.sensorsdata.analytics.javasdk.consumer.LogSegmentMerger;
 import com.sensorsdata.analytics.javasdk.consumer.LogSplitMode;
 import com.sensorsdata.analytics.javasdk.exceptions.InvalidArgumentException;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Field;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
 
 /**
  * ConcurrentLoggingConsumer 单测
@@ -26,26 +51,66 @@ public class ConcurrentLoggingConsumerTest {
 
   private ConcurrentLoggingConsumer consumer;
 
-  private StringBuilder messageBuffer;
+  private Object messageBuffer;
 
   @Before
   public void init() throws NoSuchFieldException, IllegalAccessException {
     consumer = new ConcurrentLoggingConsumer("file.log");
     Field field = consumer.getClass().getSuperclass().getDeclaredField("messageBuffer");
     field.setAccessible(true);
-    messageBuffer = (StringBuilder) field.get(consumer);
+    messageBuffer = field.get(consumer);
   }
 
   @Test
   public void checkSendData() {
-    assertEquals(0, messageBuffer.length());
+    assertEquals("", messageBuffer.toString());
     Map<String, Object> event = new HashMap<>();
     event.put("distinct_id", "12345");
     event.put("event", "test");
     event.put("type", "track");
     consumer.send(event);
     assertNotNull(messageBuffer);
-    messageBuffer.setLength(0);
+    assertTrue(messageBuffer.toString().endsWith("}\n"));
+  }
+
+  /**
+   * 数据直接编码为 UTF-8 写入缓存；序列化失败的数据不会在缓存中留下残缺内容，之后的数据正常写入
+   */
+  @Test
+  public void checkUtf8AndSerializationRollback() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    String prefix = dir.resolve("utf8.log").toString();
+    ConcurrentLoggingConsumer utf8Consumer = new ConcurrentLoggingConsumer(prefix, 1024 * 1024);
+    Map<String, Object> event = new HashMap<>();
+    event.put("distinct_id", "12345");
+    event.put("event", "测试事件");
+    event.put("emoji", "\uD83D\uDE00");
+    utf8Consumer.send(event);
+    Map<String, Object> invalid = new HashMap<>();
+    invalid.put("distinct_id", "12345");
+    invalid.put("bad", new Object());
+    try {
+      utf8Consumer.send(invalid);
+      fail("serialization of an empty bean should fail.");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("json"));
+    }
+    utf8Consumer.send(event);
+    utf8Consumer.close();
+
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    List<String> lines = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+    assertEquals(2, lines.size());
+    ObjectMapper jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+    for (String line : lines) {
+      JsonNode jsonNode = jsonMapper.readTree(line);
+      assertEquals("测试事件", jsonNode.get("event").asText());
+      assertEquals("\uD83D\uDE00", jsonNode.get("emoji").asText());
+    }
+    files[0].delete();
+    dir.toFile().delete();
   }
 
   @Test
@@ -139,4 +204,376 @@ public class ConcurrentLoggingConsumerTest {
     sa.track("123", true, "test01", properties);
     sa.track("123", true, "test01", properties);
   }
+
+  @Test
+  public void checkAsyncWriteFromManyThreads() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    final ConcurrentLoggingConsumer asyncConsumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(dir.resolve("async.log").toString())
+        .setBufferSize(1024)
+        .setAsync(true)
+        .build();
+    int threads = 4;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final int index = t;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 1000; i++) {
+              Map<String, Object> event = new HashMap<>();
+              event.put("distinct_id", "a" + index);
+              event.put("seq", i);
+              asyncConsumer.send(event);
+            }
+          } finally {
+            latch.countDown();
+          }
+        }
+      }).start();
+    }
+    latch.await();
+    asyncConsumer.close();
+    assertEquals(4000, readLines(dir).size());
+  }
+
+  /**
+   * 分条带写入时每个条带以完整的行移交，多线程写入的数据不会在行内交错
+   */
+  @Test
+  public void checkStripedWriteFromManyThreads() throws Exception {
+    for (boolean async : new boolean[] {false, true}) {
+      Path dir = Files.createTempDirectory("logging");
+      final ConcurrentLoggingConsumer stripedConsumer = ConcurrentLoggingConsumer.builder()
+          .setFilenamePrefix(dir.resolve("async.log").toString())
+          .setBufferSize(512)
+          .setStripes(3)
+          .setAsync(async)
+          .build();
+      int threads = 8;
+      final CountDownLatch latch = new CountDownLatch(threads);
+      for (int t = 0; t < threads; t++) {
+        final int index = t;
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              for (int i = 0; i < 500; i++) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("distinct_id", "a" + index);
+                event.put("seq", i);
+                stripedConsumer.send(event);
+              }
+            } finally {
+              latch.countDown();
+            }
+          }
+        }).start();
+      }
+      latch.await();
+      stripedConsumer.flush();
+      stripedConsumer.close();
+      List<String> lines = readLines(dir);
+      assertEquals(4000, lines.size());
+      ObjectMapper jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+      int[] counts = new int[threads];
+      for (String line : lines) {
+        JsonNode jsonNode = jsonMapper.readTree(line);
+        counts[Integer.parseInt(jsonNode.get("distinct_id").asText().substring(1))]++;
+      }
+      for (int count : counts) {
+        assertEquals(500, count);
+      }
+    }
+  }
+
+  /**
+   * 文件锁被占用时后台线程写入失败并重试，待写入数据达到上限后 send 在等待 maxWaitMs 后失败；锁释放后已接收的数据全部写入
+   */
+  @Test
+  public void checkAsyncBoundedWaitWhenWriterFallsBehind() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    File lockFile = dir.resolve("async.lock").toFile();
+    ConcurrentLoggingConsumer asyncConsumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(dir.resolve("async.log").toString())
+        .setLockFileName(lockFile.getAbsolutePath())
+        .setBufferSize(100)
+        .setAsync(true)
+        .setMaxPendingBytes(1000)
+        .setMaxWaitMs(100)
+        .build();
+    int accepted = 0;
+    boolean rejected = false;
+    try (FileOutputStream lockStream = new FileOutputStream(lockFile, true);
+         FileLock ignored = lockStream.getChannel().lock()) {
+      for (int i = 0; i < 1000 && !rejected; i++) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("distinct_id", "12345");
+        event.put("seq", i);
+        try {
+          asyncConsumer.send(event);
+          accepted++;
+        } catch (RuntimeException e) {
+          rejected = true;
+        }
+      }
+    }
+    assertTrue(rejected);
+    assertTrue(accepted > 0);
+    asyncConsumer.close();
+    List<String> lines = readLines(dir);
+    assertEquals(accepted, lines.size());
+  }
+
+  @Test
+  public void checkFsyncPolicies() throws Exception {
+    for (LogFsyncPolicy policy : LogFsyncPolicy.values()) {
+      for (boolean async : new boolean[] {false, true}) {
+        Path dir = Files.createTempDirectory("logging");
+        ConcurrentLoggingConsumer fsyncConsumer = ConcurrentLoggingConsumer.builder()
+            .setFilenamePrefix(dir.resolve("async.log").toString())
+            .setBufferSize(256)
+            .setAsync(async)
+            .setFsyncPolicy(policy)
+            .setFsyncIntervalBytes(1024)
+            .build();
+        for (int i = 0; i < 200; i++) {
+          Map<String, Object> event = new HashMap<>();
+          event.put("distinct_id", "12345");
+          event.put("seq", i);
+          fsyncConsumer.send(event);
+        }
+        fsyncConsumer.flush();
+        fsyncConsumer.close();
+        assertEquals(policy + "/" + async, 200, readLines(dir).size());
+      }
+    }
+  }
+
+  /**
+   * 按大小切分时同一时间段内的文件带 4 位序号，每个文件最多超出一次写入的数据量
+   */
+  @Test
+  public void checkMaxFileSizeRotation() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    ConcurrentLoggingConsumer sizeConsumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(dir.resolve("async.log").toString())
+        .setBufferSize(256)
+        .setSplitMode(LogSplitMode.MINUTE)
+        .setSplitIntervalMinutes(30)
+        .setMaxFileSize(2048)
+        .build();
+    for (int i = 0; i < 500; i++) {
+      Map<String, Object> event = new HashMap<>();
+      event.put("distinct_id", "12345");
+      event.put("seq", i);
+      sizeConsumer.send(event);
+    }
+    sizeConsumer.close();
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    assertTrue(files.length > 1);
+    for (File file : files) {
+      assertTrue(file.getName(), file.getName().matches("async\\.log\\.\\d{4}-\\d{2}-\\d{2}-\\d{2}-(00|30)\\.\\d{4}"));
+      assertTrue(file.length() < 2048 + 512);
+    }
+    assertEquals(500, readLines(dir).size());
+  }
+
+  /**
+   * 切换文件后旧文件在后台压缩为 .gz，当前文件不压缩
+   */
+  @Test
+  public void checkCompressRotatedFiles() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    ConcurrentLoggingConsumer gzipConsumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(dir.resolve("async.log").toString())
+        .setBufferSize(256)
+        .setMaxFileSize(1024)
+        .setCompressRotatedFiles(true)
+        .build();
+    for (int i = 0; i < 200; i++) {
+      Map<String, Object> event = new HashMap<>();
+      event.put("distinct_id", "12345");
+      event.put("seq", i);
+      gzipConsumer.send(event);
+    }
+    gzipConsumer.close();
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    int plain = 0;
+    for (File file : files) {
+      if (!file.getName().endsWith(".gz")) {
+        plain++;
+      }
+    }
+    assertEquals(1, plain);
+    assertTrue(files.length > 1);
+    assertEquals(200, readLines(dir).size());
+  }
+
+  /**
+   * 分段模式下写入不加文件锁：分段文件被锁住时仍然可以写入（同一进程内重复加锁会抛出异常）；合并后得到不带分段标识的文件
+   */
+  @Test
+  public void checkPerProcessSegmentAndMerge() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    String prefix = dir.resolve("async.log").toString();
+    ConcurrentLoggingConsumer pidConsumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(prefix)
+        .setBufferSize(100)
+        .setPerProcessSegment(true)
+        .build();
+    ConcurrentLoggingConsumer namedConsumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(prefix)
+        .setBufferSize(100)
+        .setSegmentId("worker-2")
+        .build();
+    File lockedSegment = new File(prefix + "." + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".worker-2");
+    try (FileOutputStream lockStream = new FileOutputStream(lockedSegment, true);
+         FileLock ignored = lockStream.getChannel().lock()) {
+      for (int i = 0; i < 100; i++) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("distinct_id", "12345");
+        event.put("seq", i);
+        pidConsumer.send(event);
+        namedConsumer.send(event);
+      }
+    }
+    pidConsumer.close();
+    namedConsumer.close();
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    assertEquals(2, files.length);
+    String period = null;
+    for (File file : files) {
+      assertTrue(file.getName(), file.getName().matches("async\\.log\\.\\d{4}-\\d{2}-\\d{2}\\.(\\d+|worker-2)"));
+      period = file.getPath().substring(0, file.getPath().lastIndexOf('.'));
+    }
+    assertEquals(2, LogSegmentMerger.merge(period));
+    files = dir.toFile().listFiles();
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    assertEquals(period, files[0].getPath());
+    assertEquals(200, readLines(dir).size());
+  }
+
+  /**
+   * gzip 输出时每次写文件追加一个 gzip member，文件可以按拼接的 gzip 文件整体读出；截断的最后一个 member 不影响之前的数据
+   */
+  @Test
+  public void checkGzipOutput() throws Exception {
+    for (boolean async : new boolean[] {false, true}) {
+      Path dir = Files.createTempDirectory("logging");
+      ConcurrentLoggingConsumer gzipConsumer = ConcurrentLoggingConsumer.builder()
+          .setFilenamePrefix(dir.resolve("async.log").toString())
+          .setBufferSize(1024)
+          .setAsync(async)
+          .setGzip(true)
+          .build();
+      for (int i = 0; i < 200; i++) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("distinct_id", "12345");
+        event.put("seq", i);
+        gzipConsumer.send(event);
+      }
+      gzipConsumer.flush();
+      gzipConsumer.close();
+      File[] files = dir.toFile().listFiles();
+      assertNotNull(files);
+      assertEquals(1, files.length);
+      byte[] data = Files.readAllBytes(files[0].toPath());
+      List<Integer> members = new ArrayList<>();
+      for (int i = 0; i + 2 < data.length; i++) {
+        if (data[i] == 0x1f && data[i + 1] == (byte) 0x8b && data[i + 2] == 8) {
+          members.add(i);
+        }
+      }
+      // 异步写入时后台线程可能一次写入多个缓存的数据，只有同步写入时 member 个数是确定的
+      assertTrue(async || members.size() > 1);
+      assertEquals(200, countGzipLines(data, data.length));
+      // 模拟最后一个 member 写到一半时进程退出
+      int lastMember = members.get(members.size() - 1);
+      int recovered = countGzipLines(data, lastMember + (data.length - lastMember) / 2);
+      assertTrue(recovered < 200);
+      assertTrue(recovered >= countGzipLines(data, lastMember));
+      assertTrue(files[0].delete());
+      assertTrue(dir.toFile().delete());
+    }
+  }
+
+  /**
+   * 解压 data 的前 length 个字节并统计行数，遇到不完整的 member 时只统计已解压的数据
+   */
+  private int countGzipLines(byte[] data, int length) throws Exception {
+    int lines = 0;
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data, 0, length))) {
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        for (int i = 0; i < n; i++) {
+          if (buffer[i] == '\n') {
+            lines++;
+          }
+        }
+      }
+    } catch (EOFException ignored) {
+      // 最后一个 member 不完整
+    }
+    return lines;
+  }
+
+  /**
+   * 未分段时按大小切分的文件（4 位序号）不是分段文件，不参与合并
+   */
+  @Test
+  public void checkMergeSkipsSizeRolledFiles() throws Exception {
+    Path dir = Files.createTempDirectory("logging");
+    String period = dir.resolve("service.log.2026-10-17").toString();
+    Files.write(Paths.get(period + ".0003"), "rolled\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(Paths.get(period + ".worker-1"), "a\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(Paths.get(period + ".worker-1.0001"), "b\n".getBytes(StandardCharsets.UTF_8));
+    assertEquals(2, LogSegmentMerger.merge(period));
+    assertTrue(new File(period + ".0003").isFile());
+    assertEquals(Arrays.asList("a", "b"), Files.readAllLines(Paths.get(period), StandardCharsets.UTF_8));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void checkFourDigitSegmentId() {
+    ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix("file.log")
+        .setSegmentId("0003")
+        .build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void checkInvalidSegmentId() {
+    ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix("file.log")
+        .setSegmentId("a/b")
+        .build();
+  }
+
+  private List<String> readLines(Path dir) throws Exception {
+    List<String> lines = new ArrayList<>();
+    File[] files = dir.toFile().listFiles();
+    assertNotNull(files);
+    for (File file : files) {
+      if (file.getName().endsWith(".gz")) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            lines.add(line);
+          }
+        }
+      } else if (file.getName().startsWith("async.log")) {
+        lines.addAll(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+      }
+      file.delete();
+    }
+    dir.toFile().delete();
+    return lines;
+  }
 }
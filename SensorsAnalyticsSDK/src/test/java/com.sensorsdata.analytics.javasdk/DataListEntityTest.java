@@ -0,0 +1,159 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.consumer.CompressionCodec;
+import com.sensorsdata.analytics.javasdk.consumer.InstantHttpConsumer;
+import com.sensorsdata.analytics.javasdk.util.Base64Coder;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 流式构造的 data_list 请求体与 UrlEncodedFormEntity 逐字节一致
+ */
+public class DataListEntityTest {
+
+  @Test
+  public void checkEmptyPayload() throws Exception {
+    checkSameAsLegacy(Collections.<Map<String, Object>>emptyList());
+  }
+
+  @Test
+  public void checkAsciiPayload() throws Exception {
+    List<Map<String, Object>> messages = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("index", i);
+      properties.put("url", "https://www.example.com/a/b?c=d&e=f+g");
+      messages.add(message("a" + i, properties));
+    }
+    checkSameAsLegacy(messages);
+  }
+
+  @Test
+  public void checkMultiBytePayload() throws Exception {
+    List<Map<String, Object>> messages = new ArrayList<>();
+    for (int i = 0; i < 37; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("城市", "北京" + i);
+      properties.put("emoji", "😀éß");
+      messages.add(message("用户" + i, properties));
+    }
+    checkSameAsLegacy(messages);
+  }
+
+  /**
+   * 池化的 Deflater 被多次复用后压缩结果仍可以被标准 gzip 解压
+   */
+  @Test
+  public void checkPooledGzipRoundTrip() throws Exception {
+    List<Map<String, Object>> messages = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("城市", "上海" + i);
+      messages.add(message("b" + i, properties));
+    }
+    String data = SensorsAnalyticsUtil.getJsonObjectMapper().writeValueAsString(messages);
+    InstantHttpConsumer consumer = new InstantHttpConsumer("http://localhost:8888/sa", 3);
+    Method streamEntry = Class.forName("com.sensorsdata.analytics.javasdk.consumer.HttpConsumer")
+        .getDeclaredMethod("getHttpEntry", List.class);
+    streamEntry.setAccessible(true);
+    for (int round = 0; round < 10; round++) {
+      HttpEntity entity = (HttpEntity) streamEntry.invoke(consumer, messages);
+      Map<String, String> form = new HashMap<>();
+      for (NameValuePair pair : URLEncodedUtils.parse(entity)) {
+        form.put(pair.getName(), pair.getValue());
+      }
+      assertEquals("1", form.get("gzip"));
+      assertEquals("true", form.get("instant_event"));
+      byte[] compressed = Base64Coder.decode(form.get("data_list"));
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+          out.write(buffer, 0, n);
+        }
+        assertEquals(data, new String(out.toByteArray(), StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  /**
+   * 压缩、不压缩以及带 instant_event 参数的请求体都与原有实现一致，且可以重复写出
+   */
+  private void checkSameAsLegacy(List<Map<String, Object>> messages) throws Exception {
+    Class<?> httpConsumerClass = Class.forName("com.sensorsdata.analytics.javasdk.consumer.HttpConsumer");
+    Constructor<?> constructor = httpConsumerClass.getDeclaredConstructor(String.class, int.class);
+    constructor.setAccessible(true);
+    List<Object> consumers = new ArrayList<>();
+    consumers.add(constructor.newInstance("http://localhost:8888/sa", 3));
+    consumers.add(new InstantHttpConsumer("http://localhost:8888/sa", 3));
+    Object uncompressed = constructor.newInstance("http://localhost:8888/sa", 3);
+    setCompressionCodec(httpConsumerClass, uncompressed,
+        CompressionCodec.builder().setMinCompressSize(Integer.MAX_VALUE).build());
+    consumers.add(uncompressed);
+
+    Method legacyEntry = httpConsumerClass.getDeclaredMethod("getHttpEntry", String.class);
+    legacyEntry.setAccessible(true);
+    Method streamEntry = httpConsumerClass.getDeclaredMethod("getHttpEntry", List.class);
+    streamEntry.setAccessible(true);
+    String data = SensorsAnalyticsUtil.getJsonObjectMapper().writeValueAsString(messages);
+    for (Object consumer : consumers) {
+      HttpEntity legacy = (HttpEntity) legacyEntry.invoke(consumer, data);
+      HttpEntity entity = (HttpEntity) streamEntry.invoke(consumer, messages);
+      byte[] expected = EntityUtils.toByteArray(legacy);
+      byte[] actual = write(entity);
+      assertArrayEquals(expected, actual);
+      assertEquals(legacy.getContentLength(), entity.getContentLength());
+      assertEquals(actual.length, entity.getContentLength());
+      assertEquals(legacy.getContentType().getValue(), entity.getContentType().getValue());
+      // 重试时同一个请求体会被再次写出
+      assertTrue(entity.isRepeatable());
+      assertArrayEquals(expected, write(entity));
+      assertArrayEquals(expected, EntityUtils.toByteArray(entity));
+    }
+  }
+
+  private static void setCompressionCodec(Class<?> httpConsumerClass, Object consumer, CompressionCodec codec)
+      throws Exception {
+    Method method = httpConsumerClass.getDeclaredMethod("setCompressionCodec", CompressionCodec.class);
+    method.setAccessible(true);
+    method.invoke(consumer, codec);
+  }
+
+  private static byte[] write(HttpEntity entity) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    entity.writeTo(out);
+    return out.toByteArray();
+  }
+
+  private static Map<String, Object> message(String distinctId, Map<String, Object> properties) {
+    Map<String, Object> message = new HashMap<>();
+    message.put("type", "track");
+    message.put("event", "test");
+    message.put("distinct_id", distinctId);
+    message.put("properties", properties);
+    return message;
+  }
+}
@@ -0,0 +1,24 @@
+package com.sensorsdata.analytics.javasdk;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 模拟服务端异常，按 STATUS 返回响应码并记录请求次数
+ */
+public class ErrorServlet extends HttpServlet {
+
+  static final AtomicInteger STATUS = new AtomicInteger(503);
+  static final AtomicInteger REQUESTS = new AtomicInteger();
+
+  @Override
+  protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    REQUESTS.incrementAndGet();
+    response.setStatus(STATUS.get());
+    response.getWriter().write(STATUS.get() == 200 ? "ok" : "error");
+  }
+}
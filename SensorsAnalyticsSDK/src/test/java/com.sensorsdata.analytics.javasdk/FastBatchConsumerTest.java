@@ -0,0 +1,401 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.OverflowPolicy;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FastBatchConsumer 单测
+ */
+public class FastBatchConsumerTest extends SensorsBaseTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  @Test
+  public void checkRingBufferConcurrentSend() throws Exception {
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setBulkSize(100)
+        .setMaxCacheSize(1000)
+        .setCallback(callback)
+        .setRingBuffer(true)
+        .build();
+    final SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    int threads = 8;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    final List<Throwable> errors = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int index = t;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 500; i++) {
+              sa.track("a" + index, false, "test");
+            }
+          } catch (Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          } finally {
+            latch.countDown();
+          }
+        }
+      }).start();
+    }
+    latch.await();
+    sa.flush();
+    assertTrue(errors.isEmpty());
+    assertEquals(0, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkRingBufferFailedCallback() throws Exception {
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/not_found")
+        .setCallback(callback)
+        .setRingBuffer(true)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 10; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    assertEquals(10, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkSpoolReplayAfterRestart() throws Exception {
+    File spoolDir = Files.createTempDirectory("sa-spool").toFile();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/error")
+        .setCallback(callback)
+        .setSpoolDir(spoolDir.getAbsolutePath())
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 20; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    // 发送失败的数据保留在磁盘中，不通过 callback 返回
+    assertEquals(0, failedCount.get());
+    consumer.close();
+
+    RawServlet.RECEIVED.set(0);
+    consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setCallback(callback)
+        .setTransportMode(TransportMode.NDJSON)
+        .setSpoolDir(spoolDir.getAbsolutePath())
+        .build();
+    consumer.flush();
+    assertEquals(20, RawServlet.RECEIVED.get());
+    assertEquals(0, countSegments(spoolDir));
+    consumer.close();
+  }
+
+  @Test
+  public void checkSpoolSkipRejectedBatch() throws Exception {
+    File spoolDir = Files.createTempDirectory("sa-spool").toFile();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/error")
+        .setBulkSize(10)
+        .setCallback(callback)
+        .setSpoolDir(spoolDir.getAbsolutePath())
+        .build();
+    ErrorServlet.STATUS.set(400);
+    try {
+      SensorsAnalytics sa = new SensorsAnalytics(consumer);
+      for (int i = 0; i < 20; i++) {
+        sa.track("a123", false, "test");
+      }
+      sa.flush();
+      // 被接收端拒绝的批次通过 callback 返回后跳过，不会阻塞后续数据
+      assertEquals(20, failedCount.get());
+      ErrorServlet.STATUS.set(200);
+      ErrorServlet.REQUESTS.set(0);
+      for (int i = 0; i < 5; i++) {
+        sa.track("a123", false, "test");
+      }
+      sa.flush();
+      assertEquals(1, ErrorServlet.REQUESTS.get());
+      assertEquals(20, failedCount.get());
+    } finally {
+      ErrorServlet.STATUS.set(503);
+      consumer.close();
+    }
+  }
+
+  @Test
+  public void checkSpoolMaxDiskUsage() throws Exception {
+    File spoolDir = Files.createTempDirectory("sa-spool").toFile();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/not_found")
+        .setCallback(callback)
+        .setSpoolDir(spoolDir.getAbsolutePath())
+        .setSpoolSegmentSize(64 * 1024)
+        .setSpoolMaxDiskUsage(64 * 1024)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 1000; i++) {
+      sa.track("a123", false, "test");
+    }
+    assertTrue(failedCount.get() > 0);
+    assertEquals(1, countSegments(spoolDir));
+    consumer.close();
+  }
+
+  @Test
+  public void checkOverflowDropNewest() throws Exception {
+    FastBatchConsumer consumer = newOverflowConsumer(OverflowPolicy.DROP_NEWEST, callback).build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 1010; i++) {
+      sa.track("a123", false, "test");
+    }
+    assertEquals(10, consumer.getOverflowCount());
+    assertEquals(10, consumer.getOverflowDroppedCount());
+    assertEquals(10, failedCount.get());
+    sa.flush();
+    assertEquals(1000, RawServlet.RECEIVED.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkOverflowDropOldest() throws Exception {
+    final List<Object> dropped = Collections.synchronizedList(new ArrayList<>());
+    FastBatchConsumer consumer = newOverflowConsumer(OverflowPolicy.DROP_OLDEST, new Callback() {
+      @Override
+      public void onFailed(FailedData failedData) {
+        for (Map<String, Object> message : failedData.getFailedData()) {
+          dropped.add(((Map<?, ?>) message.get("properties")).get("index"));
+        }
+      }
+    }).build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    Map<String, Object> properties = new HashMap<>();
+    for (int i = 0; i < 1010; i++) {
+      properties.put("index", i);
+      sa.track("a123", false, "test", properties);
+    }
+    assertEquals(10, consumer.getOverflowDroppedCount());
+    assertEquals(10, dropped.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, dropped.get(i));
+    }
+    sa.flush();
+    assertEquals(1000, RawServlet.RECEIVED.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkOverflowBlock() throws Exception {
+    FastBatchConsumer consumer = newOverflowConsumer(OverflowPolicy.BLOCK, callback)
+        .setOverflowBlockTimeoutMs(5000)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 1010; i++) {
+      sa.track("a123", false, "test");
+    }
+    assertEquals(1, consumer.getOverflowCount());
+    assertEquals(0, consumer.getOverflowDroppedCount());
+    sa.flush();
+    // 阻塞等待时触发的后台 flush 可能仍在发送中
+    for (int i = 0; i < 50 && RawServlet.RECEIVED.get() < 1010; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(1010, RawServlet.RECEIVED.get());
+    assertEquals(0, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkOverflowSpillToFile() throws Exception {
+    File spillDir = Files.createTempDirectory("sa-overflow").toFile();
+    FastBatchConsumer consumer = newOverflowConsumer(OverflowPolicy.SPILL_TO_FILE, callback)
+        .setOverflowSpillDir(spillDir.getAbsolutePath())
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 1010; i++) {
+      sa.track("a123", false, "test");
+    }
+    assertEquals(10, consumer.getOverflowSpilledCount());
+    assertEquals(0, consumer.getOverflowDroppedCount());
+    sa.flush();
+    assertEquals(1010, RawServlet.RECEIVED.get());
+    assertEquals(0, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkSenderThreadsKeepUserOrder() throws Exception {
+    ReceiverEmulator receiver = new ReceiverEmulator(0).setLatencyMs(30).start();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setBulkSize(50)
+        .setFlushSec(3600)
+        .setCallback(callback)
+        .setSenderThreads(4)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 2000; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("load_seq", i);
+      sa.track("user" + i % 16, false, "test", properties);
+    }
+    sa.flush();
+    consumer.close();
+    receiver.stop();
+    assertEquals(0, failedCount.get());
+    assertEquals(2000, receiver.getDistinctRecords());
+    assertEquals(0, receiver.getOutOfOrder());
+    assertTrue(receiver.toString(), receiver.getMaxConcurrentRequests() > 1);
+  }
+
+  @Test
+  public void checkSenderThreadsKeepUserOrderAcrossFlushes() throws Exception {
+    ReceiverEmulator receiver = new ReceiverEmulator(0).setLatencyMs(20).start();
+    // 缓存写满时由后台线程 flush，后台 flush 不等待发送完成，多次 flush 的分区同时在途
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setBulkSize(50)
+        .setMaxCacheSize(1000)
+        .setFlushSec(3600)
+        .setOverflowPolicy(OverflowPolicy.BLOCK)
+        .setOverflowBlockTimeoutMs(10000)
+        .setCallback(callback)
+        .setSenderThreads(4)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 5000; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("load_seq", i);
+      sa.track("user" + i % 16, false, "test", properties);
+    }
+    sa.flush();
+    assertEquals(5000, receiver.getDistinctRecords());
+    consumer.close();
+    receiver.stop();
+    assertEquals(0, failedCount.get());
+    assertEquals(0, consumer.getOverflowDroppedCount());
+    assertEquals(0, receiver.getOutOfOrder());
+  }
+
+  @Test
+  public void checkCloseWaitsForScheduledFlush() throws Exception {
+    ReceiverEmulator receiver = new ReceiverEmulator(0).setLatencyMs(300).start();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setTiming(true)
+        .setBulkSize(10)
+        .setFlushSec(1)
+        .setCallback(callback)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 30; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("load_seq", i);
+      sa.track("a123", false, "test", properties);
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (receiver.getRequests() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    // 定时 flush 已取出缓存中的数据、仍在逐批发送时关闭，不会因为客户端被关闭而发送失败
+    consumer.close();
+    receiver.stop();
+    assertEquals(0, failedCount.get());
+    assertEquals(30, receiver.getDistinctRecords());
+  }
+
+  @Test
+  public void checkCloseTimeout() throws Exception {
+    ReceiverEmulator receiver = new ReceiverEmulator(0).setLatencyMs(2000).start();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setTiming(true)
+        .setBulkSize(10)
+        .setFlushSec(1)
+        .setCloseTimeoutMs(300)
+        .setCallback(callback)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 30; i++) {
+      sa.track("a123", false, "test");
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (receiver.getRequests() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    // 接收端很慢时 close 最多等待 closeTimeoutMs，不会一直阻塞
+    long start = System.currentTimeMillis();
+    consumer.close();
+    assertTrue(System.currentTimeMillis() - start < 1500);
+    receiver.stop();
+  }
+
+  @Test
+  public void checkCustomHttpClientBuilderIsNotModified() throws Exception {
+    HttpClientBuilder httpClientBuilder = HttpClients.custom();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setHttpClientBuilder(httpClientBuilder)
+        .setCallback(callback)
+        .setSenderThreads(8)
+        .build();
+    Field field = HttpClientBuilder.class.getDeclaredField("maxConnPerRoute");
+    field.setAccessible(true);
+    assertEquals(0, field.getInt(httpClientBuilder));
+    consumer.close();
+  }
+
+  private FastBatchConsumer.Builder newOverflowConsumer(OverflowPolicy overflowPolicy, Callback callback) {
+    RawServlet.RECEIVED.set(0);
+    return FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setTransportMode(TransportMode.NDJSON)
+        .setBulkSize(1000)
+        .setMaxCacheSize(1000)
+        .setFlushSec(3600)
+        .setCallback(callback)
+        .setOverflowPolicy(overflowPolicy);
+  }
+
+  private int countSegments(File spoolDir) {
+    int count = 0;
+    for (String name : spoolDir.list()) {
+      if (name.endsWith(".spool")) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
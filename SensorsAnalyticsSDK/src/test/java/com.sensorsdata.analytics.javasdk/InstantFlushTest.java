@@ -0,0 +1,91 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * BatchConsumer 即时事件攒批单测：默认等待时间内攒批、后台定时发送、instantFlushMs 为 0 时立即发送
+ */
+public class InstantFlushTest extends SensorsBaseTest {
+
+  @Before
+  public void resetCounter() {
+    RawServlet.RECEIVED.set(0);
+    RawServlet.RECEIVED_INSTANT.set(0);
+    RawServlet.REQUESTS.set(0);
+  }
+
+  @Test
+  public void checkInstantEventsAreBatchedByDefault() throws Exception {
+    BatchConsumer consumer = newBuilder().build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 10; i++) {
+      sa.track("a123", false, "instant");
+    }
+    awaitInstant(10);
+    // 默认等待 100ms，连续上报的即时事件合并为少量请求
+    assertTrue(RawServlet.REQUESTS.get() <= 2);
+    consumer.close();
+  }
+
+  @Test
+  public void checkLoneInstantEventIsSentByTimer() throws Exception {
+    BatchConsumer consumer = newBuilder().setInstantFlushMs(200).build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    sa.track("a123", false, "instant");
+    assertEquals(0, RawServlet.REQUESTS.get());
+    // 没有后续的 send 与 flush，也会在 instantFlushMs 之后发出
+    awaitInstant(1);
+    assertEquals(1, RawServlet.REQUESTS.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkPipelinedInstantEventIsSentByTimer() throws Exception {
+    BatchConsumer consumer = newBuilder().setPipelined(true).setInstantFlushMs(50).build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    sa.track("a123", false, "instant");
+    sa.track("a123", false, "test");
+    awaitInstant(1);
+    assertEquals(1, RawServlet.RECEIVED.get());
+    consumer.close();
+    assertEquals(2, RawServlet.RECEIVED.get());
+  }
+
+  @Test
+  public void checkZeroInstantFlushMsSendsImmediately() throws Exception {
+    BatchConsumer consumer = newBuilder().setInstantFlushMs(0).build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 3; i++) {
+      sa.track("a123", false, "instant");
+      assertEquals(i + 1, RawServlet.RECEIVED_INSTANT.get());
+    }
+    assertEquals(3, RawServlet.REQUESTS.get());
+    consumer.close();
+  }
+
+  private BatchConsumer.Builder newBuilder() {
+    return BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(50)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.NDJSON)
+        .setInstantEvents(Collections.singletonList("instant"));
+  }
+
+  private void awaitInstant(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (RawServlet.RECEIVED_INSTANT.get() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, RawServlet.RECEIVED_INSTANT.get());
+  }
+}
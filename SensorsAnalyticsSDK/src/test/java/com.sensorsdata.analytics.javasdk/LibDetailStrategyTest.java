@@ -0,0 +1,98 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static com.sensorsdata.analytics.javasdk.SensorsConst.DEFAULT_LIB_DETAIL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.EventRecord;
+import com.sensorsdata.analytics.javasdk.consumer.ConsoleConsumer;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * $lib_detail 采集方式单测，采集内容格式为 类名##方法名##文件名##行号
+ */
+public class LibDetailStrategyTest {
+
+  private StringWriter writer;
+  private SensorsAnalytics sa;
+
+  @Before
+  public void init() {
+    writer = new StringWriter();
+    sa = new SensorsAnalytics(new ConsoleConsumer(writer));
+  }
+
+  @Test
+  public void checkEveryCall() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      track();
+    }
+    List<String> details = libDetails();
+    assertEquals(3, details.size());
+    assertTrue(details.get(0), details.get(0).matches(
+        "com\\.sensorsdata\\.analytics\\.javasdk\\.LibDetailStrategyTest##track##LibDetailStrategyTest\\.java##\\d+"));
+    assertEquals(details.get(0), details.get(1));
+    assertEquals(details.get(0), details.get(2));
+  }
+
+  @Test
+  public void checkOff() throws Exception {
+    sa.setLibDetailStrategy(LibDetailStrategy.OFF);
+    track();
+    sa.setGlobalEnableCollectMethodStack(true);
+    track();
+    sa.setGlobalEnableCollectMethodStack(false);
+    track();
+    List<String> details = libDetails();
+    assertEquals(DEFAULT_LIB_DETAIL, details.get(0));
+    assertTrue(details.get(1).startsWith(LibDetailStrategyTest.class.getName() + "##track##"));
+    assertEquals(DEFAULT_LIB_DETAIL, details.get(2));
+  }
+
+  @Test
+  public void checkSampled() throws Exception {
+    sa.setLibDetailStrategy(LibDetailStrategy.SAMPLED);
+    sa.setLibDetailSampleInterval(1);
+    track();
+    sa.setLibDetailSampleInterval(10);
+    for (int i = 0; i < 1000; i++) {
+      track();
+    }
+    List<String> details = libDetails();
+    assertTrue(details.get(0).startsWith(LibDetailStrategyTest.class.getName() + "##track##"));
+    int sampled = 0;
+    for (String detail : details.subList(1, details.size())) {
+      if (!DEFAULT_LIB_DETAIL.equals(detail)) {
+        assertEquals(details.get(0), detail);
+        sampled++;
+      }
+    }
+    assertTrue(String.valueOf(sampled), sampled > 30 && sampled < 300);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void checkInvalidSampleInterval() {
+    sa.setLibDetailSampleInterval(0);
+  }
+
+  private void track() throws Exception {
+    sa.track(EventRecord.builder().setEventName("test").setDistinctId("a123").isLoginId(false).build());
+  }
+
+  private List<String> libDetails() throws Exception {
+    List<String> details = new ArrayList<>();
+    for (String line : writer.toString().split("\n")) {
+      JsonNode jsonNode = SensorsAnalyticsUtil.getJsonObjectMapper().readTree(line);
+      details.add(jsonNode.path("lib").path(SensorsConst.LIB_DETAIL_SYSTEM_ATTR).asText());
+    }
+    return details;
+  }
+}
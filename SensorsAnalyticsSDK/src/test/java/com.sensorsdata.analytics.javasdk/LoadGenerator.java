@@ -0,0 +1,215 @@
+package com.sensorsdata.analytics.javasdk;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.Consumer;
+import com.sensorsdata.analytics.javasdk.consumer.DebugConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.RetryPolicy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端压测工具：多线程调用 track 写入指定 Consumer，数据发往 {@link ReceiverEmulator}
+ * <p>
+ * 统计 track 调用（入队）耗时的 p50/p99、端到端吞吐（从开始写入到接收端收齐数据），以及接收端实际收到的数据条数与丢失条数。
+ * 每条数据带有唯一的 {@link ReceiverEmulator#SEQ_PROPERTY}，重试导致的重复数据不计入送达条数。
+ * <p>
+ * 单元测试只以小数据量运行，压测时可以直接执行 main 方法：
+ * <pre>
+ *   LoadGenerator [threads] [eventsPerThread] [latencyMs] [errorRate] [throttleRate]
+ * </pre>
+ */
+public class LoadGenerator {
+
+  private final ReceiverEmulator receiver;
+  private int threads = 8;
+  private int eventsPerThread = 1000;
+  private long drainTimeoutMs = 10000;
+  private long nextSeq;
+
+  public LoadGenerator(ReceiverEmulator receiver) {
+    this.receiver = receiver;
+  }
+
+  public LoadGenerator setThreads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
+  public LoadGenerator setEventsPerThread(int eventsPerThread) {
+    this.eventsPerThread = eventsPerThread;
+    return this;
+  }
+
+  /**
+   * shutdown 之后等待接收端收齐数据的最长时间
+   */
+  public LoadGenerator setDrainTimeoutMs(long drainTimeoutMs) {
+    this.drainTimeoutMs = drainTimeoutMs;
+    return this;
+  }
+
+  /**
+   * 以当前配置压测一个 Consumer，结束时会调用 shutdown 关闭该 Consumer；接收端统计按本次运行前后的差值计算，故障配置保持不变
+   */
+  public Report run(String name, Consumer consumer) throws InterruptedException {
+    long distinctBefore = receiver.getDistinctRecords();
+    long duplicatesBefore = receiver.getDuplicates();
+    final long seqBase = nextSeq;
+    nextSeq += (long) threads * eventsPerThread;
+    final SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    final long[][] latencies = new long[threads][eventsPerThread];
+    final AtomicLong callerErrors = new AtomicLong();
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    final CountDownLatch doneSignal = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final int threadIndex = t;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            startSignal.await();
+            Map<String, Object> properties = new HashMap<>();
+            for (int i = 0; i < eventsPerThread; i++) {
+              properties.put(ReceiverEmulator.SEQ_PROPERTY, seqBase + (long) threadIndex * eventsPerThread + i);
+              long start = System.nanoTime();
+              try {
+                sa.track("load-" + threadIndex, true, "LoadTest", properties);
+              } catch (Exception e) {
+                callerErrors.incrementAndGet();
+              }
+              latencies[threadIndex][i] = System.nanoTime() - start;
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            doneSignal.countDown();
+          }
+        }
+      }, "load-generator-" + t);
+      thread.start();
+    }
+    long start = System.nanoTime();
+    startSignal.countDown();
+    doneSignal.await();
+    long enqueueNanos = System.nanoTime() - start;
+    sa.flush();
+    sa.shutdown();
+    long sent = (long) threads * eventsPerThread;
+    long deadline = System.currentTimeMillis() + drainTimeoutMs;
+    while (receiver.getDistinctRecords() - distinctBefore < sent && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    long totalNanos = System.nanoTime() - start;
+
+    long[] merged = new long[(int) sent];
+    for (int t = 0; t < threads; t++) {
+      System.arraycopy(latencies[t], 0, merged, t * eventsPerThread, eventsPerThread);
+    }
+    Arrays.sort(merged);
+    long delivered = receiver.getDistinctRecords() - distinctBefore;
+    return new Report(name, threads, sent, delivered, receiver.getDuplicates() - duplicatesBefore,
+        callerErrors.get(), enqueueNanos, totalNanos, percentile(merged, 0.5), percentile(merged, 0.99),
+        merged.length == 0 ? 0 : merged[merged.length - 1]);
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+  }
+
+  /**
+   * 单次压测结果，延迟单位为微秒，吞吐单位为条/秒
+   */
+  public static class Report {
+    final String name;
+    final int threads;
+    final long sent;
+    final long delivered;
+    final long duplicates;
+    final long callerErrors;
+    final long enqueueNanos;
+    final long totalNanos;
+    final long p50Nanos;
+    final long p99Nanos;
+    final long maxNanos;
+
+    Report(String name, int threads, long sent, long delivered, long duplicates, long callerErrors,
+        long enqueueNanos, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+      this.name = name;
+      this.threads = threads;
+      this.sent = sent;
+      this.delivered = delivered;
+      this.duplicates = duplicates;
+      this.callerErrors = callerErrors;
+      this.enqueueNanos = enqueueNanos;
+      this.totalNanos = totalNanos;
+      this.p50Nanos = p50Nanos;
+      this.p99Nanos = p99Nanos;
+      this.maxNanos = maxNanos;
+    }
+
+    public long getLost() {
+      return sent - delivered;
+    }
+
+    public double getEnqueueThroughput() {
+      return enqueueNanos == 0 ? 0 : sent * 1e9 / enqueueNanos;
+    }
+
+    public double getThroughput() {
+      return totalNanos == 0 ? 0 : delivered * 1e9 / totalNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-18s threads:%-3d sent:%-8d delivered:%-8d lost:%-6d duplicates:%-6d callerErrors:%-6d "
+              + "enqueue:%.0f/s end-to-end:%.0f/s p50:%.1fus p99:%.1fus max:%.1fus", name, threads, sent, delivered,
+          getLost(), duplicates, callerErrors, getEnqueueThroughput(), getThroughput(), p50Nanos / 1e3,
+          p99Nanos / 1e3, maxNanos / 1e3);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int eventsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+    ReceiverEmulator receiver = new ReceiverEmulator(0).start();
+    receiver.setLatencyMs(args.length > 2 ? Long.parseLong(args[2]) : 0)
+        .setErrorRate(args.length > 3 ? Double.parseDouble(args[3]) : 0)
+        .setThrottleRate(args.length > 4 ? Double.parseDouble(args[4]) : 0);
+    LoadGenerator generator = new LoadGenerator(receiver).setThreads(threads).setEventsPerThread(eventsPerThread)
+        .setDrainTimeoutMs(TimeUnit.SECONDS.toMillis(30));
+    RetryPolicy retryPolicy = RetryPolicy.builder().setInitialBackoffMs(50).setMaxAttempts(5)
+        .setCircuitBreakerThreshold(0).build();
+    try {
+      System.out.println(generator.run("BatchConsumer", BatchConsumer.builder()
+          .setServerUrl(receiver.getUrl())
+          .setRetryPolicy(retryPolicy)
+          .build()));
+      System.out.println(generator.run("FastBatchConsumer", FastBatchConsumer.builder()
+          .setServerUrl(receiver.getUrl())
+          .setRetryPolicy(retryPolicy)
+          .setCallback(new Callback() {
+            @Override
+            public void onFailed(FailedData failedData) {
+            }
+          })
+          .build()));
+      System.out.println(generator.setEventsPerThread(Math.max(eventsPerThread / 100, 1))
+          .run("DebugConsumer", new DebugConsumer(receiver.getUrl(), true)));
+      System.out.println(receiver);
+    } finally {
+      receiver.stop();
+    }
+  }
+}
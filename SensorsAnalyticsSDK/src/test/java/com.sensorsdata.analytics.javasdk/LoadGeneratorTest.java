@@ -0,0 +1,119 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.DebugConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.RetryPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 使用 ReceiverEmulator 与 LoadGenerator 的端到端小规模压测，校验各 Consumer 在故障注入下的送达与丢失统计
+ */
+public class LoadGeneratorTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  private final RetryPolicy retryPolicy = RetryPolicy.builder()
+      .setMaxAttempts(10)
+      .setInitialBackoffMs(1)
+      .setMaxBackoffMs(10)
+      .setCircuitBreakerThreshold(0)
+      .build();
+
+  private ReceiverEmulator receiver;
+
+  @Before
+  public void startReceiver() throws Exception {
+    receiver = new ReceiverEmulator(0).start();
+  }
+
+  @After
+  public void stopReceiver() throws Exception {
+    receiver.stop();
+  }
+
+  @Test
+  public void checkAllConsumersDeliverWithoutFaults() throws Exception {
+    LoadGenerator generator = new LoadGenerator(receiver).setThreads(4).setEventsPerThread(200);
+    LoadGenerator.Report batch = generator.run("BatchConsumer", BatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .build());
+    LoadGenerator.Report fast = generator.run("FastBatchConsumer", FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setCallback(callback)
+        .build());
+    LoadGenerator.Report debug = generator.setEventsPerThread(10)
+        .run("DebugConsumer", new DebugConsumer(receiver.getUrl(), true));
+    for (LoadGenerator.Report report : new LoadGenerator.Report[] {batch, fast, debug}) {
+      assertEquals(report.toString(), report.sent, report.delivered);
+      assertEquals(0, report.getLost());
+      assertEquals(0, report.callerErrors);
+      assertTrue(report.p99Nanos >= report.p50Nanos);
+    }
+    assertEquals(0, failedCount.get());
+    assertEquals(1640, receiver.getDistinctRecords());
+  }
+
+  @Test
+  public void checkRetryRecoversInjectedErrors() throws Exception {
+    receiver.setErrorRate(0.2).setThrottleRate(0.2).setLatencyMs(5);
+    LoadGenerator generator = new LoadGenerator(receiver).setThreads(4).setEventsPerThread(250);
+    LoadGenerator.Report report = generator.run("FastBatchConsumer", FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setBulkSize(20)
+        .setRetryPolicy(retryPolicy)
+        .setCallback(callback)
+        .build());
+    assertEquals(report.toString(), 0, report.getLost());
+    assertEquals(0, failedCount.get());
+    assertTrue(receiver.getErrorResponses() > 0);
+    assertTrue(receiver.getThrottledResponses() > 0);
+  }
+
+  @Test
+  public void checkLostDataIsReported() throws Exception {
+    receiver.setErrorRate(1);
+    LoadGenerator generator = new LoadGenerator(receiver).setThreads(2).setEventsPerThread(100)
+        .setDrainTimeoutMs(200);
+    LoadGenerator.Report report = generator.run("FastBatchConsumer", FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setCallback(callback)
+        .build());
+    assertEquals(200, report.getLost());
+    assertEquals(200, failedCount.get());
+
+    LoadGenerator.Report debug = generator.setEventsPerThread(5)
+        .run("DebugConsumer", new DebugConsumer(receiver.getUrl(), true));
+    assertEquals(10, debug.getLost());
+    assertEquals(10, debug.callerErrors);
+  }
+
+  @Test
+  public void checkSlowReadDelivers() throws Exception {
+    receiver.setSlowReadBytesPerSec(256 * 1024).setLatencyMs(20);
+    LoadGenerator generator = new LoadGenerator(receiver).setThreads(2).setEventsPerThread(200);
+    LoadGenerator.Report report = generator.run("BatchConsumer", BatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setTimeoutSec(10)
+        .build());
+    assertEquals(report.toString(), 0, report.getLost());
+    assertTrue(receiver.getRequests() >= 8);
+  }
+}
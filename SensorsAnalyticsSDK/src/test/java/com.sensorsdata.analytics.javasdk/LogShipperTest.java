@@ -0,0 +1,212 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.consumer.ConcurrentLoggingConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.LogShipper;
+import com.sensorsdata.analytics.javasdk.consumer.RetryPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * LogShipper 单测：多文件并行上传、checkpoint 续传、未写完的行、接收端故障、gzip 文件
+ */
+public class LogShipperTest {
+
+  private ReceiverEmulator receiver;
+  private Path dir;
+  private String prefix;
+  private int seq;
+
+  @Before
+  public void init() throws Exception {
+    receiver = new ReceiverEmulator(0).start();
+    dir = Files.createTempDirectory("shipper");
+    prefix = dir.resolve("service.log").toString();
+  }
+
+  @After
+  public void clean() throws Exception {
+    receiver.stop();
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void checkShipAndResumeFromCheckpoint() throws Exception {
+    writeEvents("a", 500);
+    writeEvents("b", 500);
+    // 最后一行尚未写完
+    File partial = new File(prefix + ".2026-01-01");
+    try (FileOutputStream out = new FileOutputStream(partial)) {
+      out.write((event() + "\n\n" + event() + "\n").getBytes(StandardCharsets.UTF_8));
+      out.write("{\"type\":\"track\",\"properties\":{\"load_".getBytes(StandardCharsets.UTF_8));
+    }
+    LogShipper shipper = newShipper();
+    awaitRecords(1002);
+    shipper.close();
+    assertEquals(1002, shipper.getShippedLines());
+
+    Properties checkpoint = new Properties();
+    try (InputStream in = new FileInputStream(dir.resolve(".service.log.checkpoint").toFile())) {
+      checkpoint.load(in);
+    }
+    assertEquals(3, checkpoint.size());
+    String partialOffset = checkpoint.getProperty(partial.getName());
+    assertEquals(partial.length() - "{\"type\":\"track\",\"properties\":{\"load_".length(), Long.parseLong(partialOffset));
+
+    // 续传：补全未写完的行并继续写入，已发送的数据不会重复发送
+    try (FileOutputStream out = new FileOutputStream(partial, true)) {
+      out.write(("seq\":" + seq++ + "}}\n").getBytes(StandardCharsets.UTF_8));
+    }
+    writeEvents("a", 100);
+    shipper = newShipper();
+    awaitRecords(1103);
+    shipper.close();
+    assertEquals(101, shipper.getShippedLines());
+    assertEquals(1103, receiver.getDistinctRecords());
+    assertEquals(0, receiver.getDuplicates());
+  }
+
+  @Test
+  public void checkRetryAndSkipBadData() throws Exception {
+    receiver.setErrorRate(0.3).setThrottleRate(0.1);
+    // 约 30 个请求，保证故障注入一定会命中
+    writeEvents("a", 1000);
+    try (FileOutputStream out = new FileOutputStream(prefix + ".bad")) {
+      out.write("not json\n".getBytes(StandardCharsets.UTF_8));
+    }
+    LogShipper shipper = newShipper();
+    awaitRecords(1000);
+    long deadline = System.currentTimeMillis() + 10000;
+    while (shipper.getSkippedLines() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    shipper.close();
+    assertEquals(1000, receiver.getDistinctRecords());
+    assertEquals(1, shipper.getSkippedLines());
+    assertTrue(receiver.getErrorResponses() + receiver.getThrottledResponses() > 0);
+    assertTrue(receiver.getBadRequests() > 0);
+  }
+
+  @Test
+  public void checkShipGzipOutputFile() throws Exception {
+    writeEvents("a", 500, true);
+    LogShipper shipper = newShipper();
+    awaitRecords(500);
+    // 继续追加 gzip member，从上次读到的 member 之后继续解压
+    writeEvents("a", 300, true);
+    awaitRecords(800);
+    shipper.close();
+    assertEquals(800, shipper.getShippedLines());
+    assertEquals(0, receiver.getDuplicates());
+  }
+
+  @Test
+  public void checkResumeAfterFileCompressed() throws Exception {
+    writeEvents("a", 200);
+    LogShipper shipper = newShipper();
+    awaitRecords(200);
+    shipper.close();
+    // 文件在剩余数据发送前被切换并压缩为 .gz，原文件被删除
+    writeEvents("a", 100);
+    File[] files = dir.toFile().listFiles();
+    File logFile = null;
+    for (File file : files) {
+      if (file.getName().startsWith("service.log.")) {
+        logFile = file;
+      }
+    }
+    try (InputStream in = new FileInputStream(logFile);
+         OutputStream out = new GZIPOutputStream(new FileOutputStream(logFile.getPath() + ".gz"))) {
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        out.write(buffer, 0, n);
+      }
+    }
+    assertTrue(logFile.delete());
+    shipper = newShipper();
+    awaitRecords(300);
+    shipper.close();
+    assertEquals(100, shipper.getShippedLines());
+    assertEquals(0, receiver.getDuplicates());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void checkServerUrlIsRequired() {
+    LogShipper.builder().setFilenamePrefix(prefix).build();
+  }
+
+  private LogShipper newShipper() {
+    return LogShipper.builder()
+        .setFilenamePrefix(prefix)
+        .setServerUrl(receiver.getUrl())
+        .setThreads(3)
+        .setBulkSize(37)
+        .setPollIntervalMs(50)
+        .setRetryPolicy(RetryPolicy.builder()
+            .setMaxAttempts(3)
+            .setInitialBackoffMs(1)
+            .setMaxBackoffMs(10)
+            .setCircuitBreakerThreshold(0)
+            .build())
+        .build();
+  }
+
+  private void writeEvents(String segmentId, int count) {
+    writeEvents(segmentId, count, false);
+  }
+
+  private void writeEvents(String segmentId, int count, boolean gzip) {
+    ConcurrentLoggingConsumer consumer = ConcurrentLoggingConsumer.builder()
+        .setFilenamePrefix(prefix)
+        .setSegmentId(segmentId)
+        .setBufferSize(1024)
+        .setGzip(gzip)
+        .build();
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("load_seq", seq++);
+      Map<String, Object> event = new HashMap<>();
+      event.put("type", "track");
+      event.put("event", "test");
+      event.put("properties", properties);
+      consumer.send(event);
+    }
+    consumer.close();
+  }
+
+  private String event() {
+    return "{\"type\":\"track\",\"properties\":{\"load_seq\":" + seq++ + "}}";
+  }
+
+  private void awaitRecords(long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (receiver.getDistinctRecords() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(receiver.toString(), expected, receiver.getDistinctRecords());
+  }
+}
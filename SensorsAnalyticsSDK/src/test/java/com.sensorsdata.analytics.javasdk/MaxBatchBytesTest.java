@@ -0,0 +1,128 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按字节数切分批次单测
+ */
+public class MaxBatchBytesTest extends SensorsBaseTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  private final Map<String, Object> properties = new HashMap<>();
+
+  @Before
+  public void init() {
+    RawServlet.RECEIVED.set(0);
+    RawServlet.REQUESTS.set(0);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      content.append("0123456789");
+    }
+    properties.put("content", content.toString());
+  }
+
+  @Test
+  public void checkBatchConsumerMaxBatchBytes() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(1000)
+        .setMaxBatchBytes(2000)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.NDJSON)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 100; i++) {
+      sa.track("a123", false, "test", properties);
+    }
+    sa.flush();
+    assertEquals(100, RawServlet.RECEIVED.get());
+    // 每条数据 500 多字节，每批最多 3 条
+    assertTrue(RawServlet.REQUESTS.get() >= 34);
+    consumer.close();
+  }
+
+  @Test
+  public void checkBatchConsumerInstantMaxBatchBytes() throws Exception {
+    RawServlet.RECEIVED_INSTANT.set(0);
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(1000)
+        .setMaxBatchBytes(2000)
+        .setInstantEvents(Collections.singletonList("instant"))
+        .setInstantFlushMs(60000)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.NDJSON)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 30; i++) {
+      sa.track("a123", false, "instant", properties);
+    }
+    sa.flush();
+    assertEquals(30, RawServlet.RECEIVED_INSTANT.get());
+    // 即时事件同样按字节数切分，每批最多 3 条
+    assertTrue(RawServlet.REQUESTS.get() >= 10);
+    consumer.close();
+  }
+
+  @Test
+  public void checkFastBatchConsumerMaxBatchBytes() throws Exception {
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(1000)
+        .setMaxBatchBytes(2000)
+        .setCallback(callback)
+        .setTransportMode(TransportMode.NDJSON)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 100; i++) {
+      sa.track("a123", false, "test", properties);
+    }
+    sa.flush();
+    assertEquals(0, failedCount.get());
+    assertEquals(100, RawServlet.RECEIVED.get());
+    assertTrue(RawServlet.REQUESTS.get() >= 34);
+    consumer.close();
+  }
+
+  @Test
+  public void checkOversizedMessage() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setMaxBatchBytes(100)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.NDJSON)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 5; i++) {
+      sa.track("a123", false, "test", properties);
+    }
+    sa.flush();
+    // 单条超过上限的数据单独成批发送
+    assertEquals(5, RawServlet.RECEIVED.get());
+    assertEquals(5, RawServlet.REQUESTS.get());
+    consumer.close();
+  }
+}
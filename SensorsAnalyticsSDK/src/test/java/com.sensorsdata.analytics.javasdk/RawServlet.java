@@ -0,0 +1,117 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.consumer.CompressionCodec;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 模拟服务端接收 application/octet-stream 与 application/x-ndjson 格式的数据
+ */
+public class RawServlet extends HttpServlet {
+
+  static final AtomicInteger RECEIVED = new AtomicInteger();
+  static final AtomicInteger RECEIVED_INSTANT = new AtomicInteger();
+  static final AtomicInteger REQUESTS = new AtomicInteger();
+  static final AtomicInteger UNCOMPRESSED = new AtomicInteger();
+  static final AtomicInteger DICTIONARY = new AtomicInteger();
+
+  @Override
+  protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    InputStream input = decode(request);
+    ObjectMapper jsonMapper = SensorsAnalyticsUtil.getJsonObjectMapper();
+    int count = 0;
+    if (request.getContentType().startsWith("application/x-ndjson")) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        assertData(jsonMapper.readTree(line));
+        count++;
+      }
+    } else {
+      assertEquals("application/octet-stream", request.getContentType());
+      JsonNode arrayNode = jsonMapper.readTree(input);
+      assertTrue(arrayNode.isArray());
+      for (JsonNode jsonNode : arrayNode) {
+        assertData(jsonNode);
+        count++;
+      }
+    }
+    RECEIVED.addAndGet(count);
+    REQUESTS.incrementAndGet();
+    // 请求带有 Content-Encoding 时 Jetty 不允许通过 getParameter 解析参数
+    String query = request.getQueryString();
+    if (query != null && query.contains("instant_event=true")) {
+      RECEIVED_INSTANT.addAndGet(count);
+    }
+    response.setStatus(200);
+  }
+
+  /**
+   * 按 Content-Encoding 解压：gzip、使用 SDK 默认字典的 deflate 或者不压缩
+   */
+  private InputStream decode(HttpServletRequest request) throws IOException {
+    String contentEncoding = request.getHeader("Content-Encoding");
+    if (contentEncoding == null) {
+      UNCOMPRESSED.incrementAndGet();
+      return request.getInputStream();
+    }
+    if ("gzip".equals(contentEncoding)) {
+      return new GZIPInputStream(request.getInputStream());
+    }
+    assertEquals("deflate", contentEncoding);
+    DICTIONARY.incrementAndGet();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int n;
+    InputStream in = request.getInputStream();
+    while ((n = in.read(buffer)) != -1) {
+      compressed.write(buffer, 0, n);
+    }
+    Inflater inflater = new Inflater();
+    inflater.setInput(compressed.toByteArray());
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    try {
+      while (!inflater.finished()) {
+        n = inflater.inflate(buffer);
+        if (n == 0 && inflater.needsDictionary()) {
+          inflater.setDictionary(CompressionCodec.getDefaultDictionary());
+        } else if (n == 0 && inflater.needsInput()) {
+          throw new IOException("Unexpected end of deflate stream.");
+        }
+        data.write(buffer, 0, n);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+    return new ByteArrayInputStream(data.toByteArray());
+  }
+
+  private void assertData(JsonNode jsonNode) {
+    assertTrue("数据中没有 type 节点！", jsonNode.has("type"));
+    assertTrue("数据中没有 distinct_id 节点！", jsonNode.has("distinct_id"));
+    assertTrue("数据中没有 lib 节点！", jsonNode.has("lib"));
+  }
+}
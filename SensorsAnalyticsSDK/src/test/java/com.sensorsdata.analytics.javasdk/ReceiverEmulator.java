@@ -0,0 +1,338 @@
+package com.sensorsdata.analytics.javasdk;
+
+import com.sensorsdata.analytics.javasdk.util.Base64Coder;
+import com.sensorsdata.analytics.javasdk.util.SensorsAnalyticsUtil;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 可注入故障的本地接收端，解码 FORM 格式（gzip + base64 的 data_list）的请求并统计数据条数
+ * <p>
+ * 支持的故障：固定响应延迟、按比例返回 500、按比例返回 429、按限速慢速读取请求体。故障配置可以在运行过程中修改。
+ * 数据中带有 {@link #SEQ_PROPERTY} 属性时按该属性去重，用于区分重试导致的重复数据。
+ */
+public class ReceiverEmulator {
+
+  /**
+   * 压测数据的唯一序号属性名
+   */
+  static final String SEQ_PROPERTY = "load_seq";
+
+  private final Server server;
+
+  private volatile long latencyMs;
+  private volatile double errorRate;
+  private volatile double throttleRate;
+  private volatile int slowReadBytesPerSec;
+
+  private final AtomicLong requests = new AtomicLong();
+  /**
+   * 故障注入的序号，按比例均匀地把故障分配到各个请求上，不依赖随机数
+   */
+  private final AtomicLong faultSeq = new AtomicLong();
+  private final AtomicLong records = new AtomicLong();
+  private final AtomicLong errorResponses = new AtomicLong();
+  private final AtomicLong throttledResponses = new AtomicLong();
+  private final AtomicLong badRequests = new AtomicLong();
+  private final AtomicLong duplicates = new AtomicLong();
+  private final Set<Long> seqs = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+  private final AtomicLong outOfOrder = new AtomicLong();
+  private final Map<String, Long> lastSeqs = new HashMap<>();
+  private final AtomicInteger concurrentRequests = new AtomicInteger();
+  private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+  /**
+   * @param port 监听端口，0 表示随机端口
+   */
+  public ReceiverEmulator(int port) {
+    server = new Server(port);
+    ServletContextHandler handler = new ServletContextHandler();
+    handler.addServlet(new ServletHolder(new ReceiverServlet()), "/*");
+    server.setHandler(handler);
+  }
+
+  public ReceiverEmulator start() throws Exception {
+    server.start();
+    return this;
+  }
+
+  public void stop() throws Exception {
+    server.stop();
+  }
+
+  public int getPort() {
+    return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+  }
+
+  /**
+   * 数据接收地址，DebugConsumer 会将路径替换为 /debug，同样由本接收端处理
+   */
+  public String getUrl() {
+    return "http://localhost:" + getPort() + "/sa";
+  }
+
+  /**
+   * 每个请求在返回响应前等待的时间
+   */
+  public ReceiverEmulator setLatencyMs(long latencyMs) {
+    this.latencyMs = latencyMs;
+    return this;
+  }
+
+  /**
+   * 返回 500 的请求比例，取值 [0, 1]；500 与 429 按请求序号均匀分布，合计比例不超过 0.5 时不会连续出现
+   */
+  public ReceiverEmulator setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * 返回 429 的请求比例，取值 [0, 1]
+   */
+  public ReceiverEmulator setThrottleRate(double throttleRate) {
+    this.throttleRate = throttleRate;
+    return this;
+  }
+
+  /**
+   * 读取请求体的速度上限，小于等于 0 表示不限速
+   */
+  public ReceiverEmulator setSlowReadBytesPerSec(int slowReadBytesPerSec) {
+    this.slowReadBytesPerSec = slowReadBytesPerSec;
+    return this;
+  }
+
+  /**
+   * 清空故障配置和统计
+   */
+  public void reset() {
+    latencyMs = 0;
+    errorRate = 0;
+    throttleRate = 0;
+    slowReadBytesPerSec = 0;
+    requests.set(0);
+    faultSeq.set(0);
+    records.set(0);
+    errorResponses.set(0);
+    throttledResponses.set(0);
+    badRequests.set(0);
+    duplicates.set(0);
+    seqs.clear();
+    outOfOrder.set(0);
+    synchronized (lastSeqs) {
+      lastSeqs.clear();
+    }
+    maxConcurrentRequests.set(0);
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * 成功接收的数据条数，包含重复数据
+   */
+  public long getRecords() {
+    return records.get();
+  }
+
+  /**
+   * 成功接收的不重复序号数
+   */
+  public long getDistinctRecords() {
+    return seqs.size();
+  }
+
+  public long getDuplicates() {
+    return duplicates.get();
+  }
+
+  public long getErrorResponses() {
+    return errorResponses.get();
+  }
+
+  public long getThrottledResponses() {
+    return throttledResponses.get();
+  }
+
+  public long getBadRequests() {
+    return badRequests.get();
+  }
+
+  /**
+   * 同一 distinct_id 的序号小于之前已接收序号的数据条数
+   */
+  public long getOutOfOrder() {
+    return outOfOrder.get();
+  }
+
+  /**
+   * 同时处理中的请求数的最大值
+   */
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ReceiverEmulator[requests:%d;records:%d;distinct:%d;duplicates:%d;500:%d;429:%d;400:%d]",
+        getRequests(), getRecords(), getDistinctRecords(), getDuplicates(), getErrorResponses(),
+        getThrottledResponses(), getBadRequests());
+  }
+
+  private class ReceiverServlet extends HttpServlet {
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+      int concurrent = concurrentRequests.incrementAndGet();
+      while (true) {
+        int max = maxConcurrentRequests.get();
+        if (concurrent <= max || maxConcurrentRequests.compareAndSet(max, concurrent)) {
+          break;
+        }
+      }
+      try {
+        receive(request, response);
+      } finally {
+        concurrentRequests.decrementAndGet();
+      }
+    }
+
+    private void receive(HttpServletRequest request, HttpServletResponse response) throws IOException {
+      requests.incrementAndGet();
+      byte[] body = readBody(request.getInputStream());
+      if (latencyMs > 0) {
+        sleep(latencyMs);
+      }
+      double faultRate = errorRate + throttleRate;
+      long requestSeq = faultSeq.getAndIncrement();
+      if (faultRate > 0 && isScheduled(requestSeq, faultRate)) {
+        long fault = (long) Math.floor(requestSeq * faultRate);
+        if (isScheduled(fault, errorRate / faultRate)) {
+          errorResponses.incrementAndGet();
+          response.setStatus(500);
+        } else {
+          throttledResponses.incrementAndGet();
+          response.setStatus(429);
+        }
+        return;
+      }
+      JsonNode arrayNode;
+      try {
+        arrayNode = decode(body);
+      } catch (Exception e) {
+        badRequests.incrementAndGet();
+        response.setStatus(400);
+        return;
+      }
+      for (JsonNode jsonNode : arrayNode) {
+        JsonNode seq = jsonNode.path("properties").get(SEQ_PROPERTY);
+        if (seq != null && !seqs.add(seq.asLong())) {
+          duplicates.incrementAndGet();
+        }
+        JsonNode distinctId = jsonNode.get("distinct_id");
+        if (seq != null && distinctId != null) {
+          synchronized (lastSeqs) {
+            Long last = lastSeqs.put(distinctId.asText(), seq.asLong());
+            if (last != null && last > seq.asLong()) {
+              outOfOrder.incrementAndGet();
+            }
+          }
+        }
+      }
+      records.addAndGet(arrayNode.size());
+      response.setStatus(200);
+    }
+
+    /**
+     * 第 seq 个请求是否命中比例为 rate 的故障，命中的请求在序号上均匀分布
+     */
+    private boolean isScheduled(long seq, double rate) {
+      return Math.floor((seq + 1) * rate) > Math.floor(seq * rate);
+    }
+
+    /**
+     * 按 slowReadBytesPerSec 限速读取请求体，每次读取 1KB
+     */
+    private byte[] readBody(InputStream input) throws IOException {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int n;
+      while ((n = input.read(buffer)) != -1) {
+        bos.write(buffer, 0, n);
+        int bytesPerSec = slowReadBytesPerSec;
+        if (bytesPerSec > 0) {
+          sleep(n * 1000L / bytesPerSec);
+        }
+      }
+      return bos.toByteArray();
+    }
+
+    private JsonNode decode(byte[] body) throws IOException {
+      Map<String, String> form = new HashMap<>();
+      for (String pair : new String(body, StandardCharsets.UTF_8).split("&")) {
+        int index = pair.indexOf('=');
+        if (index > 0) {
+          form.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+              URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+        }
+      }
+      String dataList = form.get("data_list");
+      if (dataList == null) {
+        throw new IOException("data_list is missing.");
+      }
+      byte[] data = Base64Coder.decode(dataList);
+      if ("1".equals(form.get("gzip"))) {
+        data = decompressGzip(data);
+      }
+      JsonNode arrayNode = SensorsAnalyticsUtil.getJsonObjectMapper().readTree(data);
+      if (!arrayNode.isArray()) {
+        throw new IOException("data_list is not an array.");
+      }
+      return arrayNode;
+    }
+
+    private byte[] decompressGzip(byte[] gzipData) throws IOException {
+      byte[] buffer = new byte[1024];
+      GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(gzipData));
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      int n;
+      while ((n = gis.read(buffer)) != -1) {
+        bos.write(buffer, 0, n);
+      }
+      return bos.toByteArray();
+    }
+
+    private void sleep(long millis) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.RetryPolicy;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 失败重试及熔断单测
+ */
+public class RetryPolicyTest extends SensorsBaseTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  private final Map<String, Object> properties = new HashMap<>();
+
+  @Before
+  public void init() {
+    ErrorServlet.STATUS.set(503);
+    ErrorServlet.REQUESTS.set(0);
+    properties.put("test", "test");
+  }
+
+  private FastBatchConsumer newFastBatchConsumer(RetryPolicy retryPolicy) {
+    return FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/error")
+        .setBulkSize(50)
+        .setFlushSec(3600)
+        .setCallback(callback)
+        .setRetryPolicy(retryPolicy)
+        .build();
+  }
+
+  @Test
+  public void checkRetryOnServerError() throws Exception {
+    FastBatchConsumer consumer = newFastBatchConsumer(RetryPolicy.builder()
+        .setMaxAttempts(3)
+        .setInitialBackoffMs(10)
+        .setCircuitBreakerThreshold(0)
+        .build());
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    sa.track("a123", false, "test", properties);
+    sa.flush();
+    assertEquals(3, ErrorServlet.REQUESTS.get());
+    assertEquals(1, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkRetryUntilSuccess() throws Exception {
+    ErrorServlet.STATUS.set(429);
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/error")
+        .setThrowException(true)
+        .setRetryPolicy(RetryPolicy.builder()
+            .setMaxAttempts(5)
+            .setInitialBackoffMs(200)
+            .build())
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    sa.track("a123", false, "test", properties);
+    Thread recover = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (ErrorServlet.REQUESTS.get() < 2) {
+          Thread.yield();
+        }
+        ErrorServlet.STATUS.set(200);
+      }
+    });
+    recover.start();
+    sa.flush();
+    recover.join();
+    assertEquals(200, ErrorServlet.STATUS.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkSyncRetryDoesNotBlockSend() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/error")
+        .setBulkSize(1)
+        .setRetryPolicy(RetryPolicy.builder()
+            .setMaxAttempts(2)
+            .setInitialBackoffMs(1000)
+            .setCircuitBreakerThreshold(0)
+            .build())
+        .build();
+    final SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    Thread sender = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sa.track("a123", false, "test", properties);
+        } catch (Exception ignored) {
+          // 不会抛出
+        }
+      }
+    });
+    sender.start();
+    while (ErrorServlet.REQUESTS.get() < 1) {
+      Thread.yield();
+    }
+    // 重试等待期间不持有缓存锁，其它线程的 send 立即返回
+    long start = System.currentTimeMillis();
+    sa.track("a123", false, "test", properties);
+    assertTrue(System.currentTimeMillis() - start < 500);
+    sender.join();
+    ErrorServlet.STATUS.set(200);
+    // 失败的批次保留在队首，close 时与第二条数据分两批发出
+    consumer.close();
+    assertEquals(4, ErrorServlet.REQUESTS.get());
+  }
+
+  @Test
+  public void checkNoRetryOnClientError() throws Exception {
+    ErrorServlet.STATUS.set(404);
+    FastBatchConsumer consumer = newFastBatchConsumer(RetryPolicy.builder()
+        .setInitialBackoffMs(10)
+        .build());
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    sa.track("a123", false, "test", properties);
+    sa.flush();
+    assertEquals(1, ErrorServlet.REQUESTS.get());
+    assertEquals(1, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkNoRetryWhenClientClosed() throws Exception {
+    final List<String> failures = new ArrayList<>();
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/error")
+        .setFlushSec(3600)
+        .setCallback(new Callback() {
+          @Override
+          public void onFailed(FailedData failedData) {
+            failures.add(failedData.getFailedMessage());
+          }
+        })
+        .setRetryPolicy(RetryPolicy.builder()
+            .setMaxAttempts(3)
+            .setInitialBackoffMs(1000)
+            .setCircuitBreakerThreshold(0)
+            .build())
+        .build();
+    // 模拟发送过程中 HttpClient 被并发关闭
+    Field httpConsumerField = FastBatchConsumer.class.getDeclaredField("httpConsumer");
+    httpConsumerField.setAccessible(true);
+    Object httpConsumer = httpConsumerField.get(consumer);
+    Field httpClientField = httpConsumer.getClass().getDeclaredField("httpClient");
+    httpClientField.setAccessible(true);
+    ((CloseableHttpClient) httpClientField.get(httpConsumer)).close();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    sa.track("a123", false, "test", properties);
+    long start = System.currentTimeMillis();
+    sa.flush();
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertEquals(0, ErrorServlet.REQUESTS.get());
+    assertEquals(1, failures.size());
+    assertTrue(failures.get(0).contains("The http client is closed"));
+    consumer.close();
+  }
+
+  @Test
+  public void checkCircuitBreaker() throws Exception {
+    FastBatchConsumer consumer = newFastBatchConsumer(RetryPolicy.builder()
+        .setMaxAttempts(1)
+        .setCircuitBreakerThreshold(2)
+        .setCircuitBreakerOpenMs(500)
+        .build());
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 4; i++) {
+      sa.track("a123", false, "test", properties);
+      sa.flush();
+    }
+    // 连续失败 2 次后熔断，之后的请求不再发出
+    assertEquals(2, ErrorServlet.REQUESTS.get());
+    assertEquals(4, failedCount.get());
+
+    Thread.sleep(600);
+    // 熔断结束后放行一个探测请求，探测失败重新熔断
+    sa.track("a123", false, "test", properties);
+    sa.flush();
+    sa.track("a123", false, "test", properties);
+    sa.flush();
+    assertEquals(3, ErrorServlet.REQUESTS.get());
+
+    Thread.sleep(600);
+    ErrorServlet.STATUS.set(200);
+    for (int i = 0; i < 3; i++) {
+      sa.track("a123", false, "test", properties);
+      sa.flush();
+    }
+    assertEquals(6, ErrorServlet.REQUESTS.get());
+    assertEquals(6, failedCount.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkCircuitBreakerProbeIsNotLost() throws Exception {
+    Class<?> clazz = Class.forName("com.sensorsdata.analytics.javasdk.consumer.CircuitBreaker");
+    Constructor<?> constructor = clazz.getDeclaredConstructor(int.class, long.class);
+    constructor.setAccessible(true);
+    Object circuitBreaker = constructor.newInstance(1, 200L);
+    Method tryAcquire = clazz.getDeclaredMethod("tryAcquire");
+    tryAcquire.setAccessible(true);
+    Method onFailure = clazz.getDeclaredMethod("onFailure");
+    onFailure.setAccessible(true);
+    Method onAbort = clazz.getDeclaredMethod("onAbort");
+    onAbort.setAccessible(true);
+
+    onFailure.invoke(circuitBreaker);
+    assertFalse((Boolean) tryAcquire.invoke(circuitBreaker));
+    Thread.sleep(250);
+    assertTrue((Boolean) tryAcquire.invoke(circuitBreaker));
+    assertFalse((Boolean) tryAcquire.invoke(circuitBreaker));
+    // 探测请求被放弃（例如客户端已关闭）时，下一个请求可以继续探测
+    onAbort.invoke(circuitBreaker);
+    assertTrue((Boolean) tryAcquire.invoke(circuitBreaker));
+    assertFalse((Boolean) tryAcquire.invoke(circuitBreaker));
+    // 探测请求一直没有记录结果时，超过 openMs 后重新放出探测机会
+    Thread.sleep(250);
+    assertTrue((Boolean) tryAcquire.invoke(circuitBreaker));
+  }
+}
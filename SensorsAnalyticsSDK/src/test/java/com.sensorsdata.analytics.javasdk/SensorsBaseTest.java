@@ -78,6 +78,8 @@ public class SensorsBaseTest {
     handler.addServlet(new ServletHolder(new TestServlet()), "/debug");
     handler.addServlet(new ServletHolder(new TestServlet()), "/sa");
     handler.addServlet(new ServletHolder(new InstantServlet()), "/instant");
+    handler.addServlet(new ServletHolder(new RawServlet()), "/raw");
+    handler.addServlet(new ServletHolder(new ErrorServlet()), "/error");
 
     server.setHandler(handler);
     server.start();
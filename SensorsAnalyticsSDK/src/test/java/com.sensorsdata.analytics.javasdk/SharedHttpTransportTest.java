@@ -0,0 +1,79 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.ConnectionPoolConfig;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.SharedHttpTransport;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内共享连接池单测
+ */
+public class SharedHttpTransportTest extends SensorsBaseTest {
+
+  private static final String POOL_KEY = "http://localhost:8888";
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  @Test
+  public void checkSharedTransport() throws Exception {
+    ConnectionPoolConfig config = ConnectionPoolConfig.builder()
+        .setMaxTotal(4)
+        .setMaxPerRoute(2)
+        .build();
+    BatchConsumer batchConsumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/sa")
+        .setThrowException(true)
+        .setConnectionPool(config)
+        .build();
+    FastBatchConsumer fastBatchConsumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw?project=default")
+        .setCallback(callback)
+        .setTransportMode(TransportMode.NDJSON)
+        .setConnectionPool(config)
+        .build();
+    // 同一 host 的不同路径共用一个连接池
+    Map<String, PoolStats> poolStats = SharedHttpTransport.getPoolStats();
+    assertEquals(1, poolStats.size());
+    assertTrue(poolStats.containsKey(POOL_KEY));
+
+    SensorsAnalytics batchSa = new SensorsAnalytics(batchConsumer);
+    SensorsAnalytics fastBatchSa = new SensorsAnalytics(fastBatchConsumer);
+    for (int i = 0; i < 10; i++) {
+      batchSa.track("a123", false, "test");
+      fastBatchSa.track("a123", false, "test");
+      batchSa.flush();
+      fastBatchSa.flush();
+    }
+    assertEquals(0, failedCount.get());
+    PoolStats stats = SharedHttpTransport.getPoolStats().get(POOL_KEY);
+    assertEquals(0, stats.getLeased());
+    assertEquals(4, stats.getMax());
+    // 请求串行发送，keep-alive 的连接被复用
+    assertTrue(stats.getAvailable() >= 1 && stats.getAvailable() <= 2);
+
+    batchConsumer.close();
+    assertTrue(SharedHttpTransport.getPoolStats().containsKey(POOL_KEY));
+    fastBatchConsumer.close();
+    assertFalse(SharedHttpTransport.getPoolStats().containsKey(POOL_KEY));
+  }
+}
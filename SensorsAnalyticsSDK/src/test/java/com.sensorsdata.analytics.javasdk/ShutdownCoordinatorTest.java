@@ -0,0 +1,179 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.ConsoleConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.ShutdownCoordinator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ShutdownCoordinator 单测：并行 flush、截止时间、未发送数据写入本地文件
+ */
+public class ShutdownCoordinatorTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  private ReceiverEmulator receiver;
+  private Path dir;
+  private int seq;
+
+  @Before
+  public void init() throws Exception {
+    receiver = new ReceiverEmulator(0).start();
+    dir = Files.createTempDirectory("shutdown");
+  }
+
+  @After
+  public void clean() throws Exception {
+    receiver.stop();
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.toFile().delete();
+  }
+
+  @Test
+  public void checkDrainBeforeDeadline() throws Exception {
+    ShutdownCoordinator coordinator = newCoordinator(5000);
+    FastBatchConsumer consumer = newConsumer();
+    coordinator.register(consumer);
+    coordinator.register(consumer);
+    assertEquals(1, coordinator.getConsumerCount());
+    send(consumer, 100);
+    assertEquals(0, coordinator.drain());
+    assertEquals(100, receiver.getDistinctRecords());
+    assertEquals(0, dir.toFile().list().length);
+    consumer.close();
+  }
+
+  @Test
+  public void checkSpillAfterDeadline() throws Exception {
+    receiver.setLatencyMs(1500);
+    ShutdownCoordinator coordinator = newCoordinator(1000);
+    List<FastBatchConsumer> consumers = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      FastBatchConsumer consumer = newConsumer();
+      send(consumer, 100);
+      coordinator.register(consumer);
+      consumers.add(consumer);
+    }
+    long start = System.currentTimeMillis();
+    int spilled = coordinator.drain();
+    assertTrue(System.currentTimeMillis() - start < 1500);
+    // 两个 Consumer 并行发送，各有一个批次在途，其余数据写入本地文件
+    assertEquals(180, spilled);
+    File[] files = dir.toFile().listFiles();
+    assertEquals(1, files.length);
+    assertTrue(files[0].getName().startsWith("unsent.log."));
+    List<String> lines = Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8);
+    assertEquals(180, lines.size());
+    long deadline = System.currentTimeMillis() + 5000;
+    while (receiver.getDistinctRecords() < 20 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(20, receiver.getDistinctRecords());
+    assertEquals(0, failedCount.get());
+    for (FastBatchConsumer consumer : consumers) {
+      consumer.close();
+    }
+    assertEquals(20, receiver.getDistinctRecords());
+  }
+
+  @Test
+  public void checkFastBatchConsumerCloseFlush() throws Exception {
+    FastBatchConsumer consumer = newConsumer();
+    send(consumer, 30);
+    consumer.close();
+    assertEquals(30, receiver.getDistinctRecords());
+  }
+
+  @Test
+  public void checkSingleRegistration() throws Exception {
+    int count = ShutdownCoordinator.getDefault().getConsumerCount();
+    List<SensorsAnalytics> instances = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      instances.add(new SensorsAnalytics(new ConsoleConsumer(new PrintWriter(new StringWriter()))));
+    }
+    assertEquals(count + 10, ShutdownCoordinator.getDefault().getConsumerCount());
+    for (SensorsAnalytics sa : instances) {
+      sa.shutdown();
+    }
+    assertEquals(count, ShutdownCoordinator.getDefault().getConsumerCount());
+  }
+
+  @Test
+  public void checkUnreferencedConsumersAreKept() throws Exception {
+    ShutdownCoordinator coordinator = newCoordinator(1000);
+    for (int i = 0; i < 10; i++) {
+      coordinator.register(new ConsoleConsumer(new PrintWriter(new StringWriter())));
+    }
+    // 应用不再引用但未 shutdown 的 Consumer 仍保留注册，进程退出时可以 flush
+    System.gc();
+    Thread.sleep(100);
+    assertEquals(10, coordinator.getConsumerCount());
+    assertEquals(0, coordinator.drain());
+  }
+
+  /**
+   * 构造方法不公开，测试中使用独立的实例，避免与默认实例中注册的 Consumer 相互影响
+   */
+  private ShutdownCoordinator newCoordinator(long deadlineMs) throws Exception {
+    Constructor<ShutdownCoordinator> constructor = ShutdownCoordinator.class.getDeclaredConstructor();
+    constructor.setAccessible(true);
+    return constructor.newInstance()
+        .setDeadlineMs(deadlineMs)
+        .setSpillFilenamePrefix(dir.resolve("unsent.log").toString());
+  }
+
+  private FastBatchConsumer newConsumer() {
+    return FastBatchConsumer.builder()
+        .setServerUrl(receiver.getUrl())
+        .setBulkSize(10)
+        .setFlushSec(3600)
+        .setCallback(callback)
+        .build();
+  }
+
+  private void send(FastBatchConsumer consumer, int count) {
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> properties = new HashMap<>();
+      properties.put("load_seq", seq++);
+      Map<String, Object> event = new HashMap<>();
+      event.put("type", "track");
+      event.put("event", "test");
+      event.put("distinct_id", "a123");
+      event.put("properties", properties);
+      consumer.send(event);
+    }
+  }
+}
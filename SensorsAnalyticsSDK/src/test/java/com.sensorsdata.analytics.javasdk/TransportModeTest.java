@@ -0,0 +1,132 @@
+package com.sensorsdata.analytics.javasdk;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sensorsdata.analytics.javasdk.bean.FailedData;
+import com.sensorsdata.analytics.javasdk.consumer.BatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.Callback;
+import com.sensorsdata.analytics.javasdk.consumer.FastBatchConsumer;
+import com.sensorsdata.analytics.javasdk.consumer.TransportMode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非表单请求体格式单测
+ */
+public class TransportModeTest extends SensorsBaseTest {
+
+  private final AtomicInteger failedCount = new AtomicInteger();
+
+  private final Callback callback = new Callback() {
+    @Override
+    public void onFailed(FailedData failedData) {
+      failedCount.addAndGet(failedData.getFailedData().size());
+    }
+  };
+
+  @Before
+  public void resetCounter() {
+    RawServlet.RECEIVED.set(0);
+    RawServlet.RECEIVED_INSTANT.set(0);
+    RawServlet.REQUESTS.set(0);
+  }
+
+  @Test
+  public void checkBatchConsumerOctetStream() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(20)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.OCTET_STREAM)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 50; i++) {
+      sa.track("a123", false, "test");
+    }
+    sa.flush();
+    assertEquals(50, RawServlet.RECEIVED.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkFastBatchConsumerNdjson() throws Exception {
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw?project=default")
+        .setCallback(callback)
+        .setTransportMode(TransportMode.NDJSON)
+        .setInstantEvents(Collections.singletonList("instant"))
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    Map<String, Object> properties = new HashMap<>();
+    properties.put("content", "多行\n内容");
+    for (int i = 0; i < 30; i++) {
+      sa.track("a123", false, "test", properties);
+    }
+    sa.flush();
+    for (int i = 0; i < 5; i++) {
+      sa.track("a123", false, "instant");
+    }
+    sa.flush();
+    assertEquals(0, failedCount.get());
+    assertEquals(35, RawServlet.RECEIVED.get());
+    assertEquals(5, RawServlet.RECEIVED_INSTANT.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkBatchConsumerInstantLane() throws Exception {
+    BatchConsumer consumer = BatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setBulkSize(50)
+        .setThrowException(true)
+        .setTransportMode(TransportMode.NDJSON)
+        .setInstantEvents(Collections.singletonList("instant"))
+        .setInstantFlushMs(60000)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    // 即时事件与普通事件交替上报时不再每次切换都发送一次
+    for (int i = 0; i < 20; i++) {
+      sa.track("a123", false, i % 2 == 0 ? "instant" : "test");
+    }
+    assertEquals(0, RawServlet.REQUESTS.get());
+    sa.flush();
+    assertEquals(20, RawServlet.RECEIVED.get());
+    assertEquals(10, RawServlet.RECEIVED_INSTANT.get());
+    assertEquals(2, RawServlet.REQUESTS.get());
+    consumer.close();
+  }
+
+  @Test
+  public void checkFastBatchConsumerInstantLane() throws Exception {
+    FastBatchConsumer consumer = FastBatchConsumer.builder()
+        .setServerUrl("http://localhost:8888/raw")
+        .setCallback(callback)
+        .setFlushSec(60)
+        .setTransportMode(TransportMode.NDJSON)
+        .setInstantEvents(Collections.singletonList("instant"))
+        .setInstantFlushMs(20)
+        .build();
+    SensorsAnalytics sa = new SensorsAnalytics(consumer);
+    for (int i = 0; i < 20; i++) {
+      sa.track("a123", false, i % 2 == 0 ? "instant" : "test");
+    }
+    // 即时事件不等待 flushSec，普通事件仍留在缓存中
+    long deadline = System.currentTimeMillis() + 5000;
+    while (RawServlet.RECEIVED_INSTANT.get() < 10 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(10, RawServlet.RECEIVED_INSTANT.get());
+    assertEquals(10, RawServlet.RECEIVED.get());
+    sa.flush();
+    assertEquals(0, failedCount.get());
+    assertEquals(20, RawServlet.RECEIVED.get());
+    assertEquals(10, RawServlet.RECEIVED_INSTANT.get());
+    consumer.close();
+  }
+}